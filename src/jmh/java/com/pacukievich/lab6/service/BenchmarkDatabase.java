@@ -0,0 +1,88 @@
+package com.pacukievich.lab6.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TableRequest;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Окружение бенчмарков: пул соединений и сервисы без контекста Spring. По умолчанию — H2 в режиме
+// PostgreSQL в памяти; с -Dbench.jdbc.url можно направить бенчмарки на локальный PostgreSQL.
+final class BenchmarkDatabase implements AutoCloseable {
+
+		private static final String H2_URL = "jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+
+		final HikariDataSource dataSource;
+		final JdbcTemplate jdbcTemplate;
+		final TableService tableService;
+		final ExportService exportService;
+		final ObjectMapper objectMapper = new ObjectMapper();
+
+		BenchmarkDatabase() {
+				dataSource = new HikariDataSource();
+				dataSource.setJdbcUrl(System.getProperty("bench.jdbc.url", H2_URL));
+				dataSource.setUsername(System.getProperty("bench.jdbc.user", "sa"));
+				dataSource.setPassword(System.getProperty("bench.jdbc.password", ""));
+				dataSource.setMaximumPoolSize(4);
+				jdbcTemplate = new JdbcTemplate(dataSource);
+				tableService = new TableService(jdbcTemplate, dataSource, new SchemaMetadataCache(jdbcTemplate, 256),
+								new QueryResultCache(60, 200, 2_000_000), 100, 1000, 1000, "simple");
+				// Параллельная выгрузка требует pg_export_snapshot(), поэтому в бенчмарках она отключена
+				exportService = new ExportService(tableService, new AppMetrics(new SimpleMeterRegistry(), 100), dataSource,
+								objectMapper, 100, 1000, 1, 0);
+		}
+
+		static TableRequest tableRequest(String tableName, int columns) {
+				List<FieldRequest> fields = new ArrayList<>();
+				for (int i = 0; i < columns; i++) {
+						FieldRequest field = new FieldRequest();
+						field.setName("col_" + i);
+						field.setType("VARCHAR(64)");
+						fields.add(field);
+				}
+				TableRequest request = new TableRequest();
+				request.setTableName(tableName);
+				request.setFields(fields);
+				return request;
+		}
+
+		// Таблица с id SERIAL и columns текстовыми колонками, заполненная rows строками
+		void createTable(String tableName, int rows, int columns) {
+				tableService.deleteTable(tableName);
+				tableService.createTable(tableRequest(tableName, columns));
+
+				List<String> names = new ArrayList<>();
+				List<String> placeholders = new ArrayList<>();
+				for (int i = 0; i < columns; i++) {
+						names.add("\"col_" + i + "\"");
+						placeholders.add("?");
+				}
+				String sql = "INSERT INTO \"" + tableName + "\" (" + String.join(", ", names) + ") VALUES (" +
+								String.join(", ", placeholders) + ")";
+				List<Object[]> batch = new ArrayList<>();
+				for (int row = 0; row < rows; row++) {
+						Object[] values = new Object[columns];
+						for (int i = 0; i < columns; i++) {
+								values[i] = "value " + row + "/" + i;
+						}
+						batch.add(values);
+						if (batch.size() == 1000) {
+								jdbcTemplate.batchUpdate(sql, batch);
+								batch.clear();
+						}
+				}
+				if (!batch.isEmpty()) {
+						jdbcTemplate.batchUpdate(sql, batch);
+				}
+		}
+
+		@Override
+		public void close() {
+				exportService.shutdown();
+				dataSource.close();
+		}
+}
@@ -0,0 +1,71 @@
+package com.pacukievich.lab6.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Выгрузка таблицы rows × columns: XLSX через SXSSF, потоковый JSON из курсора
+// и сериализация уже загруженного List<Map<String, Object>> через ObjectMapper
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+		private static final String TABLE = "bench_export";
+
+		@Param({"1000", "50000"})
+		public int rows;
+
+		@Param({"5", "20"})
+		public int columns;
+
+		private BenchmarkDatabase database;
+		private List<Map<String, Object>> loadedRows;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+				database = new BenchmarkDatabase();
+				database.createTable(TABLE, rows, columns);
+				loadedRows = database.tableService.getTableData(TABLE);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+				database.tableService.deleteTable(TABLE);
+				database.close();
+		}
+
+		@Benchmark
+		public void exportXlsx() throws IOException {
+				database.exportService.writeTableXlsx(TABLE, OutputStream.nullOutputStream());
+		}
+
+		@Benchmark
+		public void exportJsonStreaming() throws IOException {
+				database.exportService.writeTableJson(TABLE, OutputStream.nullOutputStream());
+		}
+
+		@Benchmark
+		public void serializeRowList() throws IOException {
+				database.objectMapper.writeValue(OutputStream.nullOutputStream(), loadedRows);
+		}
+}
@@ -0,0 +1,93 @@
+package com.pacukievich.lab6.service;
+
+import com.pacukievich.lab6.model.TableRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableServiceBenchmark {
+
+		private static final String TABLE = "bench_rows";
+
+		@Param({"1000", "10000"})
+		public int rows;
+
+		@Param({"5", "20"})
+		public int columns;
+
+		private BenchmarkDatabase database;
+		private TableRequest createRequest;
+		private long nextUpdateId;
+		private long nextInsertId;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+				database = new BenchmarkDatabase();
+				database.createTable(TABLE, rows, columns);
+				createRequest = BenchmarkDatabase.tableRequest("bench_create", columns);
+		}
+
+		// Строки, добавленные бенчмарком вставки, удаляются, чтобы размер таблицы не рос между итерациями
+		@Setup(Level.Iteration)
+		public void resetInserted() {
+				database.jdbcTemplate.update("DELETE FROM \"" + TABLE + "\" WHERE \"id\" > ?", rows);
+				nextInsertId = rows;
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+				database.tableService.deleteTable(TABLE);
+				database.close();
+		}
+
+		@Benchmark
+		public List<Map<String, Object>> getTableData() {
+				return database.tableService.getTableData(TABLE);
+		}
+
+		@Benchmark
+		public String generateCreateTableSQL() {
+				return database.tableService.generateCreateTableSQL(createRequest);
+		}
+
+		@Benchmark
+		public void updateOrInsertRowUpdate() {
+				long id = nextUpdateId++ % rows + 1;
+				database.tableService.updateOrInsertRow(TABLE, String.valueOf(id), rowValues(id));
+		}
+
+		@Benchmark
+		public void updateOrInsertRowInsert() {
+				long id = ++nextInsertId;
+				database.tableService.updateOrInsertRow(TABLE, String.valueOf(id), rowValues(id));
+		}
+
+		private Map<String, String> rowValues(long id) {
+				Map<String, String> values = new HashMap<>();
+				for (int i = 0; i < columns; i++) {
+						values.put("col_" + i, "updated " + id + "/" + i);
+				}
+				return values;
+		}
+}
@@ -0,0 +1,47 @@
+package com.pacukievich.lab6.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Задержки одного типа запросов в микросекундах. Прогон нагрузки длится минуты,
+// поэтому все значения хранятся целиком и перцентили считаются точно по отсортированному массиву.
+class LatencyRecorder {
+
+		private long[] values = new long[1024];
+		private int count;
+		private long errors;
+
+		synchronized void record(long micros, boolean success) {
+				if (count == values.length) {
+						values = Arrays.copyOf(values, values.length * 2);
+				}
+				values[count++] = micros;
+				if (!success) {
+						errors++;
+				}
+		}
+
+		synchronized Map<String, Object> summary(double durationSeconds) {
+				long[] sorted = Arrays.copyOf(values, count);
+				Arrays.sort(sorted);
+				Map<String, Object> summary = new LinkedHashMap<>();
+				summary.put("requests", count);
+				summary.put("errors", errors);
+				summary.put("errorRate", count == 0 ? 0.0 : (double) errors / count);
+				summary.put("throughputPerSecond", count / durationSeconds);
+				summary.put("p50Millis", percentile(sorted, 0.50));
+				summary.put("p95Millis", percentile(sorted, 0.95));
+				summary.put("p99Millis", percentile(sorted, 0.99));
+				summary.put("maxMillis", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+				return summary;
+		}
+
+		private static double percentile(long[] sorted, double quantile) {
+				if (sorted.length == 0) {
+						return 0.0;
+				}
+				int index = (int) Math.ceil(quantile * sorted.length) - 1;
+				return sorted[Math.max(index, 0)] / 1000.0;
+		}
+}
@@ -0,0 +1,295 @@
+package com.pacukievich.lab6.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.pacukievich.lab6.Lab6Application;
+import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TableRequest;
+import com.pacukievich.lab6.service.TableService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Нагрузочный прогон REST API: приложение поднимается в этом же процессе на случайном порту
+// (база — локальный PostgreSQL из application.properties или из --spring.datasource.url=...),
+// таблицы заполняются через TableService.createTable, затем смесь запросов чтения, поиска,
+// записи и выгрузки подаётся с заданной частотой. Задержка считается от запланированного момента
+// отправки, а не от фактического, чтобы перегрузка сервера не скрывалась отставанием клиента.
+//
+// Параметры — аргументы вида ключ=значение: tables, rows, columns, rate (запросов/с), duration (с),
+// concurrency, mix (например read:60,search:20,write:15,export:5), report (путь к JSON-отчёту), keep=true.
+public class LoadTestRunner {
+
+		private static final String TABLE_PREFIX = "loadtest_";
+
+		private final HttpClient client;
+		private final String baseUrl;
+		private final List<String> tables;
+		private final int rows;
+		private final int columns;
+		private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+		private final AtomicLong dropped = new AtomicLong();
+
+		LoadTestRunner(int port, List<String> tables, int rows, int columns) {
+				this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+				this.baseUrl = "http://localhost:" + port;
+				this.tables = tables;
+				this.rows = rows;
+				this.columns = columns;
+		}
+
+		public static void main(String[] args) throws Exception {
+				Map<String, String> options = new HashMap<>();
+				List<String> springArgs = new ArrayList<>(List.of("--server.port=0", "--spring.jpa.show-sql=false"));
+				for (String arg : args) {
+						if (arg.startsWith("--")) {
+								springArgs.add(arg);
+						} else if (arg.contains("=")) {
+								options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+						}
+				}
+				int tableCount = Integer.parseInt(options.getOrDefault("tables", "3"));
+				int rows = Integer.parseInt(options.getOrDefault("rows", "10000"));
+				int columns = Integer.parseInt(options.getOrDefault("columns", "8"));
+				int rate = Integer.parseInt(options.getOrDefault("rate", "50"));
+				int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+				int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+				Map<String, Integer> mix = parseMix(options.getOrDefault("mix", "read:60,search:20,write:15,export:5"));
+				File reportFile = new File(options.getOrDefault("report", "target/loadtest-report.json"));
+
+				ConfigurableApplicationContext context = SpringApplication.run(Lab6Application.class, springArgs.toArray(new String[0]));
+				TableService tableService = context.getBean(TableService.class);
+				List<String> tables = new ArrayList<>();
+				try {
+						JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+						for (int i = 0; i < tableCount; i++) {
+								String tableName = TABLE_PREFIX + i;
+								seedTable(tableService, jdbcTemplate, tableName, rows, columns);
+								tables.add(tableName);
+						}
+						System.out.println("Заполнено таблиц: " + tableCount + " по " + rows + " строк, " + columns + " колонок");
+
+						int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+						LoadTestRunner runner = new LoadTestRunner(port, tables, rows, columns);
+						Map<String, Object> report = runner.run(rate, duration, concurrency, mix);
+						report.put("config", Map.of("tables", tableCount, "rows", rows, "columns", columns, "rate", rate,
+										"durationSeconds", duration, "concurrency", concurrency, "mix", mix));
+
+						ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+						if (reportFile.getParentFile() != null) {
+								reportFile.getParentFile().mkdirs();
+						}
+						mapper.writeValue(reportFile, report);
+						System.out.println(mapper.writeValueAsString(report));
+						System.out.println("Отчёт сохранён: " + reportFile.getAbsolutePath());
+				} finally {
+						if (!Boolean.parseBoolean(options.getOrDefault("keep", "false"))) {
+								tables.forEach(tableService::deleteTable);
+						}
+						context.close();
+				}
+		}
+
+		private static Map<String, Integer> parseMix(String mix) {
+				Map<String, Integer> weights = new LinkedHashMap<>();
+				for (String part : mix.split(",")) {
+						String[] pair = part.trim().split(":");
+						String operation = pair[0].trim();
+						if (!List.of("read", "search", "write", "export").contains(operation)) {
+								throw new IllegalArgumentException("Неизвестный тип запроса в mix: " + operation);
+						}
+						weights.put(operation, Integer.parseInt(pair[1].trim()));
+				}
+				return weights;
+		}
+
+		private static void seedTable(TableService tableService, JdbcTemplate jdbcTemplate, String tableName, int rows, int columns) {
+				tableService.deleteTable(tableName);
+				List<FieldRequest> fields = new ArrayList<>();
+				List<String> names = new ArrayList<>();
+				List<String> placeholders = new ArrayList<>();
+				for (int i = 0; i < columns; i++) {
+						FieldRequest field = new FieldRequest();
+						field.setName("col_" + i);
+						field.setType("VARCHAR(64)");
+						fields.add(field);
+						names.add("\"col_" + i + "\"");
+						placeholders.add("?");
+				}
+				TableRequest request = new TableRequest();
+				request.setTableName(tableName);
+				request.setFields(fields);
+				tableService.createTable(request);
+
+				String sql = "INSERT INTO \"" + tableName + "\" (" + String.join(", ", names) + ") VALUES (" +
+								String.join(", ", placeholders) + ")";
+				List<Object[]> batch = new ArrayList<>();
+				for (int row = 0; row < rows; row++) {
+						Object[] values = new Object[columns];
+						for (int i = 0; i < columns; i++) {
+								values[i] = "value " + row + " " + i;
+						}
+						batch.add(values);
+						if (batch.size() == 1000 || row == rows - 1) {
+								jdbcTemplate.batchUpdate(sql, batch);
+								batch.clear();
+						}
+				}
+		}
+
+		Map<String, Object> run(int rate, int durationSeconds, int concurrency, Map<String, Integer> mix) throws InterruptedException {
+				mix.keySet().forEach(operation -> recorders.put(operation, new LatencyRecorder()));
+				LatencyRecorder overall = new LatencyRecorder();
+				int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+				ThreadPoolExecutor workers = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+								new ArrayBlockingQueue<>(concurrency * 4), new CustomizableThreadFactory("loadtest-"));
+				HeapSampler heap = new HeapSampler();
+
+				long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+				long total = (long) rate * durationSeconds;
+				long start = System.nanoTime();
+				for (long i = 0; i < total; i++) {
+						long intendedStart = start + i * periodNanos;
+						long delay = intendedStart - System.nanoTime();
+						if (delay > 0) {
+								LockSupport.parkNanos(delay);
+						}
+						String operation = pickOperation(mix, totalWeight);
+						try {
+								workers.execute(() -> {
+										boolean success = execute(operation);
+										long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+										recorders.get(operation).record(micros, success);
+										overall.record(micros, success);
+								});
+						} catch (RejectedExecutionException e) {
+								// Клиент не успевает отправлять запросы с заданной частотой
+								dropped.incrementAndGet();
+						}
+				}
+				workers.shutdown();
+				workers.awaitTermination(durationSeconds + 300L, TimeUnit.SECONDS);
+				double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+				Map<String, Object> report = new LinkedHashMap<>();
+				report.put("overall", overall.summary(elapsedSeconds));
+				Map<String, Object> operations = new LinkedHashMap<>();
+				recorders.forEach((operation, recorder) -> operations.put(operation, recorder.summary(elapsedSeconds)));
+				report.put("operations", operations);
+				report.put("droppedByClient", dropped.get());
+				report.put("heap", heap.stop());
+				return report;
+		}
+
+		private String pickOperation(Map<String, Integer> mix, int totalWeight) {
+				int point = ThreadLocalRandom.current().nextInt(totalWeight);
+				for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+						point -= entry.getValue();
+						if (point < 0) {
+								return entry.getKey();
+						}
+				}
+				return mix.keySet().iterator().next();
+		}
+
+		private boolean execute(String operation) {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				String table = tables.get(random.nextInt(tables.size()));
+				int row = random.nextInt(rows);
+				HttpRequest request = switch (operation) {
+						case "read" -> get("/api/" + table + "?pageSize=100");
+						case "search" -> get("/api/search?tableName=" + table + "&columnName=col_" + random.nextInt(columns) +
+										"&term=" + encode("value " + row));
+						case "write" -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/" + table + "/update"))
+										.header("Content-Type", "application/x-www-form-urlencoded")
+										.POST(HttpRequest.BodyPublishers.ofString("updatedJson=" +
+														encode("[{\"id\": \"" + (row + 1) + "\", \"col_0\": \"updated " + System.nanoTime() + "\"}]")))
+										.build();
+						default -> get("/api/export-all");
+				};
+				try {
+						HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+						return response.statusCode() / 100 == 2;
+				} catch (Exception e) {
+						return false;
+				}
+		}
+
+		private HttpRequest get(String path) {
+				return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofMinutes(5)).GET().build();
+		}
+
+		private static String encode(String value) {
+				return URLEncoder.encode(value, StandardCharsets.UTF_8);
+		}
+
+		// Куча процесса (приложение и клиент работают в одной JVM) — раз в 500 мс, плюс сборки мусора за прогон
+		private static class HeapSampler {
+				private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+				private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("heap-sampler-"));
+				private final long gcCountBefore = gcCount();
+				private final long gcTimeBefore = gcTime();
+				private long maxUsed;
+				private long usedSum;
+				private long samples;
+
+				HeapSampler() {
+						scheduler.scheduleAtFixedRate(this::sample, 0, 500, TimeUnit.MILLISECONDS);
+				}
+
+				private synchronized void sample() {
+						long used = memory.getHeapMemoryUsage().getUsed();
+						maxUsed = Math.max(maxUsed, used);
+						usedSum += used;
+						samples++;
+				}
+
+				synchronized Map<String, Object> stop() {
+						scheduler.shutdownNow();
+						Map<String, Object> result = new LinkedHashMap<>();
+						result.put("maxUsedMb", maxUsed / (1024 * 1024));
+						result.put("avgUsedMb", samples == 0 ? 0 : usedSum / samples / (1024 * 1024));
+						result.put("maxHeapMb", memory.getHeapMemoryUsage().getMax() / (1024 * 1024));
+						result.put("gcCount", gcCount() - gcCountBefore);
+						result.put("gcTimeMillis", gcTime() - gcTimeBefore);
+						return result;
+				}
+
+				private static long gcCount() {
+						return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+				}
+
+				private static long gcTime() {
+						return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+				}
+		}
+}
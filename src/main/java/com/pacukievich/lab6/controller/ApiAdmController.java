@@ -3,21 +3,25 @@ package com.pacukievich.lab6.controller;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TablePage;
 import com.pacukievich.lab6.model.TableRequest;
+import com.pacukievich.lab6.service.BackupDownloadService;
+import com.pacukievich.lab6.service.DumpJobService;
 import com.pacukievich.lab6.service.DumpService;
+import com.pacukievich.lab6.service.ExportService;
+import com.pacukievich.lab6.service.ImportService;
 import com.pacukievich.lab6.service.TableService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -29,10 +33,20 @@ import java.util.*;
 public class ApiAdmController {
 		private final TableService tableService;
 		private final DumpService dumpService;
-
-		public ApiAdmController(TableService tableService, DumpService dumpService) {
+		private final ExportService exportService;
+		private final BackupDownloadService backupDownloadService;
+		private final DumpJobService dumpJobService;
+		private final ImportService importService;
+
+		public ApiAdmController(TableService tableService, DumpService dumpService, ExportService exportService,
+		                        BackupDownloadService backupDownloadService, DumpJobService dumpJobService,
+		                        ImportService importService) {
 				this.tableService = tableService;
 				this.dumpService = dumpService;
+				this.exportService = exportService;
+				this.backupDownloadService = backupDownloadService;
+				this.dumpJobService = dumpJobService;
+				this.importService = importService;
 		}
 
 		@PostMapping("/create")
@@ -91,11 +105,29 @@ public class ApiAdmController {
 				}
 		}
 
+		@GetMapping("/metadata-cache")
+		public ResponseEntity<Map<String, Object>> metadataCacheStats() {
+				return ResponseEntity.ok(tableService.getSchemaCacheStats());
+		}
+
 		@GetMapping("/{tableName}")
-		public ResponseEntity<?> viewTable(@PathVariable String tableName) {
+		public ResponseEntity<?> viewTable(@PathVariable String tableName,
+		                                   @RequestParam(required = false) String pageToken,
+		                                   @RequestParam(required = false) Integer pageSize,
+		                                   @RequestParam(defaultValue = "false") boolean stream) {
+				if (stream) {
+						StreamingResponseBody body = out -> exportService.writeTableJson(tableName, out);
+						return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+				}
 				try {
-						List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-						return ResponseEntity.ok(tableData);
+						TablePage page = tableService.getTablePage(tableName, pageToken, pageSize);
+						ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+						if (page.getNextPageToken() != null) {
+								response.header("X-Next-Page-Token", page.getNextPageToken());
+						}
+						return response.body(page.getRows());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
 				} catch (Exception e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
 										.body("Ошибка: " + e.getMessage());
@@ -103,23 +135,108 @@ public class ApiAdmController {
 		}
 
 		@GetMapping("/search")
-		public List<Map<String, Object>> search(
+		public ResponseEntity<?> search(
 						@RequestParam String tableName,
 						@RequestParam String columnName,
-						@RequestParam String term
+						@RequestParam String term,
+						@RequestParam(required = false) String pageToken,
+						@RequestParam(required = false) Integer pageSize
+		) {
+				try {
+						TablePage page = tableService.searchRowsByColumn(tableName, columnName, term, pageToken, pageSize);
+						ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+						if (page.getNextPageToken() != null) {
+								response.header("X-Next-Page-Token", page.getNextPageToken());
+						}
+						return response.body(page.getRows());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@GetMapping("/search-all")
+		public ResponseEntity<?> searchAll(
+						@RequestParam String tableName,
+						@RequestParam String term,
+						@RequestParam(required = false) String pageToken,
+						@RequestParam(required = false) Integer pageSize
 		) {
-				return tableService.searchRowsByColumn(tableName, columnName, term);
+				try {
+						TablePage page = tableService.searchAllColumns(tableName, term, pageToken, pageSize);
+						ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+						if (page.getNextPageToken() != null) {
+								response.header("X-Next-Page-Token", page.getNextPageToken());
+						}
+						return response.body(page.getRows());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@PostMapping("/{tableName}/fulltext-index")
+		public ResponseEntity<?> createFullTextIndex(@PathVariable String tableName) {
+				try {
+						tableService.createFullTextIndex(tableName);
+						return ResponseEntity.ok("Полнотекстовый индекс таблицы " + tableName + " создан");
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				} catch (Exception e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@DeleteMapping("/{tableName}/fulltext-index")
+		public ResponseEntity<?> dropFullTextIndex(@PathVariable String tableName) {
+				try {
+						tableService.dropFullTextIndex(tableName);
+						return ResponseEntity.ok("Полнотекстовый индекс таблицы " + tableName + " удалён");
+				} catch (Exception e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@PostMapping("/{tableName}/search-index")
+		public ResponseEntity<?> createSearchIndex(@PathVariable String tableName,
+		                                           @RequestParam("columnName") String columnName) {
+				try {
+						tableService.createSearchIndex(tableName, columnName);
+						return ResponseEntity.ok("Поисковый индекс по столбцу " + columnName + " создан");
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				} catch (Exception e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@DeleteMapping("/{tableName}/search-index")
+		public ResponseEntity<?> dropSearchIndex(@PathVariable String tableName,
+		                                         @RequestParam("columnName") String columnName) {
+				try {
+						tableService.dropSearchIndex(tableName, columnName);
+						return ResponseEntity.ok("Поисковый индекс по столбцу " + columnName + " удалён");
+				} catch (Exception e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@GetMapping("/{tableName}/search-index")
+		public ResponseEntity<?> searchIndexStatus(@PathVariable String tableName,
+		                                           @RequestParam("columnName") String columnName) {
+				Map<String, Object> response = new HashMap<>();
+				response.put("table", tableName);
+				response.put("column", columnName);
+				response.put("indexed", tableService.hasSearchIndex(tableName, columnName));
+				return ResponseEntity.ok(response);
 		}
 
 		// === Бэкап ===
+		// Копия и восстановление выполняются в фоне: ответ 202 с заданием, ход — через /jobs/{id}
 		@GetMapping("/backup")
-		public ResponseEntity<?> backupDatabase() {
+		public ResponseEntity<?> backupDatabase(@RequestParam(required = false) String format) {
 				try {
-						String dumpFilePath = dumpService.createDump();
-						Map<String, String> response = new HashMap<>();
-						response.put("message", "Дамп успешно создан");
-						response.put("file", dumpFilePath);
-						return ResponseEntity.ok(response);
+						return ResponseEntity.status(HttpStatus.ACCEPTED).body(dumpJobService.submitBackup(format).getStatus());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка создания дампа: " + e.getMessage());
 				} catch (Exception e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
 										.body("Ошибка создания дампа: " + e.getMessage());
@@ -129,120 +246,113 @@ public class ApiAdmController {
 		@PostMapping("/restore")
 		public ResponseEntity<?> restoreDatabase(@RequestParam("dumpFilePath") String dumpFilePath) {
 				try {
-						dumpService.restoreDump(dumpFilePath);
-						return ResponseEntity.ok("База данных успешно восстановлена");
+						return ResponseEntity.status(HttpStatus.ACCEPTED).body(dumpJobService.submitRestore(dumpFilePath).getStatus());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка восстановления: " + e.getMessage());
 				} catch (Exception e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
 										.body("Ошибка восстановления: " + e.getMessage());
 				}
 		}
 
-		@GetMapping("/download")
-		public void downloadBackup(@RequestParam("file") String fileName, HttpServletResponse response) throws IOException {
-				File file = new File(fileName);
-				if (file.exists()) {
-						response.setContentType("application/octet-stream");
-						response.setHeader("Content-Disposition", "attachment; filename=" + file.getName());
-						org.apache.commons.io.FileUtils.copyFile(file, response.getOutputStream());
-				} else {
-						response.sendError(HttpServletResponse.SC_NOT_FOUND, "Файл не найден");
+		@GetMapping("/jobs")
+		public ResponseEntity<?> dumpJobs() {
+				return ResponseEntity.ok(dumpJobService.getJobs());
+		}
+
+		@GetMapping("/jobs/{jobId}")
+		public ResponseEntity<?> dumpJob(@PathVariable String jobId) {
+				try {
+						return ResponseEntity.ok(dumpJobService.getJob(jobId).getStatus());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
 				}
 		}
 
+		@GetMapping("/download")
+		public void downloadBackup(@RequestParam("file") String fileName, HttpServletRequest request,
+		                           HttpServletResponse response) throws IOException {
+				backupDownloadService.download(fileName, request, response);
+		}
+
+		// Multipart-загрузка: контейнер сервлетов сначала сохраняет часть во временный файл, а её размер
+		// ограничен spring.servlet.multipart.max-file-size. Большие копии нужно отправлять в /restore-stream
 		@PostMapping("/upload")
 		public ResponseEntity<?> uploadBackup(@RequestParam("file") MultipartFile file) {
 				try {
 						if (file.isEmpty()) {
 								return ResponseEntity.badRequest().body("Файл не выбран");
 						}
-
-						File targetFile = new File(System.getProperty("user.home") + File.separator + "Downloads" + File.separator + file.getOriginalFilename());
-						file.transferTo(targetFile);
-
-						if (!targetFile.getName().endsWith(".sql")) {
-								return ResponseEntity.badRequest().body("Неверный формат файла. Ожидается .sql");
+						try (InputStream in = file.getInputStream()) {
+								return ResponseEntity.ok(dumpService.restoreFromStream(in, file.getSize()));
 						}
+				} catch (IllegalArgumentException | IllegalStateException e) {
+						return ResponseEntity.badRequest().body("Ошибка восстановления: " + e.getMessage());
+				} catch (IOException | InterruptedException | RuntimeException e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка восстановления: " + e.getMessage());
+				}
+		}
 
-						dumpService.restoreDump(targetFile.getAbsolutePath());
-						return ResponseEntity.ok("База данных восстановлена из загруженного бекапа");
-				} catch (IOException | InterruptedException e) {
+		// Копия передаётся телом запроса (application/octet-stream, можно сжатой gzip) и сразу идёт
+		// в восстановление — сервер не сохраняет её на диск целиком
+		@PostMapping("/restore-stream")
+		public ResponseEntity<?> restoreStream(HttpServletRequest request) {
+				try (InputStream in = request.getInputStream()) {
+						return ResponseEntity.ok(dumpService.restoreFromStream(in, request.getContentLengthLong()));
+				} catch (IllegalArgumentException | IllegalStateException e) {
+						return ResponseEntity.badRequest().body("Ошибка восстановления: " + e.getMessage());
+				} catch (IOException | InterruptedException | RuntimeException e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка восстановления: " + e.getMessage());
 				}
 		}
 
+		@GetMapping("/restore-progress")
+		public ResponseEntity<?> restoreProgress() {
+				return ResponseEntity.ok(dumpService.getRestoreProgress());
+		}
+
 		@GetMapping("/{tableName}/export")
-		public void exportTable(@PathVariable String tableName, HttpServletResponse response) throws IOException {
+		public void exportTable(@PathVariable String tableName,
+		                        @RequestParam(defaultValue = "xlsx") String format,
+		                        @RequestParam(defaultValue = "false") boolean gzip,
+		                        HttpServletResponse response) throws IOException {
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
+				boolean compress = gzip && exportFormat.isText();
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-				String fileName = String.format("%s_%s.xlsx", tableName, timestamp);
+				String fileName = String.format("%s_%s.%s", tableName, timestamp, exportFormat.getExtension()) + (compress ? ".gz" : "");
 
-				response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+				response.setContentType(compress ? "application/gzip" : exportFormat.getContentType());
 				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
 				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
 
-				List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-
-				try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-						Sheet sheet = workbook.createSheet(tableName);
-
-						if (!tableData.isEmpty()) {
-								Row headerRow = sheet.createRow(0);
-								int headerCellIndex = 0;
-								for (String key : tableData.get(0).keySet()) {
-										Cell cell = headerRow.createCell(headerCellIndex++);
-										cell.setCellValue(key);
-								}
-
-								for (int i = 0; i < tableData.size(); i++) {
-										Row row = sheet.createRow(i + 1);
-										int cellIndex = 0;
-										for (Object value : tableData.get(i).values()) {
-												Cell cell = row.createCell(cellIndex++);
-												cell.setCellValue(value != null ? value.toString() : "");
-										}
-								}
-						}
-
-						workbook.write(response.getOutputStream());
-				}
+				exportService.writeTable(tableName, exportFormat, compress, response.getOutputStream());
 		}
 
 		@GetMapping("/export-all")
-		public void exportAllTables(HttpServletResponse response) throws IOException {
+		public void exportAllTables(@RequestParam(defaultValue = "xlsx") String format,
+		                            HttpServletResponse response) throws IOException {
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-				String fileName = "full_export_" + timestamp + ".xlsx";
+				String fileName = "full_export_" + timestamp + (exportFormat.isText() ? "_" + exportFormat.getExtension() + ".zip" : ".xlsx");
 
-				response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+				response.setContentType(exportFormat.isText() ? "application/zip" : exportFormat.getContentType());
 				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
 				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
 
 				List<String> allTables = tableService.getAllTableNames();
-
-				try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-						for (String tableName : allTables) {
-								List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-								Sheet sheet = workbook.createSheet(tableName.length() > 31 ? tableName.substring(0, 31) : tableName);
-
-								if (!tableData.isEmpty()) {
-										Row headerRow = sheet.createRow(0);
-										int headerCellIndex = 0;
-										for (String key : tableData.get(0).keySet()) {
-												Cell cell = headerRow.createCell(headerCellIndex++);
-												cell.setCellValue(key);
-										}
-
-										for (int i = 0; i < tableData.size(); i++) {
-												Row row = sheet.createRow(i + 1);
-												int cellIndex = 0;
-												for (Object value : tableData.get(i).values()) {
-														Cell cell = row.createCell(cellIndex++);
-														cell.setCellValue(value != null ? value.toString() : "");
-												}
-										}
-								}
-						}
-
-						workbook.write(response.getOutputStream());
-				}
+				exportService.writeTables(allTables, exportFormat, response.getOutputStream());
 		}
 
 		@PostMapping("/{tableName}/add-columns")
@@ -288,18 +398,39 @@ public class ApiAdmController {
 						ObjectMapper mapper = new ObjectMapper();
 						List<Map<String, String>> updates = mapper.readValue(updatedJson, new TypeReference<>() {});
 
-						for (Map<String, String> row : updates) {
-								if (row.containsKey("id")) {
-										String id = row.remove("id");
-										tableService.updateOrInsertRow(tableName, id, row);
-								}
-						}
+						tableService.upsertRows(tableName, updates);
 						return ResponseEntity.ok("Изменения сохранены");
 				} catch (Exception e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка: " + e.getMessage());
 				}
 		}
 
+		// Загрузка CSV/XLSX через COPY; create — создать таблицу, если её нет, inferTypes — определить типы колонок
+		// Размер файла ограничен spring.servlet.multipart.max-file-size
+		@PostMapping("/{tableName}/import")
+		public ResponseEntity<?> importFile(@PathVariable String tableName,
+		                                    @RequestParam("file") MultipartFile file,
+		                                    @RequestParam(required = false) String format,
+		                                    @RequestParam(defaultValue = "true") boolean create,
+		                                    @RequestParam(defaultValue = "true") boolean inferTypes,
+		                                    @RequestParam(defaultValue = ",") String delimiter,
+		                                    @RequestParam(defaultValue = "true") boolean header) {
+				if (file.isEmpty()) {
+						return ResponseEntity.badRequest().body("Файл не выбран");
+				}
+				if (delimiter.length() != 1) {
+						return ResponseEntity.badRequest().body("Разделитель должен быть одним символом");
+				}
+				try (InputStream in = file.getInputStream()) {
+						ImportService.ImportOptions options = new ImportService.ImportOptions(format, create, inferTypes, delimiter.charAt(0), header);
+						return ResponseEntity.ok(importService.importFile(tableName, file.getOriginalFilename(), in, options));
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка импорта: " + e.getMessage());
+				} catch (Exception e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка импорта: " + e.getMessage());
+				}
+		}
+
 		@PostMapping("/{tableName}/delete-columns")
 		public ResponseEntity<?> deleteColumns(@PathVariable String tableName, @RequestBody List<String> columns) {
 				try {
@@ -3,21 +3,23 @@ package com.pacukievich.lab6.controller;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TablePage;
 import com.pacukievich.lab6.model.TableRequest;
 import com.pacukievich.lab6.service.DumpService;
+import com.pacukievich.lab6.service.ExportService;
+import com.pacukievich.lab6.service.ImportService;
 import com.pacukievich.lab6.service.TableService;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -29,10 +31,15 @@ import java.util.*;
 public class ApiController {
 		private final TableService tableService;
 		private final DumpService dumpService;
+		private final ExportService exportService;
+		private final ImportService importService;
 
-		public ApiController(TableService tableService, DumpService dumpService) {
+		public ApiController(TableService tableService, DumpService dumpService, ExportService exportService,
+		                     ImportService importService) {
 				this.tableService = tableService;
 				this.dumpService = dumpService;
+				this.exportService = exportService;
+				this.importService = importService;
 		}
 
 		@PostMapping("/create")
@@ -92,10 +99,23 @@ public class ApiController {
 		}
 
 		@GetMapping("/{tableName}")
-		public ResponseEntity<?> viewTable(@PathVariable String tableName) {
+		public ResponseEntity<?> viewTable(@PathVariable String tableName,
+		                                   @RequestParam(required = false) String pageToken,
+		                                   @RequestParam(required = false) Integer pageSize,
+		                                   @RequestParam(defaultValue = "false") boolean stream) {
+				if (stream) {
+						StreamingResponseBody body = out -> exportService.writeTableJson(tableName, out);
+						return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+				}
 				try {
-						List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-						return ResponseEntity.ok(tableData);
+						TablePage page = tableService.getTablePage(tableName, pageToken, pageSize);
+						ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+						if (page.getNextPageToken() != null) {
+								response.header("X-Next-Page-Token", page.getNextPageToken());
+						}
+						return response.body(page.getRows());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
 				} catch (Exception e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
 										.body("Ошибка: " + e.getMessage());
@@ -103,87 +123,86 @@ public class ApiController {
 		}
 
 		@GetMapping("/search")
-		public List<Map<String, Object>> search(
+		public ResponseEntity<?> search(
 						@RequestParam String tableName,
 						@RequestParam String columnName,
-						@RequestParam String term
+						@RequestParam String term,
+						@RequestParam(required = false) String pageToken,
+						@RequestParam(required = false) Integer pageSize
+		) {
+				try {
+						TablePage page = tableService.searchRowsByColumn(tableName, columnName, term, pageToken, pageSize);
+						ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+						if (page.getNextPageToken() != null) {
+								response.header("X-Next-Page-Token", page.getNextPageToken());
+						}
+						return response.body(page.getRows());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		@GetMapping("/search-all")
+		public ResponseEntity<?> searchAll(
+						@RequestParam String tableName,
+						@RequestParam String term,
+						@RequestParam(required = false) String pageToken,
+						@RequestParam(required = false) Integer pageSize
 		) {
-				return tableService.searchRowsByColumn(tableName, columnName, term);
+				try {
+						TablePage page = tableService.searchAllColumns(tableName, term, pageToken, pageSize);
+						ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+						if (page.getNextPageToken() != null) {
+								response.header("X-Next-Page-Token", page.getNextPageToken());
+						}
+						return response.body(page.getRows());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				}
 		}
 
 		@GetMapping("/{tableName}/export")
-		public void exportTable(@PathVariable String tableName, HttpServletResponse response) throws IOException {
+		public void exportTable(@PathVariable String tableName,
+		                        @RequestParam(defaultValue = "xlsx") String format,
+		                        @RequestParam(defaultValue = "false") boolean gzip,
+		                        HttpServletResponse response) throws IOException {
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
+				boolean compress = gzip && exportFormat.isText();
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-				String fileName = String.format("%s_%s.xlsx", tableName, timestamp);
+				String fileName = String.format("%s_%s.%s", tableName, timestamp, exportFormat.getExtension()) + (compress ? ".gz" : "");
 
-				response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+				response.setContentType(compress ? "application/gzip" : exportFormat.getContentType());
 				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
 				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
 
-				List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-
-				try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-						Sheet sheet = workbook.createSheet(tableName);
-
-						if (!tableData.isEmpty()) {
-								Row headerRow = sheet.createRow(0);
-								int headerCellIndex = 0;
-								for (String key : tableData.get(0).keySet()) {
-										Cell cell = headerRow.createCell(headerCellIndex++);
-										cell.setCellValue(key);
-								}
-
-								for (int i = 0; i < tableData.size(); i++) {
-										Row row = sheet.createRow(i + 1);
-										int cellIndex = 0;
-										for (Object value : tableData.get(i).values()) {
-												Cell cell = row.createCell(cellIndex++);
-												cell.setCellValue(value != null ? value.toString() : "");
-										}
-								}
-						}
-
-						workbook.write(response.getOutputStream());
-				}
+				exportService.writeTable(tableName, exportFormat, compress, response.getOutputStream());
 		}
 
 		@GetMapping("/export-all")
-		public void exportAllTables(HttpServletResponse response) throws IOException {
+		public void exportAllTables(@RequestParam(defaultValue = "xlsx") String format,
+		                            HttpServletResponse response) throws IOException {
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-				String fileName = "full_export_" + timestamp + ".xlsx";
+				String fileName = "full_export_" + timestamp + (exportFormat.isText() ? "_" + exportFormat.getExtension() + ".zip" : ".xlsx");
 
-				response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+				response.setContentType(exportFormat.isText() ? "application/zip" : exportFormat.getContentType());
 				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
 				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
 
 				List<String> allTables = tableService.getAllTableNames();
-
-				try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-						for (String tableName : allTables) {
-								List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-								Sheet sheet = workbook.createSheet(tableName.length() > 31 ? tableName.substring(0, 31) : tableName);
-
-								if (!tableData.isEmpty()) {
-										Row headerRow = sheet.createRow(0);
-										int headerCellIndex = 0;
-										for (String key : tableData.get(0).keySet()) {
-												Cell cell = headerRow.createCell(headerCellIndex++);
-												cell.setCellValue(key);
-										}
-
-										for (int i = 0; i < tableData.size(); i++) {
-												Row row = sheet.createRow(i + 1);
-												int cellIndex = 0;
-												for (Object value : tableData.get(i).values()) {
-														Cell cell = row.createCell(cellIndex++);
-														cell.setCellValue(value != null ? value.toString() : "");
-												}
-										}
-								}
-						}
-
-						workbook.write(response.getOutputStream());
-				}
+				exportService.writeTables(allTables, exportFormat, response.getOutputStream());
 		}
 
 		@PostMapping("/{tableName}/add-columns")
@@ -229,18 +248,39 @@ public class ApiController {
 						ObjectMapper mapper = new ObjectMapper();
 						List<Map<String, String>> updates = mapper.readValue(updatedJson, new TypeReference<>() {});
 
-						for (Map<String, String> row : updates) {
-								if (row.containsKey("id")) {
-										String id = row.remove("id");
-										tableService.updateOrInsertRow(tableName, id, row);
-								}
-						}
+						tableService.upsertRows(tableName, updates);
 						return ResponseEntity.ok("Изменения сохранены");
 				} catch (Exception e) {
 						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка: " + e.getMessage());
 				}
 		}
 
+		// Загрузка CSV/XLSX через COPY; create — создать таблицу, если её нет, inferTypes — определить типы колонок
+		// Размер файла ограничен spring.servlet.multipart.max-file-size
+		@PostMapping("/{tableName}/import")
+		public ResponseEntity<?> importFile(@PathVariable String tableName,
+		                                    @RequestParam("file") MultipartFile file,
+		                                    @RequestParam(required = false) String format,
+		                                    @RequestParam(defaultValue = "true") boolean create,
+		                                    @RequestParam(defaultValue = "true") boolean inferTypes,
+		                                    @RequestParam(defaultValue = ",") String delimiter,
+		                                    @RequestParam(defaultValue = "true") boolean header) {
+				if (file.isEmpty()) {
+						return ResponseEntity.badRequest().body("Файл не выбран");
+				}
+				if (delimiter.length() != 1) {
+						return ResponseEntity.badRequest().body("Разделитель должен быть одним символом");
+				}
+				try (InputStream in = file.getInputStream()) {
+						ImportService.ImportOptions options = new ImportService.ImportOptions(format, create, inferTypes, delimiter.charAt(0), header);
+						return ResponseEntity.ok(importService.importFile(tableName, file.getOriginalFilename(), in, options));
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка импорта: " + e.getMessage());
+				} catch (Exception e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка импорта: " + e.getMessage());
+				}
+		}
+
 		@PostMapping("/{tableName}/delete-columns")
 		public ResponseEntity<?> deleteColumns(@PathVariable String tableName, @RequestBody List<String> columns) {
 				try {
@@ -0,0 +1,88 @@
+package com.pacukievich.lab6.controller;
+
+import com.pacukievich.lab6.service.QueryJob;
+import com.pacukievich.lab6.service.QueryJobService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/queries/jobs")
+public class QueryJobController {
+
+		private final QueryJobService jobService;
+
+		public QueryJobController(QueryJobService jobService) {
+				this.jobService = jobService;
+		}
+
+		@PostMapping
+		public ResponseEntity<?> submit(@RequestParam(required = false) String queryText,
+		                                @RequestParam(required = false) Long queryId,
+		                                @RequestParam Map<String, String> params,
+		                                HttpServletRequest request) {
+				String clientKey = clientKey(request);
+				try {
+						QueryJob job;
+						if (queryId != null) {
+								job = jobService.submitSavedQuery(queryId, params, clientKey);
+						} else if (queryText != null && !queryText.isBlank()) {
+								job = jobService.submitSql(queryText, clientKey);
+						} else {
+								return ResponseEntity.badRequest().body("Укажите queryText или queryId");
+						}
+						return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.getStatus());
+				} catch (RejectedExecutionException e) {
+						return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка: " + e.getMessage());
+				}
+		}
+
+		// REST-клиент без cookie получает новую HTTP-сессию на каждый POST, поэтому лимит на клиента
+		// считается по пользователю, а для анонимных запросов — по адресу клиента
+		private static String clientKey(HttpServletRequest request) {
+				Principal principal = request.getUserPrincipal();
+				if (principal != null) {
+						return "user:" + principal.getName();
+				}
+				return "addr:" + request.getRemoteAddr();
+		}
+
+		@GetMapping("/{jobId}")
+		public ResponseEntity<?> status(@PathVariable String jobId) {
+				try {
+						return ResponseEntity.ok(jobService.getJob(jobId).getStatus());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+				}
+		}
+
+		@GetMapping("/{jobId}/results")
+		public ResponseEntity<?> results(@PathVariable String jobId,
+		                                 @RequestParam(defaultValue = "0") int offset,
+		                                 @RequestParam(defaultValue = "100") int limit) {
+				try {
+						return ResponseEntity.ok(jobService.getJob(jobId).getPage(offset, Math.min(limit, 1000)));
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+				}
+		}
+
+		@DeleteMapping("/{jobId}")
+		public ResponseEntity<?> cancel(@PathVariable String jobId) {
+				try {
+						if (jobService.cancel(jobId)) {
+								return ResponseEntity.ok("Запрос отменён");
+						}
+						return ResponseEntity.status(HttpStatus.CONFLICT).body("Запрос уже завершён");
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+				}
+		}
+}
@@ -1,22 +1,33 @@
 package com.pacukievich.lab6.controller;
 
+import com.pacukievich.lab6.model.QueryPlanRun;
+import com.pacukievich.lab6.model.QueryResult;
 import com.pacukievich.lab6.model.SavedQuery;
-import com.pacukievich.lab6.repository.SavedQueryRepository;
+import com.pacukievich.lab6.service.ExportService;
+import com.pacukievich.lab6.service.QueryProfilerService;
 import com.pacukievich.lab6.service.SavedQueryService;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -24,15 +35,16 @@ import java.util.Map;
 @RequestMapping("/queries")
 public class SavedQueryController {
 
-		private final JdbcTemplate jdbcTemplate;
-		private final SavedQueryRepository repository;
 
 		private final SavedQueryService queryService;
+		private final QueryProfilerService profilerService;
+		private final ExportService exportService;
 
-		public SavedQueryController(SavedQueryService queryService, JdbcTemplate jdbcTemplate, SavedQueryRepository repository) {
+		public SavedQueryController(SavedQueryService queryService, QueryProfilerService profilerService,
+		                            ExportService exportService) {
 				this.queryService = queryService;
-				this.jdbcTemplate = jdbcTemplate;
-				this.repository = repository;
+				this.profilerService = profilerService;
+				this.exportService = exportService;
 		}
 
 		@GetMapping
@@ -43,34 +55,154 @@ public class SavedQueryController {
 		}
 
 		@GetMapping("/{id}")
-		public String executeQuery(@PathVariable Long id, Model model) {
+		public String executeQuery(@PathVariable Long id, @RequestParam Map<String, String> params,
+		                           Model model, HttpServletResponse response, HttpSession session) {
 				SavedQuery query = queryService.getQueryById(id);
-				List<Map<String, Object>> result = queryService.executeSql(query.getQueryText());
+				Map<String, String> declared = queryService.getDeclaredParameters(query);
+				model.addAttribute("queryId", id);
+				model.addAttribute("parameters", declared);
+				model.addAttribute("parameterValues", params);
 
+				// Пока не заданы все параметры, показываем только форму ввода
+				if (!params.keySet().containsAll(declared.keySet())) {
+						model.addAttribute("queryName", query.getName());
+						return "queries/result";
+				}
+
+				QueryResult result;
+				try {
+						result = queryService.executeSavedQuery(query, params, session.getId());
+				} catch (IllegalArgumentException | IllegalStateException | DataAccessException e) {
+						model.addAttribute("queryName", query.getName());
+						model.addAttribute("error", e.getMessage());
+						return "queries/result";
+				}
+
+				response.setHeader("X-Query-Cache", result.getCacheStatus());
+				response.setHeader("Age", String.valueOf(result.getAgeMillis() / 1000));
 				model.addAttribute("queryName", query.getName());
-				model.addAttribute("result", result);
+				model.addAttribute("result", result.getRows());
+				model.addAttribute("cacheStatus", result.getCacheStatus());
+				model.addAttribute("cacheAgeSeconds", result.getAgeMillis() / 1000);
+				model.addAttribute("truncated", result.isTruncated());
 				return "queries/result";
 		}
+		// Полный результат сохранённого запроса в csv/ndjson: запрос выполняется заново курсором и пишется
+		// в ответ по мере чтения, без лимита строк страницы результата. Параметры запроса — как у GET /{id}.
+		@GetMapping("/{id}/export")
+		public void exportQuery(@PathVariable Long id, @RequestParam Map<String, String> params,
+		                        @RequestParam(defaultValue = "csv") String format,
+		                        @RequestParam(defaultValue = "false") boolean gzip,
+		                        HttpServletResponse response, HttpSession session) throws IOException {
+				SavedQuery query = queryService.getQueryById(id);
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+						if (!exportFormat.isText()) {
+								throw new IllegalArgumentException("Для выгрузки запроса поддерживаются только csv и ndjson");
+						}
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
+				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+				String fileName = "query_" + id + "_" + timestamp + "." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+
+				response.setContentType(gzip ? "application/gzip" : exportFormat.getContentType());
+				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
+				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
+
+				OutputStream out = response.getOutputStream();
+				try {
+						queryService.streamSavedQuery(query, params, session.getId(), rs -> {
+								try {
+										return exportService.writeResultSet(rs, exportFormat, gzip, out);
+								} catch (IOException e) {
+										throw new UncheckedIOException(e);
+								}
+						});
+				} catch (UncheckedIOException e) {
+						throw e.getCause();
+				} catch (IllegalArgumentException | IllegalStateException | DataAccessException e) {
+						// Ошибку, случившуюся до начала записи ответа, ещё можно вернуть клиенту как 400
+						if (response.isCommitted()) {
+								throw e;
+						}
+						response.reset();
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				}
+		}
+
+		@GetMapping("/{id}/profile")
+		public String profileHistory(@PathVariable Long id, Model model) {
+				SavedQuery query = queryService.getQueryById(id);
+				fillProfileModel(query, Map.of(), model);
+				return "queries/profile";
+		}
+
+		@PostMapping("/{id}/profile")
+		public String profileQuery(@PathVariable Long id, @RequestParam Map<String, String> params,
+		                           Model model, HttpSession session) {
+				SavedQuery query = queryService.getQueryById(id);
+				try {
+						profilerService.profile(query, params, session.getId());
+				} catch (IllegalArgumentException | IllegalStateException | DataAccessException e) {
+						model.addAttribute("error", e.getMessage());
+				}
+				fillProfileModel(query, params, model);
+				return "queries/profile";
+		}
+
+		private void fillProfileModel(SavedQuery query, Map<String, String> params, Model model) {
+				List<QueryPlanRun> history = profilerService.getHistory(query.getId());
+				model.addAttribute("queryId", query.getId());
+				model.addAttribute("queryName", query.getName());
+				model.addAttribute("parameters", queryService.getDeclaredParameters(query));
+				model.addAttribute("parameterValues", params);
+				model.addAttribute("history", history);
+				model.addAttribute("regressions", profilerService.findRegressions(history));
+		}
+
 		@PostMapping("/execute-temp")
-		public String executeTempQuery(@RequestParam String queryText, Model model) {
-				List<Map<String, Object>> result = jdbcTemplate.queryForList(queryText);
-				model.addAttribute("result", result);
+		public String executeTempQuery(@RequestParam String queryText,
+		                               @RequestParam(required = false) String workMem,
+		                               @RequestParam(required = false) Integer statementTimeout,
+		                               Model model, HttpSession session) {
 				model.addAttribute("queryName", "Временный запрос");
-				return "queries/result";
+				return runTempQuery(queryText, workMem, statementTimeout, model, session);
 		}
 		@PostMapping("/execute")
 		public String saveAndExecuteQuery(@RequestParam String name,
 		                                  @RequestParam String queryText,
-		                                  Model model) {
+		                                  @RequestParam(required = false) String parameters,
+		                                  @RequestParam(required = false) String workMem,
+		                                  @RequestParam(required = false) Integer statementTimeout,
+		                                  Model model, HttpSession session) {
 
-				SavedQuery savedQuery = new SavedQuery();
-				savedQuery.setName(name);
-				savedQuery.setQueryText(queryText);
-				repository.save(savedQuery);
+				SavedQuery savedQuery;
+				try {
+						savedQuery = queryService.saveQuery(name, queryText, parameters, workMem, statementTimeout);
+				} catch (IllegalArgumentException e) {
+						model.addAttribute("queryName", name);
+						model.addAttribute("error", e.getMessage());
+						return "queries/result";
+				}
+				if (!queryService.getDeclaredParameters(savedQuery).isEmpty()) {
+						return "redirect:/queries/" + savedQuery.getId();
+				}
 
-				List<Map<String, Object>> result = jdbcTemplate.queryForList(queryText);
-				model.addAttribute("result", result);
 				model.addAttribute("queryName", name);
+				return runTempQuery(queryText, savedQuery.getWorkMem(), savedQuery.getStatementTimeoutSeconds(), model, session);
+		}
+
+		private String runTempQuery(String queryText, String workMem, Integer statementTimeout, Model model, HttpSession session) {
+				try {
+						QueryResult result = queryService.executeTempQuery(queryText, session.getId(), workMem, statementTimeout);
+						model.addAttribute("result", result.getRows());
+						model.addAttribute("truncated", result.isTruncated());
+				} catch (IllegalArgumentException | IllegalStateException | DataAccessException e) {
+						model.addAttribute("error", e.getMessage());
+				}
 				return "queries/result";
 		}
 		@PostMapping("/export")
@@ -3,14 +3,15 @@ package com.pacukievich.lab6.controller;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TablePage;
 import com.pacukievich.lab6.model.TableRequest;
+import com.pacukievich.lab6.service.BackupDownloadService;
+import com.pacukievich.lab6.service.DumpJobService;
 import com.pacukievich.lab6.service.DumpService;
+import com.pacukievich.lab6.service.ExportService;
 import com.pacukievich.lab6.service.TableService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -19,8 +20,8 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -35,10 +36,17 @@ import java.util.Map;
 public class TableController {
 		private final TableService tableService;
 		private final DumpService dumpService;
+		private final ExportService exportService;
+		private final BackupDownloadService backupDownloadService;
+		private final DumpJobService dumpJobService;
 
-		public TableController(TableService tableService, DumpService dumpService) {
+		public TableController(TableService tableService, DumpService dumpService, ExportService exportService,
+		                       BackupDownloadService backupDownloadService, DumpJobService dumpJobService) {
 				this.tableService = tableService;
 				this.dumpService = dumpService;
+				this.exportService = exportService;
+				this.backupDownloadService = backupDownloadService;
+				this.dumpJobService = dumpJobService;
 		}
 
 		@GetMapping("/new")
@@ -103,62 +111,71 @@ public class TableController {
 		}
 
 		@GetMapping("/{tableName}")
-		public String viewTable(@PathVariable String tableName, Model model) {
-				List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-				List<String> columnNames;
-
-				if (!tableData.isEmpty()) {
-
-						columnNames = new ArrayList<>(tableData.get(0).keySet());
-				} else {
-
-						columnNames = tableService.getColumnNames(tableName);
-				}
+		public String viewTable(@PathVariable String tableName,
+		                        @RequestParam(required = false) String pageToken,
+		                        @RequestParam(required = false) Integer pageSize,
+		                        Model model) {
+				TablePage page = tableService.getTablePage(tableName, pageToken, pageSize);
 
 				model.addAttribute("tableName", tableName);
-				model.addAttribute("tableData", tableData);
-				model.addAttribute("columnNames", columnNames);
+				model.addAttribute("tableData", page.getRows());
+				model.addAttribute("columnNames", page.getColumns());
+				model.addAttribute("pageToken", pageToken);
+				model.addAttribute("nextPageToken", page.getNextPageToken());
+				model.addAttribute("pageSize", page.getPageSize());
 
 				return "view_table";
 		}
 
 
+		// Страница только показывает последние задания; копия запускается кнопкой через /backup-jobs
 		@GetMapping("/backup")
 		public String backupDatabase(Model model) {
+				model.addAttribute("jobs", dumpJobService.getJobs());
+				return "backup_status";
+		}
+
+		@PostMapping("/backup-jobs")
+		@ResponseBody
+		public ResponseEntity<?> submitBackup(@RequestParam(required = false) String format) {
 				try {
-						String dumpFilePath = dumpService.createDump();
+						return ResponseEntity.status(HttpStatus.ACCEPTED).body(dumpJobService.submitBackup(format).getStatus());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.badRequest().body("Ошибка создания дампа: " + e.getMessage());
+				}
+		}
 
-						model.addAttribute("message", "Дамп успешно создан: " + dumpFilePath);
-						model.addAttribute("downloadLink", "/tables/download?file=" + dumpFilePath);
-				} catch (Exception e) {
-						model.addAttribute("error", "Ошибка создания дампа: " + e.getMessage());
+		@GetMapping("/jobs/{jobId}")
+		@ResponseBody
+		public ResponseEntity<?> dumpJob(@PathVariable String jobId) {
+				try {
+						return ResponseEntity.ok(dumpJobService.getJob(jobId).getStatus());
+				} catch (IllegalArgumentException e) {
+						return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
 				}
-				return "backup_status";
 		}
 
 		@PostMapping("/restore")
 		public String restoreDatabase(@RequestParam("dumpFilePath") String dumpFilePath, Model model) {
 				try {
-						dumpService.restoreDump(dumpFilePath);
-						model.addAttribute("message", "База данных успешно восстановлена из дампа: " + dumpFilePath);
+						String jobId = dumpJobService.submitRestore(dumpFilePath).getId();
+						model.addAttribute("message", "Восстановление из дампа " + dumpFilePath + " запущено, задание " + jobId);
 				} catch (Exception e) {
 						model.addAttribute("error", "Ошибка восстановления базы данных: " + e.getMessage());
 				}
+				model.addAttribute("jobs", dumpJobService.getJobs());
 				return "backup_status";
 		}
 
 		@GetMapping("/download")
-		public void downloadBackup(@RequestParam("file") String fileName, HttpServletResponse response) throws IOException {
-				File file = new File(fileName);
-				if (file.exists()) {
-						response.setContentType("application/octet-stream");
-						response.setHeader("Content-Disposition", "attachment; filename=" + file.getName());
-						org.apache.commons.io.FileUtils.copyFile(file, response.getOutputStream());
-				} else {
-						response.sendError(HttpServletResponse.SC_NOT_FOUND, "Файл не найден");
-				}
+		public void downloadBackup(@RequestParam("file") String fileName, HttpServletRequest request,
+		                           HttpServletResponse response) throws IOException {
+				backupDownloadService.download(fileName, request, response);
 		}
 
+		// Multipart-загрузка для формы без JavaScript. Контейнер сервлетов сначала сохраняет часть во временный
+		// файл, а её размер ограничен spring.servlet.multipart.max-file-size. Большие копии страница
+		// отправляет в /restore-stream, где они восстанавливаются без промежуточного файла
 		@PostMapping("/upload")
 		public String uploadBackup(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) {
 				try {
@@ -167,59 +184,59 @@ public class TableController {
 								return "redirect:/tables";
 						}
 
-						File targetFile = new File(System.getProperty("user.home") + File.separator + "Downloads" + File.separator + file.getOriginalFilename());
-						file.transferTo(targetFile);
-
-						if (!targetFile.getName().endsWith(".sql")) {
-								redirectAttributes.addFlashAttribute("error", "Неверный формат файла. Ожидается файл с расширением .sql.");
-								return "redirect:/tables";
+						try (InputStream in = file.getInputStream()) {
+								dumpService.restoreFromStream(in, file.getSize());
 						}
 
-						dumpService.restoreDump(targetFile.getAbsolutePath());
-
 						redirectAttributes.addFlashAttribute("success", "База данных успешно восстановлена из загруженного бекапа!");
-				} catch (IOException | InterruptedException e) {
+				} catch (IOException | InterruptedException | RuntimeException e) {
 						redirectAttributes.addFlashAttribute("error", "Ошибка восстановления базы данных: " + e.getMessage());
 				}
 				return "redirect:/tables";
 		}
+
+		// Страница резервного копирования отправляет файл телом запроса: он восстанавливается по мере
+		// получения, а ход восстановления страница опрашивает через /restore-progress
+		@PostMapping("/restore-stream")
+		@ResponseBody
+		public ResponseEntity<?> restoreStream(HttpServletRequest request) {
+				try (InputStream in = request.getInputStream()) {
+						return ResponseEntity.ok(dumpService.restoreFromStream(in, request.getContentLengthLong()));
+				} catch (IllegalArgumentException | IllegalStateException e) {
+						return ResponseEntity.badRequest().body("Ошибка восстановления: " + e.getMessage());
+				} catch (IOException | InterruptedException | RuntimeException e) {
+						return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Ошибка восстановления: " + e.getMessage());
+				}
+		}
+
+		@GetMapping("/restore-progress")
+		@ResponseBody
+		public ResponseEntity<?> restoreProgress() {
+				return ResponseEntity.ok(dumpService.getRestoreProgress());
+		}
+
 		@GetMapping("/{tableName}/export")
-		public void exportTable(@PathVariable String tableName, HttpServletResponse response) throws IOException {
+		public void exportTable(@PathVariable String tableName,
+		                        @RequestParam(defaultValue = "xlsx") String format,
+		                        @RequestParam(defaultValue = "false") boolean gzip,
+		                        HttpServletResponse response) throws IOException {
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
+				boolean compress = gzip && exportFormat.isText();
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+				String fileName = String.format("%s_%s.%s", tableName, timestamp, exportFormat.getExtension()) + (compress ? ".gz" : "");
 
-				String fileName = String.format("%s_%s.xlsx", tableName, timestamp);
-
-				response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+				response.setContentType(compress ? "application/gzip" : exportFormat.getContentType());
 				System.out.println("Generated file name: " + fileName);
 				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
-
 				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
 
-				List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-
-				try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-						Sheet sheet = workbook.createSheet(tableName);
-
-						if (!tableData.isEmpty()) {
-								Row headerRow = sheet.createRow(0);
-								int headerCellIndex = 0;
-								for (String key : tableData.get(0).keySet()) {
-										Cell cell = headerRow.createCell(headerCellIndex++);
-										cell.setCellValue(key);
-								}
-
-								for (int i = 0; i < tableData.size(); i++) {
-										Row row = sheet.createRow(i + 1);
-										int cellIndex = 0;
-										for (Object value : tableData.get(i).values()) {
-												Cell cell = row.createCell(cellIndex++);
-												cell.setCellValue(value != null ? value.toString() : "");
-										}
-								}
-						}
-
-						workbook.write(response.getOutputStream());
-				}
+				exportService.writeTable(tableName, exportFormat, compress, response.getOutputStream());
 		}
 
 		@PostMapping("/{tableName}/add-columns")
@@ -273,13 +290,7 @@ public class TableController {
 
 						System.out.println("Получены изменения для таблицы " + tableName + ": " + updates);
 
-						for (Map<String, String> row : updates) {
-								if (row.containsKey("id")) {
-										String id = row.remove("id");
-										System.out.println("Проверка и обновление строки с id=" + id + ": " + row);
-										tableService.updateOrInsertRow(tableName, id, row);
-								}
-						}
+						tableService.upsertRows(tableName, updates);
 
 						redirectAttributes.addFlashAttribute("success", "Изменения успешно сохранены.");
 				} catch (Exception e) {
@@ -303,42 +314,26 @@ public class TableController {
 				}
 		}
 
+		// csv и ndjson выгружаются zip-архивом с файлом на каждую таблицу
 		@GetMapping("/export-all")
-		public void exportAllTables(HttpServletResponse response) throws IOException {
+		public void exportAllTables(@RequestParam(defaultValue = "xlsx") String format,
+		                            HttpServletResponse response) throws IOException {
+				ExportService.Format exportFormat;
+				try {
+						exportFormat = ExportService.Format.parse(format);
+				} catch (IllegalArgumentException e) {
+						response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+						return;
+				}
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-				String fileName = "full_export_" + timestamp + ".xlsx";
+				String fileName = "full_export_" + timestamp + (exportFormat.isText() ? "_" + exportFormat.getExtension() + ".zip" : ".xlsx");
 
-				response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+				response.setContentType(exportFormat.isText() ? "application/zip" : exportFormat.getContentType());
 				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8.toString());
 				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
 
 				List<String> allTables = tableService.getAllTableNames();
-
-				try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-						for (String tableName : allTables) {
-								List<Map<String, Object>> tableData = tableService.getTableData(tableName);
-								Sheet sheet = workbook.createSheet(tableName.length() > 31 ? tableName.substring(0, 31) : tableName);
-
-								if (!tableData.isEmpty()) {
-										Row headerRow = sheet.createRow(0);
-										int headerCellIndex = 0;
-										for (String key : tableData.get(0).keySet()) {
-												Cell cell = headerRow.createCell(headerCellIndex++);
-												cell.setCellValue(key);
-										}
-
-										for (int i = 0; i < tableData.size(); i++) {
-												Row row = sheet.createRow(i + 1);
-												int cellIndex = 0;
-												for (Object value : tableData.get(i).values()) {
-														Cell cell = row.createCell(cellIndex++);
-														cell.setCellValue(value != null ? value.toString() : "");
-												}
-										}
-								}
-						}
-						workbook.write(response.getOutputStream());
-				}
+				exportService.writeTables(allTables, exportFormat, response.getOutputStream());
 		}
 
 }
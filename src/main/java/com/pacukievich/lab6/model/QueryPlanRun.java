@@ -0,0 +1,159 @@
+package com.pacukievich.lab6.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "query_plan_history", indexes = @Index(name = "idx_query_plan_history_query", columnList = "saved_query_id, executed_at"))
+public class QueryPlanRun {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.IDENTITY)
+		private Long id;
+
+		@ManyToOne(fetch = FetchType.LAZY, optional = false)
+		@JoinColumn(name = "saved_query_id", nullable = false)
+		@OnDelete(action = OnDeleteAction.CASCADE)
+		private SavedQuery savedQuery;
+
+		@Column(name = "executed_at", nullable = false)
+		private LocalDateTime executedAt;
+
+		@Column(name = "parameter_values", columnDefinition = "TEXT")
+		private String parameterValues;
+
+		@Column(name = "planning_time_ms")
+		private double planningTimeMs;
+
+		@Column(name = "execution_time_ms")
+		private double executionTimeMs;
+
+		@Column(name = "shared_hit_blocks")
+		private long sharedHitBlocks;
+
+		@Column(name = "shared_read_blocks")
+		private long sharedReadBlocks;
+
+		@Column(name = "estimated_rows")
+		private double estimatedRows;
+
+		@Column(name = "actual_rows")
+		private double actualRows;
+
+		// Наибольшее по узлам плана отношение оценки числа строк к фактическому (или наоборот)
+		@Column(name = "max_estimate_error")
+		private double maxEstimateError;
+
+		@Column(name = "plan_shape", columnDefinition = "TEXT")
+		private String planShape;
+
+		@Column(name = "plan_json", columnDefinition = "TEXT")
+		private String planJson;
+
+		public Long getId() {
+				return id;
+		}
+
+		public void setId(Long id) {
+				this.id = id;
+		}
+
+		public SavedQuery getSavedQuery() {
+				return savedQuery;
+		}
+
+		public void setSavedQuery(SavedQuery savedQuery) {
+				this.savedQuery = savedQuery;
+		}
+
+		public LocalDateTime getExecutedAt() {
+				return executedAt;
+		}
+
+		public void setExecutedAt(LocalDateTime executedAt) {
+				this.executedAt = executedAt;
+		}
+
+		public String getParameterValues() {
+				return parameterValues;
+		}
+
+		public void setParameterValues(String parameterValues) {
+				this.parameterValues = parameterValues;
+		}
+
+		public double getPlanningTimeMs() {
+				return planningTimeMs;
+		}
+
+		public void setPlanningTimeMs(double planningTimeMs) {
+				this.planningTimeMs = planningTimeMs;
+		}
+
+		public double getExecutionTimeMs() {
+				return executionTimeMs;
+		}
+
+		public void setExecutionTimeMs(double executionTimeMs) {
+				this.executionTimeMs = executionTimeMs;
+		}
+
+		public long getSharedHitBlocks() {
+				return sharedHitBlocks;
+		}
+
+		public void setSharedHitBlocks(long sharedHitBlocks) {
+				this.sharedHitBlocks = sharedHitBlocks;
+		}
+
+		public long getSharedReadBlocks() {
+				return sharedReadBlocks;
+		}
+
+		public void setSharedReadBlocks(long sharedReadBlocks) {
+				this.sharedReadBlocks = sharedReadBlocks;
+		}
+
+		public double getEstimatedRows() {
+				return estimatedRows;
+		}
+
+		public void setEstimatedRows(double estimatedRows) {
+				this.estimatedRows = estimatedRows;
+		}
+
+		public double getActualRows() {
+				return actualRows;
+		}
+
+		public void setActualRows(double actualRows) {
+				this.actualRows = actualRows;
+		}
+
+		public double getMaxEstimateError() {
+				return maxEstimateError;
+		}
+
+		public void setMaxEstimateError(double maxEstimateError) {
+				this.maxEstimateError = maxEstimateError;
+		}
+
+		public String getPlanShape() {
+				return planShape;
+		}
+
+		public void setPlanShape(String planShape) {
+				this.planShape = planShape;
+		}
+
+		public String getPlanJson() {
+				return planJson;
+		}
+
+		public void setPlanJson(String planJson) {
+				this.planJson = planJson;
+		}
+}
@@ -0,0 +1,38 @@
+package com.pacukievich.lab6.model;
+
+import java.util.List;
+import java.util.Map;
+
+public class QueryResult {
+		private List<Map<String, Object>> rows;
+		private String cacheStatus;
+		private long ageMillis;
+		private boolean truncated;
+
+		public QueryResult(List<Map<String, Object>> rows, String cacheStatus, long ageMillis) {
+				this(rows, cacheStatus, ageMillis, false);
+		}
+
+		public QueryResult(List<Map<String, Object>> rows, String cacheStatus, long ageMillis, boolean truncated) {
+				this.rows = rows;
+				this.cacheStatus = cacheStatus;
+				this.ageMillis = ageMillis;
+				this.truncated = truncated;
+		}
+
+		public List<Map<String, Object>> getRows() {
+				return rows;
+		}
+
+		public String getCacheStatus() {
+				return cacheStatus;
+		}
+
+		public long getAgeMillis() {
+				return ageMillis;
+		}
+
+		public boolean isTruncated() {
+				return truncated;
+		}
+}
@@ -16,6 +16,15 @@ public class SavedQuery {
 		@Column(name = "query_text", nullable = false, columnDefinition = "TEXT")
 		private String queryText;
 
+		@Column(name = "parameters", columnDefinition = "TEXT")
+		private String parameters;
+
+		@Column(name = "work_mem")
+		private String workMem;
+
+		@Column(name = "statement_timeout_seconds")
+		private Integer statementTimeoutSeconds;
+
 		public Long getId() {
 				return id;
 		}
@@ -39,4 +48,28 @@ public class SavedQuery {
 		public void setQueryText(String queryText) {
 				this.queryText = queryText;
 		}
-}
\ No newline at end of file
+
+		public String getParameters() {
+				return parameters;
+		}
+
+		public void setParameters(String parameters) {
+				this.parameters = parameters;
+		}
+
+		public String getWorkMem() {
+				return workMem;
+		}
+
+		public void setWorkMem(String workMem) {
+				this.workMem = workMem;
+		}
+
+		public Integer getStatementTimeoutSeconds() {
+				return statementTimeoutSeconds;
+		}
+
+		public void setStatementTimeoutSeconds(Integer statementTimeoutSeconds) {
+				this.statementTimeoutSeconds = statementTimeoutSeconds;
+		}
+}
@@ -0,0 +1,43 @@
+package com.pacukievich.lab6.model;
+
+import java.util.List;
+import java.util.Map;
+
+public class TablePage {
+		private List<String> columns;
+		private List<Map<String, Object>> rows;
+		private String nextPageToken;
+		private int pageSize;
+
+		public List<String> getColumns() {
+				return columns;
+		}
+
+		public void setColumns(List<String> columns) {
+				this.columns = columns;
+		}
+
+		public List<Map<String, Object>> getRows() {
+				return rows;
+		}
+
+		public void setRows(List<Map<String, Object>> rows) {
+				this.rows = rows;
+		}
+
+		public String getNextPageToken() {
+				return nextPageToken;
+		}
+
+		public void setNextPageToken(String nextPageToken) {
+				this.nextPageToken = nextPageToken;
+		}
+
+		public int getPageSize() {
+				return pageSize;
+		}
+
+		public void setPageSize(int pageSize) {
+				this.pageSize = pageSize;
+		}
+}
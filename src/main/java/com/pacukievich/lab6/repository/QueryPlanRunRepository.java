@@ -0,0 +1,12 @@
+package com.pacukievich.lab6.repository;
+
+import com.pacukievich.lab6.model.QueryPlanRun;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface QueryPlanRunRepository extends JpaRepository<QueryPlanRun, Long> {
+
+		List<QueryPlanRun> findBySavedQueryIdOrderByExecutedAtDesc(Long savedQueryId, Pageable pageable);
+}
@@ -0,0 +1,115 @@
+package com.pacukievich.lab6.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Метрики приложения поверх Micrometer. Имя таблицы приходит от пользователя, поэтому как тег
+// используются только первые maxTableTags различных имён, остальные попадают в "other" —
+// иначе число временных рядов в реестре растёт без ограничений.
+@Component
+public class AppMetrics {
+
+		public static final String NO_TABLE = "none";
+		private static final String OTHER_TABLE = "other";
+
+		private final MeterRegistry registry;
+		private final Set<String> tableTags = ConcurrentHashMap.newKeySet();
+		private final int maxTableTags;
+
+		public AppMetrics(MeterRegistry registry, @Value("${app.metrics.max-table-tags:100}") int maxTableTags) {
+				this.registry = registry;
+				this.maxTableTags = maxTableTags;
+		}
+
+		public String tableTag(String tableName) {
+				if (tableName == null || tableName.isBlank()) {
+						return NO_TABLE;
+				}
+				if (tableTags.contains(tableName)) {
+						return tableName;
+				}
+				synchronized (tableTags) {
+						if (tableTags.size() < maxTableTags) {
+								tableTags.add(tableName);
+								return tableName;
+						}
+				}
+				return tableTags.contains(tableName) ? tableName : OTHER_TABLE;
+		}
+
+		public void recordServiceCall(String service, String method, String tableName, String outcome, long durationNanos) {
+				Timer.builder("app.service.calls")
+								.description("Время выполнения методов сервисов")
+								.tag("service", service)
+								.tag("method", method)
+								.tag("table", tableTag(tableName))
+								.tag("outcome", outcome)
+								.publishPercentileHistogram()
+								.register(registry)
+								.record(durationNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public void recordExport(String format, long rows, long bytes) {
+				Counter.builder("app.export.rows").tag("format", format).register(registry).increment(rows);
+				DistributionSummary.builder("app.export.bytes")
+								.baseUnit("bytes")
+								.tag("format", format)
+								.register(registry)
+								.record(bytes);
+		}
+
+		// rows — строки, о которых сообщил способ выгрузки или загрузки; pg_dump и pg_restore
+		// числа строк не выводят, для них учитывается только объём
+		public void recordDump(String operation, String format, long rows, long bytes) {
+				Counter.builder("app.dump.rows")
+								.tag("operation", operation)
+								.tag("format", format)
+								.register(registry)
+								.increment(rows);
+				DistributionSummary.builder("app.dump.bytes")
+								.baseUnit("bytes")
+								.tag("operation", operation)
+								.tag("format", format)
+								.register(registry)
+								.record(bytes);
+		}
+
+		public static CountingOutputStream counting(OutputStream out) {
+				return new CountingOutputStream(out);
+		}
+
+		public static class CountingOutputStream extends FilterOutputStream {
+				private long count;
+
+				CountingOutputStream(OutputStream out) {
+						super(out);
+				}
+
+				@Override
+				public void write(int b) throws IOException {
+						out.write(b);
+						count++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len);
+						count += len;
+				}
+
+				public long getCount() {
+						return count;
+				}
+		}
+}
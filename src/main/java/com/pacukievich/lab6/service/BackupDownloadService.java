@@ -0,0 +1,211 @@
+package com.pacukievich.lab6.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Отдача файлов резервных копий. Файл копии после создания не меняется, поэтому ETag строится
+// из размера и времени изменения и считается строгим. Поддерживаются HEAD, If-None-Match,
+// один диапазон Range (с If-Range) — оборванную загрузку можно продолжить, — и готовый
+// вариант <файл>.gz для клиентов с Accept-Encoding: gzip. Тело отдаётся через sendfile Tomcat,
+// если коннектор его поддерживает, иначе через FileChannel.transferTo без копирования в куче.
+// Отдаются только файлы каталога копий app.dump.backup-dir; всё остальное — 404.
+@Service
+public class BackupDownloadService {
+
+		private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+		private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+		private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+		private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+		private static final Pattern SINGLE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+		private final DumpService dumpService;
+		private final Path backupDir;
+
+		public BackupDownloadService(DumpService dumpService,
+		                             @Value("${app.dump.backup-dir:${user.home}/Downloads}") String backupDir) {
+				this.dumpService = dumpService;
+				this.backupDir = Paths.get(backupDir);
+		}
+
+		public void download(String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+				File file = resolve(fileName);
+				if (file == null) {
+						response.sendError(HttpServletResponse.SC_NOT_FOUND, "Файл не найден");
+						return;
+				}
+				if (file.isDirectory()) {
+						// Архив каталога собирается на лету — его длина заранее неизвестна, диапазоны не поддерживаются
+						response.setContentType("application/zip");
+						response.setHeader("Accept-Ranges", "none");
+						setAttachment(response, file.getName() + ".zip");
+						dumpService.writeDirectoryAsZip(file, response.getOutputStream());
+						return;
+				}
+				if (!file.isFile()) {
+						response.sendError(HttpServletResponse.SC_NOT_FOUND, "Файл не найден");
+						return;
+				}
+
+				File body = file;
+				String etagSuffix = "";
+				File compressed = new File(file.getPath() + ".gz");
+				if (!file.getName().endsWith(".gz") && acceptsGzip(request)
+								&& compressed.isFile() && compressed.lastModified() >= file.lastModified()) {
+						body = compressed;
+						etagSuffix = "-gz";
+						response.setHeader("Content-Encoding", "gzip");
+				}
+				response.setHeader("Vary", "Accept-Encoding");
+
+				long length = body.length();
+				String etag = "\"" + Long.toHexString(body.lastModified()) + "-" + Long.toHexString(length) + etagSuffix + "\"";
+				response.setHeader("ETag", etag);
+				response.setDateHeader("Last-Modified", body.lastModified());
+				response.setHeader("Accept-Ranges", "bytes");
+				response.setContentType("application/octet-stream");
+				setAttachment(response, file.getName());
+
+				if (matchesEtag(request.getHeader("If-None-Match"), etag)) {
+						response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+						return;
+				}
+
+				long start = 0;
+				long end = length - 1;
+				String range = request.getHeader("Range");
+				if (range != null && ifRangeMatches(request, etag, body.lastModified())) {
+						Matcher matcher = SINGLE_RANGE.matcher(range.trim());
+						// Несколько диапазонов (multipart/byteranges) не поддерживаются — отдаётся файл целиком, как допускает RFC 9110
+						if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+								if (matcher.group(1).isEmpty()) {
+										start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+								} else {
+										start = Long.parseLong(matcher.group(1));
+										if (!matcher.group(2).isEmpty()) {
+												end = Math.min(end, Long.parseLong(matcher.group(2)));
+										}
+								}
+								if (start >= length || start > end) {
+										response.setHeader("Content-Range", "bytes */" + length);
+										response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+										return;
+								}
+								response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+								response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+						}
+				}
+
+				long count = end - start + 1;
+				response.setContentLengthLong(count);
+				if ("HEAD".equals(request.getMethod()) || count <= 0) {
+						return;
+				}
+
+				if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+						request.setAttribute(SENDFILE_FILENAME, body.getCanonicalPath());
+						request.setAttribute(SENDFILE_START, start);
+						request.setAttribute(SENDFILE_END, end + 1);
+						return;
+				}
+				try (FileChannel channel = FileChannel.open(body.toPath(), StandardOpenOption.READ)) {
+						WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+						long position = start;
+						long remaining = count;
+						while (remaining > 0) {
+								long sent = channel.transferTo(position, remaining, out);
+								if (sent <= 0) {
+										break;
+								}
+								position += sent;
+								remaining -= sent;
+						}
+				}
+		}
+
+		// Имя (или путь, который вернул createDump) сравнивается с каталогом копий по каноническому пути,
+		// чтобы ни "..", ни символические ссылки не выводили за его пределы. Из каталогов отдаются только
+		// копии формата directory, а не, например, хранилище кусков
+		private File resolve(String fileName) throws IOException {
+				if (fileName == null || fileName.isBlank()) {
+						return null;
+				}
+				File root = backupDir.toFile().getCanonicalFile();
+				File file;
+				try {
+						file = root.toPath().resolve(fileName).toFile().getCanonicalFile();
+				} catch (InvalidPathException e) {
+						return null;
+				}
+				if (!root.equals(file.getParentFile())) {
+						return null;
+				}
+				if (file.isDirectory() && !(file.getName().startsWith("backup_") && file.getName().endsWith(".dir"))) {
+						return null;
+				}
+				return file;
+		}
+
+		private static void setAttachment(HttpServletResponse response, String fileName) {
+				String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20");
+				response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
+		}
+
+		private static boolean acceptsGzip(HttpServletRequest request) {
+				String accept = request.getHeader("Accept-Encoding");
+				if (accept == null) {
+						return false;
+				}
+				for (String coding : accept.split(",")) {
+						String[] parts = coding.trim().split(";");
+						if (parts[0].trim().equalsIgnoreCase("gzip")) {
+								return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+						}
+				}
+				return false;
+		}
+
+		private static boolean matchesEtag(String header, String etag) {
+				if (header == null) {
+						return false;
+				}
+				for (String candidate : header.split(",")) {
+						String value = candidate.trim();
+						if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+								return true;
+						}
+				}
+				return false;
+		}
+
+		// If-Range с устаревшим ETag или датой означает, что файл поменялся и продолжать загрузку нельзя
+		private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+				String ifRange = request.getHeader("If-Range");
+				if (ifRange == null) {
+						return true;
+				}
+				if (ifRange.startsWith("\"")) {
+						return ifRange.equals(etag);
+				}
+				try {
+						return request.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+				} catch (IllegalArgumentException e) {
+						return false;
+				}
+		}
+}
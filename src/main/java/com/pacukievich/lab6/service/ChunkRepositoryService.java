@@ -0,0 +1,427 @@
+package com.pacukievich.lab6.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+// Репозиторий копий с дедупликацией. Данные каждой таблицы (COPY ... TO STDOUT binary, в снимке
+// pg_export_snapshot) режутся ContentChunker на куски, куски сжимаются gzip и хранятся в
+// <backupDir>/chunks/<2 символа>/<sha-256>.gz. Копия — это манифест backup_<время>.repo со схемой
+// (как в CopyBackupService) и списком хешей кусков каждой таблицы. Куски, уже лежащие в хранилище,
+// повторно не пишутся, поэтому объём записи растёт с объёмом изменений, а не с размером базы.
+@Service
+public class ChunkRepositoryService {
+
+		public static final String MANIFEST_EXTENSION = ".repo";
+		private static final int FORMAT_VERSION = 1;
+		private static final HexFormat HEX = HexFormat.of();
+
+		private final DataSource dataSource;
+		private final ObjectMapper objectMapper;
+		private final CopyBackupService copyBackupService;
+		private final Path backupDir;
+		private final Path chunkDir;
+		private final int averageChunkSize;
+		private final int compressionLevel;
+
+		public ChunkRepositoryService(DataSource dataSource, ObjectMapper objectMapper, CopyBackupService copyBackupService,
+		                              @Value("${app.dump.backup-dir:${user.home}/Downloads}") String backupDir,
+		                              @Value("${app.dump.repository.average-chunk-kb:1024}") int averageChunkKb,
+		                              @Value("${app.dump.compression:6}") int compressionLevel) {
+				this.dataSource = dataSource;
+				this.objectMapper = objectMapper;
+				this.copyBackupService = copyBackupService;
+				this.backupDir = Paths.get(backupDir);
+				this.chunkDir = this.backupDir.resolve("chunks");
+				this.averageChunkSize = Math.max(64, averageChunkKb) * 1024;
+				this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+		}
+
+		public Map<String, Object> backup(Path manifestFile, DumpJob job) throws IOException {
+				return backup(manifestFile, null, job);
+		}
+
+		// Инкрементальная копия: таблицы, у которых с копии base не изменились отметка (число строк и сумма
+		// хешей строк, посчитанные в том же снимке, что и выгрузка) и определение, не выгружаются — в манифест
+		// переносится их список кусков. Поэтому каждый манифест цепочки самодостаточен и восстанавливается сам
+		// по себе, а base нужен только для сравнения. Отметка требует прочитать таблицу, но это один проход
+		// без передачи данных клиенту, сжатия и записи кусков
+		@SuppressWarnings("unchecked")
+		public Map<String, Object> backup(Path manifestFile, Path baseManifest, DumpJob job) throws IOException {
+				Map<String, Map<String, Object>> baseTables = new LinkedHashMap<>();
+				int chainLength = 0;
+				if (baseManifest != null) {
+						Map<String, Object> base = objectMapper.readValue(baseManifest.toFile(), Map.class);
+						for (Map<String, Object> table : (List<Map<String, Object>>) base.get("tables")) {
+								baseTables.put((String) table.get("name"), table);
+						}
+						chainLength = ((Number) base.getOrDefault("chainLength", 0)).intValue() + 1;
+				}
+				AtomicLong newChunks = new AtomicLong();
+				AtomicLong reusedChunks = new AtomicLong();
+				AtomicLong storedBytes = new AtomicLong();
+				ContentChunker.ChunkSink sink = (data, length) -> {
+						String hash = sha256(data, length);
+						if (storeChunk(hash, data, length, storedBytes)) {
+								newChunks.incrementAndGet();
+						} else {
+								reusedChunks.incrementAndGet();
+						}
+						return hash;
+				};
+
+				AtomicLong reusedTables = new AtomicLong();
+				List<Future<Map<String, Object>>> futures = new ArrayList<>();
+				try (Connection snapshotConnection = dataSource.getConnection()) {
+						boolean autoCommit = snapshotConnection.getAutoCommit();
+						int isolation = snapshotConnection.getTransactionIsolation();
+						snapshotConnection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+						snapshotConnection.setAutoCommit(false);
+						try {
+								String snapshotId;
+								try (Statement statement = snapshotConnection.createStatement();
+								     ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot()")) {
+										rs.next();
+										snapshotId = rs.getString(1);
+								}
+
+								List<String> tables = copyBackupService.listTables(snapshotConnection);
+								job.setTablesTotal(tables.size());
+								job.setPhase("schema");
+								List<String> preData = new ArrayList<>();
+								List<String> postData = new ArrayList<>();
+								List<String> views = copyBackupService.describeSchema(snapshotConnection, tables, preData, postData);
+
+								for (String table : tables) {
+										String definition = sha256Text(tableDefinition(preData, table));
+										futures.add(copyBackupService.submit(() -> copyBackupService.inSnapshot(snapshotId, connection -> {
+												String marker = changeMarker(connection, table) + "|" + definition;
+												Map<String, Object> unchanged = baseTables.get(table);
+												if (unchanged != null && marker.equals(unchanged.get("marker"))
+																&& ((List<String>) unchanged.get("chunks")).stream().allMatch(hash -> Files.exists(chunkPath(hash)))) {
+														Map<String, Object> entry = new LinkedHashMap<>(unchanged);
+														entry.put("reused", true);
+														reusedTables.incrementAndGet();
+														job.tableDone(table, 0);
+														return entry;
+												}
+												Map<String, Object> entry = chunkTable(connection, table, sink, job);
+												entry.put("marker", marker);
+												return entry;
+										})));
+								}
+								List<Map<String, Object>> tableEntries = new ArrayList<>();
+								for (Future<Map<String, Object>> future : futures) {
+										tableEntries.add(future.get());
+								}
+
+								Map<String, Object> manifest = new LinkedHashMap<>();
+								manifest.put("version", FORMAT_VERSION);
+								manifest.put("createdAt", LocalDateTime.now().toString());
+								manifest.put("base", baseManifest != null ? baseManifest.getFileName().toString() : null);
+								manifest.put("chainLength", chainLength);
+								manifest.put("preData", preData);
+								manifest.put("postData", postData);
+								manifest.put("views", views);
+								manifest.put("tables", tableEntries);
+								manifest.put("reusedTables", reusedTables.get());
+								manifest.put("newChunks", newChunks.get());
+								manifest.put("reusedChunks", reusedChunks.get());
+								manifest.put("storedBytes", storedBytes.get());
+								// Манифест пишется последним: пока его нет, копия не существует и сборщик мусора
+								// не считает её куски используемыми, но и не удаляет только что записанные (см. collectGarbage)
+								Path temp = Files.createTempFile(backupDir, "manifest-", ".tmp");
+								try {
+										objectMapper.writeValue(temp.toFile(), manifest);
+										Files.move(temp, manifestFile, StandardCopyOption.ATOMIC_MOVE);
+								} finally {
+										Files.deleteIfExists(temp);
+								}
+								return manifest;
+						} finally {
+								snapshotConnection.rollback();
+								snapshotConnection.setAutoCommit(autoCommit);
+								snapshotConnection.setTransactionIsolation(isolation);
+						}
+				} catch (SQLException e) {
+						throw new IOException("Ошибка резервного копирования: " + e.getMessage(), e);
+				} catch (ExecutionException e) {
+						throw new IOException("Ошибка выгрузки таблицы: " + e.getCause().getMessage(), e.getCause());
+				} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Резервное копирование прервано", e);
+				} finally {
+						futures.forEach(future -> future.cancel(true));
+				}
+		}
+
+		// Отметка содержимого таблицы: число строк и две суммы 64-битных хешей текста строк с разными
+		// затравками. Считается в снимке копии, поэтому, в отличие от счётчиков pg_stat_user_tables,
+		// которые сбрасываются в статистику асинхронно, не пропускает изменений, сделанных перед копией
+		private static String changeMarker(Connection connection, String table) throws SQLException {
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT count(*), coalesce(sum(hashtextextended(ROW(r.*)::text, 0)), 0), " +
+								     "coalesce(sum(hashtextextended(ROW(r.*)::text, 1)), 0) FROM " + SqlIdentifiers.quote(table) + " r")) {
+						rs.next();
+						return rs.getLong(1) + ":" + rs.getBigDecimal(2).toPlainString() + ":" + rs.getBigDecimal(3).toPlainString();
+				}
+		}
+
+		// Изменение структуры таблицы без изменения строк тоже требует новой выгрузки: данные COPY binary
+		// привязаны к набору и типам колонок
+		private static String tableDefinition(List<String> preData, String table) {
+				String prefix = "CREATE TABLE " + SqlIdentifiers.quote(table) + " (";
+				return preData.stream().filter(sql -> sql.startsWith(prefix)).findFirst().orElse("");
+		}
+
+		// Последний манифест в каталоге копий — основа для следующей инкрементальной копии
+		public Path latestManifest() {
+				File[] manifests = backupDir.toFile().listFiles((dir, name) -> name.startsWith("backup_") && name.endsWith(MANIFEST_EXTENSION));
+				if (manifests == null || manifests.length == 0) {
+						return null;
+				}
+				Arrays.sort(manifests, Comparator.comparing(File::getName));
+				return manifests[manifests.length - 1].toPath();
+		}
+
+		public int chainLength(Path manifestFile) throws IOException {
+				Map<?, ?> manifest = objectMapper.readValue(manifestFile.toFile(), Map.class);
+				Object length = manifest.get("chainLength");
+				return length instanceof Number number ? number.intValue() : 0;
+		}
+
+		private Map<String, Object> chunkTable(Connection connection, String table, ContentChunker.ChunkSink sink, DumpJob job)
+						throws SQLException, IOException {
+				ContentChunker chunker = new ContentChunker(averageChunkSize, sink);
+				long rows;
+				try (chunker) {
+						rows = connection.unwrap(PGConnection.class).getCopyAPI()
+										.copyOut("COPY " + SqlIdentifiers.quote(table) + " TO STDOUT (FORMAT binary)", chunker);
+				}
+				job.tableDone(table, rows);
+				Map<String, Object> entry = new LinkedHashMap<>();
+				entry.put("name", table);
+				entry.put("rows", rows);
+				entry.put("bytes", chunker.getBytes());
+				entry.put("chunks", chunker.getChunks());
+				return entry;
+		}
+
+		// Кусок пишется во временный файл и атомарно переименовывается: недописанный кусок
+		// никогда не окажется под своим хешем. Возвращает false, если такой кусок уже был
+		private boolean storeChunk(String hash, byte[] data, int length, AtomicLong storedBytes) throws IOException {
+				Path target = chunkPath(hash);
+				if (Files.exists(target)) {
+						// Отметка времени защищает используемый кусок от сборщика мусора, идущего параллельно
+						target.toFile().setLastModified(System.currentTimeMillis());
+						return false;
+				}
+				Files.createDirectories(target.getParent());
+				Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+				try {
+						try (OutputStream out = CopyBackupService.gzip(Files.newOutputStream(temp), compressionLevel)) {
+								out.write(data, 0, length);
+						}
+						storedBytes.addAndGet(Files.size(temp));
+						try {
+								Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+						} catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+								// тот же кусок успел записать другой поток
+								return false;
+						}
+						return true;
+				} finally {
+						Files.deleteIfExists(temp);
+				}
+		}
+
+		// Восстановление идёт как в CopyBackupService, в одной транзакции: куски каждой таблицы читаются
+		// по порядку, распаковываются и проверяются по хешу на лету, таблицы загружаются по одной
+		@SuppressWarnings("unchecked")
+		public Map<String, Object> restore(Path manifestFile, DumpJob job) throws IOException {
+				Map<String, Object> manifest = objectMapper.readValue(manifestFile.toFile(), Map.class);
+				if (!Integer.valueOf(FORMAT_VERSION).equals(manifest.get("version"))) {
+						throw new IllegalArgumentException("Неподдерживаемая версия манифеста: " + manifest.get("version"));
+				}
+				List<Map<String, Object>> tables = (List<Map<String, Object>>) manifest.get("tables");
+				for (Map<String, Object> table : tables) {
+						for (String hash : (List<String>) table.get("chunks")) {
+								if (!Files.exists(chunkPath(hash))) {
+										throw new IllegalArgumentException("В хранилище нет куска " + hash + " таблицы " + table.get("name"));
+								}
+						}
+				}
+				job.setTablesTotal(tables.size());
+				job.setPhase("schema");
+
+				try {
+						return copyBackupService.inRestoreTransaction(manifest, connection -> {
+								copyBackupService.executeScript(connection, (List<String>) manifest.get("preData"));
+								CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+								long rows = 0;
+								for (Map<String, Object> table : tables) {
+										String name = (String) table.get("name");
+										try (InputStream in = new ChunkInputStream((List<String>) table.get("chunks"))) {
+												long loaded = copy.copyIn("COPY " + SqlIdentifiers.quote(name) + " FROM STDIN (FORMAT binary)", in);
+												job.tableDone(name, loaded);
+												rows += loaded;
+										}
+								}
+								job.setPhase("constraints");
+								copyBackupService.executeScript(connection, (List<String>) manifest.get("postData"));
+
+								Map<String, Object> result = new LinkedHashMap<>();
+								result.put("tables", tables.size());
+								result.put("rows", rows);
+								return result;
+						});
+				} catch (SQLException e) {
+						throw new IOException("Ошибка восстановления: " + e.getMessage(), e);
+				}
+		}
+
+		// Удаляет куски, на которые не ссылается ни один манифест. Куски моложе начала сборки не трогаются:
+		// их могла только что записать или переиспользовать копия, манифест которой ещё не сохранён
+		@SuppressWarnings("unchecked")
+		public long collectGarbage() throws IOException {
+				if (!Files.isDirectory(chunkDir)) {
+						return 0;
+				}
+				long startedAt = System.currentTimeMillis();
+				Set<String> referenced = new HashSet<>();
+				File[] manifests = backupDir.toFile().listFiles((dir, name) -> name.endsWith(MANIFEST_EXTENSION));
+				for (File file : manifests == null ? new File[0] : manifests) {
+						Map<String, Object> manifest = objectMapper.readValue(file, Map.class);
+						for (Map<String, Object> table : (List<Map<String, Object>>) manifest.get("tables")) {
+								referenced.addAll((List<String>) table.get("chunks"));
+						}
+				}
+				long removed = 0;
+				try (Stream<Path> files = Files.walk(chunkDir)) {
+						for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+								String name = file.getFileName().toString();
+								String hash = name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+								if (!referenced.contains(hash) && Files.getLastModifiedTime(file).toMillis() < startedAt) {
+										Files.deleteIfExists(file);
+										removed++;
+								}
+						}
+				}
+				return removed;
+		}
+
+		private Path chunkPath(String hash) {
+				return chunkDir.resolve(hash.substring(0, 2)).resolve(hash + ".gz");
+		}
+
+		private static String sha256Text(String text) {
+				byte[] data = text.getBytes(StandardCharsets.UTF_8);
+				return sha256(data, data.length);
+		}
+
+		private static String sha256(byte[] data, int length) {
+				MessageDigest digest = newDigest();
+				digest.update(data, 0, length);
+				return HEX.formatHex(digest.digest());
+		}
+
+		private static MessageDigest newDigest() {
+				try {
+						return MessageDigest.getInstance("SHA-256");
+				} catch (NoSuchAlgorithmException e) {
+						throw new IllegalStateException(e);
+				}
+		}
+
+		// Последовательное чтение кусков таблицы; каждый кусок сверяется со своим хешем после распаковки
+		private class ChunkInputStream extends InputStream {
+
+				private final Iterator<String> hashes;
+				private String currentHash;
+				private DigestInputStream current;
+
+				ChunkInputStream(List<String> chunks) {
+						this.hashes = chunks.iterator();
+				}
+
+				@Override
+				public int read() throws IOException {
+						byte[] single = new byte[1];
+						int count = read(single, 0, 1);
+						return count < 0 ? -1 : single[0] & 0xff;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+						while (true) {
+								if (current == null) {
+										if (!hashes.hasNext()) {
+												return -1;
+										}
+										currentHash = hashes.next();
+										Path path = chunkPath(currentHash);
+										if (!Files.exists(path)) {
+												throw new FileNotFoundException("Кусок не найден: " + currentHash);
+										}
+										current = new DigestInputStream(new GZIPInputStream(Files.newInputStream(path), 64 * 1024), newDigest());
+								}
+								int count = current.read(buffer, offset, length);
+								if (count >= 0) {
+										return count;
+								}
+								String actual = HEX.formatHex(current.getMessageDigest().digest());
+								current.close();
+								current = null;
+								if (!actual.equals(currentHash)) {
+										throw new IOException("Кусок повреждён: " + currentHash);
+								}
+						}
+				}
+
+				@Override
+				public void close() throws IOException {
+						if (current != null) {
+								current.close();
+						}
+				}
+		}
+}
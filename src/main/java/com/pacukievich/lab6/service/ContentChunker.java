@@ -0,0 +1,103 @@
+package com.pacukievich.lab6.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Разбиение потока на куски по содержимому (gear-хеш, как в FastCDC): граница ставится там, где
+// биты скользящего хеша под маской равны нулю. Вставка или удаление строк сдвигает только соседние
+// границы, остальные куски совпадают с прошлой копией и не записываются повторно.
+class ContentChunker extends OutputStream {
+
+		// Таблица gear-хеша должна быть одинаковой во всех запусках, иначе границы кусков разойдутся
+		private static final long[] GEAR = new long[256];
+
+		static {
+				SplittableRandom random = new SplittableRandom(0x5EEDC0DEL);
+				for (int i = 0; i < GEAR.length; i++) {
+						GEAR[i] = random.nextLong();
+				}
+		}
+
+		@FunctionalInterface
+		interface ChunkSink {
+				// Сохраняет кусок и возвращает его идентификатор (хеш содержимого)
+				String store(byte[] data, int length) throws IOException;
+		}
+
+		private final int minSize;
+		private final int maxSize;
+		private final long mask;
+		private final ChunkSink sink;
+		private final byte[] buffer;
+		private final List<String> chunks = new ArrayList<>();
+		private int length;
+		private long hash;
+		private long bytes;
+
+		ContentChunker(int averageSize, ChunkSink sink) {
+				int bits = Math.max(10, 31 - Integer.numberOfLeadingZeros(averageSize));
+				this.mask = spreadMask(bits);
+				this.minSize = (1 << bits) / 4;
+				this.maxSize = (1 << bits) * 4;
+				this.sink = sink;
+				this.buffer = new byte[maxSize];
+		}
+
+		// Бит k хеша (hash << 1) + GEAR[b] зависит только от последних k + 1 байт, поэтому маска из младших
+		// битов смотрела бы на окно в 10–20 байт, и однообразные строки таблиц резались бы плохо. Как в FastCDC,
+		// биты маски разнесены по старшей части хеша: граница зависит от окна до 64 байт
+		static long spreadMask(int bits) {
+				int step = Math.max(1, 48 / bits);
+				long mask = 0;
+				for (int i = 0; i < bits; i++) {
+						mask |= 1L << (63 - i * step);
+				}
+				return mask;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+				buffer[length++] = (byte) b;
+				hash = (hash << 1) + GEAR[b & 0xff];
+				if (length >= maxSize || (length >= minSize && (hash & mask) == 0)) {
+						cut();
+				}
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int count) throws IOException {
+				int end = offset + count;
+				for (int i = offset; i < end; i++) {
+						buffer[length++] = data[i];
+						hash = (hash << 1) + GEAR[data[i] & 0xff];
+						if (length >= maxSize || (length >= minSize && (hash & mask) == 0)) {
+								cut();
+						}
+				}
+		}
+
+		private void cut() throws IOException {
+				chunks.add(sink.store(buffer, length));
+				bytes += length;
+				length = 0;
+				hash = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+				if (length > 0) {
+						cut();
+				}
+		}
+
+		List<String> getChunks() {
+				return chunks;
+		}
+
+		long getBytes() {
+				return bytes;
+		}
+}
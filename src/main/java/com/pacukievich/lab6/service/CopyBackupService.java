@@ -0,0 +1,674 @@
+package com.pacukievich.lab6.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static com.pacukievich.lab6.service.SqlIdentifiers.quote;
+
+// Резервное копирование средствами JDBC, без pg_dump/psql. Схема public восстанавливается по каталогу
+// (расширения, перечисления, последовательности, таблицы — до загрузки данных; ограничения, индексы,
+// значения последовательностей, представления и триггеры — после), данные каждой таблицы выгружаются
+// через COPY ... TO STDOUT (FORMAT binary).
+// Таблицы читаются параллельно в одном снимке pg_export_snapshot(), каждая сжимается gzip во временный файл,
+// затем всё собирается в один zip-архив: manifest.json (первым), data/<n>.bin.gz и stats.json с числом строк.
+@Service
+public class CopyBackupService {
+
+		public static final String ARCHIVE_EXTENSION = ".pgcopy";
+		private static final String MANIFEST = "manifest.json";
+		private static final String STATS = "stats.json";
+		private static final int FORMAT_VERSION = 1;
+
+		private final DataSource dataSource;
+		private final ObjectMapper objectMapper;
+		private final int compressionLevel;
+		private final int parallelism;
+		private final ExecutorService executor;
+
+		public CopyBackupService(DataSource dataSource, ObjectMapper objectMapper,
+		                         @Value("${app.dump.compression:6}") int compressionLevel,
+		                         @Value("${app.dump.jobs:4}") int jobs,
+		                         @Value("${app.export.reserved-connections:4}") int reservedConnections) {
+				this.dataSource = dataSource;
+				this.objectMapper = objectMapper;
+				this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+				int poolSize = Integer.MAX_VALUE;
+				try {
+						if (dataSource.isWrapperFor(HikariDataSource.class)) {
+								poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+						}
+				} catch (SQLException ignored) {
+						// размер пула неизвестен — ограничиваемся настройкой
+				}
+				this.parallelism = Math.max(1, Math.min(jobs, poolSize - reservedConnections));
+				this.executor = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("copy-backup-"));
+		}
+
+		public Map<String, Object> backup(Path archive, DumpJob job) throws IOException {
+				List<Future<TableData>> futures = new ArrayList<>();
+				int written = 0;
+				try (Connection snapshotConnection = dataSource.getConnection()) {
+						boolean autoCommit = snapshotConnection.getAutoCommit();
+						int isolation = snapshotConnection.getTransactionIsolation();
+						snapshotConnection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+						snapshotConnection.setAutoCommit(false);
+						try {
+								String snapshotId;
+								try (Statement statement = snapshotConnection.createStatement();
+								     ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot()")) {
+										rs.next();
+										snapshotId = rs.getString(1);
+								}
+
+								List<String> tables = listTables(snapshotConnection);
+								job.setTablesTotal(tables.size());
+								job.setPhase("schema");
+								List<String> preData = new ArrayList<>();
+								List<String> postData = new ArrayList<>();
+								List<String> views = describeSchema(snapshotConnection, tables, preData, postData);
+
+								for (String table : tables) {
+										futures.add(executor.submit(() -> copyTableOut(table, snapshotId, job)));
+								}
+
+								Map<String, Object> manifest = new LinkedHashMap<>();
+								manifest.put("version", FORMAT_VERSION);
+								manifest.put("createdAt", LocalDateTime.now().toString());
+								manifest.put("preData", preData);
+								manifest.put("postData", postData);
+								manifest.put("views", views);
+								List<Map<String, Object>> tableEntries = new ArrayList<>();
+								for (int i = 0; i < tables.size(); i++) {
+										Map<String, Object> entry = new LinkedHashMap<>();
+										entry.put("name", tables.get(i));
+										entry.put("entry", "data/" + i + ".bin.gz");
+										tableEntries.add(entry);
+								}
+								manifest.put("tables", tableEntries);
+
+								try (OutputStream file = Files.newOutputStream(archive);
+								     ZipOutputStream zip = new ZipOutputStream(file)) {
+										// Манифест идёт первым, чтобы архив можно было восстановить потоком, не дожидаясь конца
+										zip.putNextEntry(new ZipEntry(MANIFEST));
+										zip.write(objectMapper.writeValueAsBytes(manifest));
+										zip.closeEntry();
+										// Данные уже сжаты gzip, повторно их не сжимаем
+										zip.setLevel(Deflater.NO_COMPRESSION);
+										Map<String, Long> rows = new LinkedHashMap<>();
+										for (; written < futures.size(); written++) {
+												TableData data = futures.get(written).get();
+												try {
+														zip.putNextEntry(new ZipEntry((String) tableEntries.get(written).get("entry")));
+														Files.copy(data.file(), zip);
+														zip.closeEntry();
+														tableEntries.get(written).put("rows", data.rows());
+														rows.put(data.table(), data.rows());
+												} finally {
+														Files.deleteIfExists(data.file());
+												}
+										}
+										zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+										zip.putNextEntry(new ZipEntry(STATS));
+										zip.write(objectMapper.writeValueAsBytes(rows));
+										zip.closeEntry();
+								}
+								return manifest;
+						} finally {
+								// Снимок должен жить, пока все воркеры не выполнили SET TRANSACTION SNAPSHOT
+								snapshotConnection.rollback();
+								snapshotConnection.setAutoCommit(autoCommit);
+								snapshotConnection.setTransactionIsolation(isolation);
+						}
+				} catch (SQLException e) {
+						Files.deleteIfExists(archive);
+						throw new IOException("Ошибка резервного копирования: " + e.getMessage(), e);
+				} catch (ExecutionException e) {
+						Files.deleteIfExists(archive);
+						throw new IOException("Ошибка выгрузки таблицы: " + e.getCause().getMessage(), e.getCause());
+				} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						Files.deleteIfExists(archive);
+						throw new IOException("Резервное копирование прервано", e);
+				} catch (IOException | RuntimeException e) {
+						Files.deleteIfExists(archive);
+						throw e;
+				} finally {
+						discardPending(futures, written);
+				}
+		}
+
+		private TableData copyTableOut(String table, String snapshotId, DumpJob job) throws SQLException, IOException {
+				Path file = Files.createTempFile("copy-backup-", ".bin.gz");
+				try {
+						return inSnapshot(snapshotId, connection -> {
+								long rows;
+								try (OutputStream out = gzip(Files.newOutputStream(file), compressionLevel)) {
+										rows = connection.unwrap(PGConnection.class).getCopyAPI()
+														.copyOut("COPY " + quote(table) + " TO STDOUT (FORMAT binary)", out);
+								}
+								job.tableDone(table, rows);
+								return new TableData(table, file, rows);
+						});
+				} catch (SQLException | IOException | RuntimeException e) {
+						Files.deleteIfExists(file);
+						throw e;
+				}
+		}
+
+		// Работа на отдельном соединении в снимке, экспортированном pg_export_snapshot()
+		<T> T inSnapshot(String snapshotId, ConnectionWork<T> work) throws SQLException, IOException {
+				try (Connection connection = dataSource.getConnection()) {
+						boolean autoCommit = connection.getAutoCommit();
+						int isolation = connection.getTransactionIsolation();
+						connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+						connection.setAutoCommit(false);
+						try {
+								try (Statement statement = connection.createStatement()) {
+										statement.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+								}
+								return work.run(connection);
+						} finally {
+								connection.rollback();
+								connection.setAutoCommit(autoCommit);
+								connection.setTransactionIsolation(isolation);
+						}
+				}
+		}
+
+		// Общий пул выгрузки таблиц, размер которого учитывает пул соединений
+		<T> Future<T> submit(Callable<T> task) {
+				return executor.submit(task);
+		}
+
+		private void discardPending(List<Future<TableData>> futures, int fromIndex) {
+				for (int i = fromIndex; i < futures.size(); i++) {
+						Future<TableData> future = futures.get(i);
+						if (!future.cancel(true) && !future.isCancelled()) {
+								try {
+										Files.deleteIfExists(future.get().file());
+								} catch (Exception ignored) {
+										// таблица не была выгружена — удалять нечего
+								}
+						}
+				}
+		}
+
+		// Таблицы и представления, перечисленные в архиве, пересоздаются в одной транзакции на одном соединении:
+		// DROP ... CASCADE и схема до данных, COPY FROM STDIN таблица за таблицей, затем ограничения, индексы,
+		// представления и триггеры. Если что-то не загрузилось, откатывается всё и база остаётся прежней.
+		// Поэтому таблицы загружаются по одной: другие соединения не видят таблиц, созданных в этой транзакции
+		@SuppressWarnings("unchecked")
+		public Map<String, Object> restore(Path archive, DumpJob job) throws IOException {
+				try (ZipFile zip = new ZipFile(archive.toFile())) {
+						ZipEntry manifestEntry = zip.getEntry(MANIFEST);
+						if (manifestEntry == null) {
+								throw new IllegalArgumentException("Архив не является резервной копией: нет " + MANIFEST);
+						}
+						Map<String, Object> manifest;
+						try (InputStream in = zip.getInputStream(manifestEntry)) {
+								manifest = objectMapper.readValue(in, Map.class);
+						}
+						if (!Integer.valueOf(FORMAT_VERSION).equals(manifest.get("version"))) {
+								throw new IllegalArgumentException("Неподдерживаемая версия архива: " + manifest.get("version"));
+						}
+						List<Map<String, Object>> tables = (List<Map<String, Object>>) manifest.get("tables");
+						for (Map<String, Object> table : tables) {
+								if (zip.getEntry((String) table.get("entry")) == null) {
+										throw new IllegalArgumentException("В архиве нет данных таблицы " + table.get("name"));
+								}
+						}
+						job.setTablesTotal(tables.size());
+						job.setPhase("schema");
+
+						return inRestoreTransaction(manifest, connection -> {
+								executeScript(connection, (List<String>) manifest.get("preData"));
+								CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+								long rows = 0;
+								for (Map<String, Object> table : tables) {
+										String name = (String) table.get("name");
+										try (InputStream in = new GZIPInputStream(zip.getInputStream(zip.getEntry((String) table.get("entry"))), 64 * 1024)) {
+												long loaded = copy.copyIn("COPY " + quote(name) + " FROM STDIN (FORMAT binary)", in);
+												job.tableDone(name, loaded);
+												rows += loaded;
+										}
+								}
+
+								job.setPhase("constraints");
+								executeScript(connection, (List<String>) manifest.get("postData"));
+
+								Map<String, Object> result = new LinkedHashMap<>();
+								result.put("tables", tables.size());
+								result.put("rows", rows);
+								return result;
+						});
+				} catch (SQLException e) {
+						throw new IOException("Ошибка восстановления: " + e.getMessage(), e);
+				}
+		}
+
+		// Восстановление из потока (например, тела HTTP-запроса) без временного файла: записи zip читаются
+		// по порядку — сначала манифест, затем данные таблиц. Как и restore(Path), всё в одной транзакции
+		@SuppressWarnings("unchecked")
+		public Map<String, Object> restore(InputStream archive, RestoreProgress progress) throws IOException {
+				ZipInputStream zip = new ZipInputStream(archive);
+				ZipEntry manifestEntry = zip.getNextEntry();
+				if (manifestEntry == null || !MANIFEST.equals(manifestEntry.getName())) {
+						throw new IllegalArgumentException("Архив не является резервной копией: первой записью должен быть " + MANIFEST);
+				}
+				Map<String, Object> manifest = objectMapper.readValue(nonClosing(zip), Map.class);
+				if (!Integer.valueOf(FORMAT_VERSION).equals(manifest.get("version"))) {
+						throw new IllegalArgumentException("Неподдерживаемая версия архива: " + manifest.get("version"));
+				}
+				List<Map<String, Object>> tables = (List<Map<String, Object>>) manifest.get("tables");
+				Map<String, String> tableByEntry = new LinkedHashMap<>();
+				for (Map<String, Object> table : tables) {
+						tableByEntry.put((String) table.get("entry"), (String) table.get("name"));
+				}
+
+				try {
+						progress.setPhase("schema");
+						return inRestoreTransaction(manifest, connection -> {
+								executeScript(connection, (List<String>) manifest.get("preData"));
+								CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+								long rows = 0;
+								ZipEntry entry;
+								while ((entry = zip.getNextEntry()) != null) {
+										String table = tableByEntry.remove(entry.getName());
+										if (table == null) {
+												continue;
+										}
+										progress.setPhase("data: " + table);
+										rows += copy.copyIn("COPY " + quote(table) + " FROM STDIN (FORMAT binary)",
+														new GZIPInputStream(nonClosing(zip), 64 * 1024));
+										progress.setRows(rows);
+								}
+								if (!tableByEntry.isEmpty()) {
+										throw new IllegalArgumentException("Архив оборван: нет данных таблиц " + tableByEntry.values());
+								}
+
+								progress.setPhase("constraints");
+								executeScript(connection, (List<String>) manifest.get("postData"));
+
+								Map<String, Object> result = new LinkedHashMap<>();
+								result.put("tables", tables.size());
+								result.put("rows", rows);
+								return result;
+						});
+				} catch (SQLException e) {
+						throw new IOException("Ошибка восстановления: " + e.getMessage(), e);
+				}
+		}
+
+		// Закрытие вложенного потока (GZIPInputStream, парсер JSON) не должно закрывать весь архив
+		private static InputStream nonClosing(InputStream in) {
+				return new FilterInputStream(in) {
+						@Override
+						public void close() {
+						}
+				};
+		}
+
+		// Транзакция восстановления: при любой ошибке (оборванный архив, сбой COPY, ограничение, которое
+		// не проходит) изменения схемы и данных откатываются вместе
+		<T> T inRestoreTransaction(Map<String, Object> manifest, ConnectionWork<T> work) throws SQLException, IOException {
+				try (Connection connection = dataSource.getConnection()) {
+						boolean autoCommit = connection.getAutoCommit();
+						connection.setAutoCommit(false);
+						try {
+								checkRestoreTarget(connection, manifest);
+								T result = work.run(connection);
+								connection.commit();
+								return result;
+						} catch (SQLException | IOException | RuntimeException e) {
+								connection.rollback();
+								throw e;
+						} finally {
+								connection.setAutoCommit(autoCommit);
+						}
+				}
+		}
+
+		// DROP ... CASCADE молча удалил бы всё, что зависит от пересоздаваемых таблиц и представлений.
+		// То, что архив пересоздаёт сам, допустимо; представления других схем, внешние ключи таблиц вне архива
+		// и функции с параметрами табличного типа — повод отказаться от восстановления, пока база не тронута
+		@SuppressWarnings("unchecked")
+		void checkRestoreTarget(Connection connection, Map<String, Object> manifest) throws SQLException {
+				List<String> relations = new ArrayList<>();
+				for (Map<String, Object> table : (List<Map<String, Object>>) manifest.get("tables")) {
+						relations.add((String) table.get("name"));
+				}
+				relations.addAll((List<String>) manifest.getOrDefault("views", List.of()));
+				Array names = connection.createArrayOf("text", relations.toArray());
+				List<String> lost = new ArrayList<>();
+				try (PreparedStatement statement = connection.prepareStatement(
+								"WITH RECURSIVE restored AS (SELECT c.oid, c.reltype FROM pg_class c " +
+												"JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = 'public' AND c.relname = ANY (?)), " +
+												"dependent(oid) AS (SELECT oid FROM restored UNION SELECT r.ev_class FROM dependent " +
+												"JOIN pg_depend d ON d.refobjid = dependent.oid AND d.classid = 'pg_rewrite'::regclass " +
+												"JOIN pg_rewrite r ON r.oid = d.objid) " +
+												"SELECT 'представление ' || c.oid::regclass FROM dependent JOIN pg_class c ON c.oid = dependent.oid " +
+												"WHERE c.oid NOT IN (SELECT oid FROM restored) " +
+												"UNION SELECT 'внешний ключ ' || quote_ident(con.conname) || ' таблицы ' || con.conrelid::regclass " +
+												"FROM pg_constraint con WHERE con.contype = 'f' AND con.confrelid IN (SELECT oid FROM restored) " +
+												"AND con.conrelid NOT IN (SELECT oid FROM restored) " +
+												"UNION SELECT 'функция ' || d.objid::regprocedure FROM pg_depend d " +
+												"WHERE d.classid = 'pg_proc'::regclass AND d.refobjid IN (SELECT reltype FROM restored) " +
+												"ORDER BY 1")) {
+						statement.setArray(1, names);
+						try (ResultSet rs = statement.executeQuery()) {
+								while (rs.next()) {
+										lost.add(rs.getString(1));
+								}
+						}
+				} finally {
+						names.free();
+				}
+				if (!lost.isEmpty()) {
+						throw new IllegalStateException("Восстановление удалило бы объекты, которых нет в архиве: " +
+										String.join(", ", lost) + ". Удалите их или перенесите в другую базу и повторите");
+				}
+		}
+
+		// Число таблиц схемы public — знаменатель хода выгрузки для pg_dump
+		public int countTables() {
+				try (Connection connection = dataSource.getConnection()) {
+						return listTables(connection).size();
+				} catch (SQLException e) {
+						throw new IllegalStateException("Не удалось получить список таблиц: " + e.getMessage(), e);
+				}
+		}
+
+		void executeScript(Connection connection, List<String> statements) throws SQLException {
+				try (Statement statement = connection.createStatement()) {
+						for (String sql : statements) {
+								statement.execute(sql);
+						}
+				}
+		}
+
+		List<String> listTables(Connection connection) throws SQLException {
+				List<String> tables = new ArrayList<>();
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT c.relname FROM pg_class c " +
+								     "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+								     "WHERE n.nspname = 'public' AND c.relkind = 'r' ORDER BY c.relname")) {
+						while (rs.next()) {
+								tables.add(rs.getString(1));
+						}
+				}
+				return tables;
+		}
+
+		// Возвращает имена представлений, которые архив пересоздаёт вместе с таблицами
+		List<String> describeSchema(Connection connection, List<String> tables, List<String> preData, List<String> postData) throws SQLException {
+				checkColumnTypes(connection);
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT extname FROM pg_extension WHERE extname <> 'plpgsql' ORDER BY extname")) {
+						while (rs.next()) {
+								preData.add("CREATE EXTENSION IF NOT EXISTS " + quote(rs.getString(1)));
+						}
+				}
+				for (String table : tables) {
+						preData.add("DROP TABLE IF EXISTS " + quote(table) + " CASCADE");
+				}
+
+				// Представления зависят от таблиц и удаляются вместе с ними, поэтому сохраняются и создаются заново
+				// после ограничений: сначала те, что построены только на таблицах, затем зависящие от других представлений
+				List<String> views = new ArrayList<>();
+				List<String> viewData = new ArrayList<>();
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("WITH RECURSIVE views AS (SELECT c.oid, c.relname, c.relkind FROM pg_class c " +
+								     "JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = 'public' AND c.relkind IN ('v', 'm')), " +
+								     "uses AS (SELECT DISTINCT r.ev_class AS view, d.refobjid AS base FROM pg_rewrite r " +
+								     "JOIN pg_depend d ON d.objid = r.oid AND d.classid = 'pg_rewrite'::regclass " +
+								     "WHERE r.ev_class IN (SELECT oid FROM views) AND d.refobjid IN (SELECT oid FROM views) AND d.refobjid <> r.ev_class), " +
+								     "levels(oid, depth) AS (SELECT oid, 0 FROM views UNION ALL " +
+								     "SELECT uses.view, levels.depth + 1 FROM levels JOIN uses ON uses.base = levels.oid) " +
+								     "SELECT v.oid, v.relname, v.relkind, pg_get_viewdef(v.oid) FROM views v JOIN levels l ON l.oid = v.oid " +
+								     "GROUP BY v.oid, v.relname, v.relkind ORDER BY max(l.depth), v.relname")) {
+						while (rs.next()) {
+								String view = quote(rs.getString(2));
+								boolean materialized = "m".equals(rs.getString(3));
+								String kind = materialized ? "MATERIALIZED VIEW " : "VIEW ";
+								String definition = rs.getString(4).trim();
+								if (definition.endsWith(";")) {
+										definition = definition.substring(0, definition.length() - 1);
+								}
+								views.add(rs.getString(2));
+								preData.add("DROP " + kind + "IF EXISTS " + view + " CASCADE");
+								viewData.add("CREATE " + kind + view + " AS " + definition);
+								if (materialized) {
+										try (PreparedStatement indexes = connection.prepareStatement(
+														"SELECT pg_get_indexdef(indexrelid) FROM pg_index WHERE indrelid = ? ORDER BY indexrelid")) {
+												indexes.setLong(1, rs.getLong(1));
+												try (ResultSet index = indexes.executeQuery()) {
+														while (index.next()) {
+																viewData.add(index.getString(1));
+														}
+												}
+										}
+								}
+						}
+				}
+
+				// Перечисления создаются заново после удаления таблиц, колонки которых на них ссылаются
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT t.typname, string_agg(quote_literal(e.enumlabel), ', ' ORDER BY e.enumsortorder) " +
+								     "FROM pg_type t JOIN pg_namespace n ON n.oid = t.typnamespace JOIN pg_enum e ON e.enumtypid = t.oid " +
+								     "WHERE n.nspname = 'public' AND NOT EXISTS (SELECT 1 FROM pg_depend d WHERE d.objid = t.oid AND d.deptype = 'e') " +
+								     "GROUP BY t.oid, t.typname ORDER BY t.typname")) {
+						while (rs.next()) {
+								String type = quote(rs.getString(1));
+								preData.add("DROP TYPE IF EXISTS " + type);
+								preData.add("CREATE TYPE " + type + " AS ENUM (" + rs.getString(2) + ")");
+						}
+				}
+
+				// Последовательности serial-колонок; последовательности identity-колонок создаются вместе с таблицей
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT s.sequencename, s.data_type, s.start_value, s.min_value, s.max_value, " +
+								     "s.increment_by, s.cycle, s.last_value FROM pg_sequences s " +
+								     "WHERE s.schemaname = 'public' AND NOT EXISTS (SELECT 1 FROM pg_depend d " +
+								     "WHERE d.objid = to_regclass(quote_ident(s.sequencename)) AND d.deptype = 'i') ORDER BY s.sequencename")) {
+						while (rs.next()) {
+								String sequence = quote(rs.getString("sequencename"));
+								preData.add("DROP SEQUENCE IF EXISTS " + sequence + " CASCADE");
+								preData.add("CREATE SEQUENCE " + sequence + " AS " + rs.getString("data_type") +
+												" INCREMENT BY " + rs.getLong("increment_by") +
+												" MINVALUE " + rs.getLong("min_value") + " MAXVALUE " + rs.getLong("max_value") +
+												" START WITH " + rs.getLong("start_value") + (rs.getBoolean("cycle") ? " CYCLE" : " NO CYCLE"));
+								long lastValue = rs.getLong("last_value");
+								if (!rs.wasNull()) {
+										postData.add("SELECT setval('" + sequence.replace("'", "''") + "', " + lastValue + ", true)");
+								}
+						}
+				}
+
+				List<String> foreignKeys = new ArrayList<>();
+				for (String table : tables) {
+						preData.add(createTableStatement(connection, table, postData));
+						try (PreparedStatement statement = connection.prepareStatement(
+										"SELECT conname, contype, pg_get_constraintdef(oid) FROM pg_constraint " +
+														"WHERE conrelid = to_regclass(quote_ident(?)) AND contype IN ('p', 'u', 'c', 'x', 'f') " +
+														"ORDER BY contype = 'f', conname")) {
+								statement.setString(1, table);
+								try (ResultSet rs = statement.executeQuery()) {
+										while (rs.next()) {
+												String sql = "ALTER TABLE " + quote(table) + " ADD CONSTRAINT " + quote(rs.getString(1)) + " " + rs.getString(3);
+												// Внешние ключи — в самом конце, когда созданы все первичные и уникальные ключи
+												("f".equals(rs.getString(2)) ? foreignKeys : postData).add(sql);
+										}
+								}
+						}
+						try (PreparedStatement statement = connection.prepareStatement(
+										"SELECT pg_get_indexdef(i.indexrelid) FROM pg_index i WHERE i.indrelid = to_regclass(quote_ident(?)) " +
+														"AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = i.indexrelid " +
+														"AND c.contype IN ('p', 'u', 'x')) ORDER BY i.indexrelid")) {
+								statement.setString(1, table);
+								try (ResultSet rs = statement.executeQuery()) {
+										while (rs.next()) {
+												postData.add(rs.getString(1));
+										}
+								}
+						}
+				}
+				postData.addAll(foreignKeys);
+
+				// Принадлежность serial-последовательностей колонкам, чтобы DROP TABLE удалял и их
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT s.relname, t.relname, a.attname FROM pg_depend d " +
+								     "JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S' " +
+								     "JOIN pg_namespace n ON n.oid = s.relnamespace AND n.nspname = 'public' " +
+								     "JOIN pg_class t ON t.oid = d.refobjid " +
+								     "JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = d.refobjsubid " +
+								     "WHERE d.deptype = 'a'")) {
+						while (rs.next()) {
+								postData.add("ALTER SEQUENCE " + quote(rs.getString(1)) + " OWNED BY " +
+												quote(rs.getString(2)) + "." + quote(rs.getString(3)));
+						}
+				}
+				postData.addAll(viewData);
+
+				// Триггеры создаются последними, чтобы не срабатывать на загрузке данных. Их функции не входят
+				// в архив: DROP TABLE их не удаляет, а в базе без них восстановление откатится целиком
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT pg_get_triggerdef(t.oid) FROM pg_trigger t " +
+								     "JOIN pg_class c ON c.oid = t.tgrelid JOIN pg_namespace n ON n.oid = c.relnamespace " +
+								     "WHERE n.nspname = 'public' AND NOT t.tgisinternal ORDER BY c.relname, t.tgname")) {
+						while (rs.next()) {
+								postData.add(rs.getString(1));
+						}
+				}
+				return views;
+		}
+
+		// Домены, составные типы и диапазоны схемы public в архив не попадают — копия с такими колонками
+		// не восстановилась бы, поэтому от неё отказываемся сразу
+		private void checkColumnTypes(Connection connection) throws SQLException {
+				List<String> columns = new ArrayList<>();
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT c.relname || '.' || a.attname || ' (' || format_type(a.atttypid, a.atttypmod) || ')' " +
+								     "FROM pg_attribute a JOIN pg_class c ON c.oid = a.attrelid AND c.relkind = 'r' " +
+								     "JOIN pg_namespace n ON n.oid = c.relnamespace AND n.nspname = 'public' " +
+								     "JOIN pg_type t ON t.oid = a.atttypid LEFT JOIN pg_type e ON e.oid = t.typelem AND t.typcategory = 'A' " +
+								     "JOIN pg_namespace tn ON tn.oid = COALESCE(e.typnamespace, t.typnamespace) " +
+								     "WHERE a.attnum > 0 AND NOT a.attisdropped AND tn.nspname = 'public' AND COALESCE(e.typtype, t.typtype) <> 'e' " +
+								     "AND NOT EXISTS (SELECT 1 FROM pg_depend d WHERE d.objid = COALESCE(e.oid, t.oid) AND d.deptype = 'e') " +
+								     "ORDER BY 1")) {
+						while (rs.next()) {
+								columns.add(rs.getString(1));
+						}
+				}
+				if (!columns.isEmpty()) {
+						throw new IllegalStateException("Типы колонок " + String.join(", ", columns) +
+										" не сохраняются в этом формате, используйте формат directory или plain");
+				}
+		}
+
+		private String createTableStatement(Connection connection, String table, List<String> postData) throws SQLException {
+				List<String> columns = new ArrayList<>();
+				try (PreparedStatement statement = connection.prepareStatement(
+								"SELECT a.attname, format_type(a.atttypid, a.atttypmod), a.attnotnull, a.attidentity, " +
+												"pg_get_expr(d.adbin, d.adrelid), pg_get_serial_sequence(quote_ident(?), a.attname), a.attgenerated " +
+												"FROM pg_attribute a LEFT JOIN pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum " +
+												"WHERE a.attrelid = to_regclass(quote_ident(?)) AND a.attnum > 0 AND NOT a.attisdropped " +
+												"ORDER BY a.attnum")) {
+						statement.setString(1, table);
+						statement.setString(2, table);
+						try (ResultSet rs = statement.executeQuery()) {
+								while (rs.next()) {
+										String column = quote(rs.getString(1));
+										StringBuilder definition = new StringBuilder(column).append(' ').append(rs.getString(2));
+										String identity = rs.getString(4);
+										if ("a".equals(identity) || "d".equals(identity)) {
+												definition.append("a".equals(identity) ? " GENERATED ALWAYS AS IDENTITY" : " GENERATED BY DEFAULT AS IDENTITY");
+												Long next = nextIdentityValue(connection, rs.getString(6));
+												if (next != null) {
+														postData.add("ALTER TABLE " + quote(table) + " ALTER COLUMN " + column + " RESTART WITH " + next);
+												}
+										} else if ("s".equals(rs.getString(7))) {
+												// Вычисляемые колонки COPY не выгружает и не загружает — они пересчитываются сами
+												definition.append(" GENERATED ALWAYS AS (").append(rs.getString(5)).append(") STORED");
+										} else if (rs.getString(5) != null) {
+												definition.append(" DEFAULT ").append(rs.getString(5));
+										}
+										if (rs.getBoolean(3)) {
+												definition.append(" NOT NULL");
+										}
+										columns.add(definition.toString());
+								}
+						}
+				}
+				return "CREATE TABLE " + quote(table) + " (" + String.join(", ", columns) + ")";
+		}
+
+		private Long nextIdentityValue(Connection connection, String sequence) throws SQLException {
+				if (sequence == null) {
+						return null;
+				}
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT s.last_value, s.is_called, p.seqincrement FROM " + sequence +
+								     " s, pg_sequence p WHERE p.seqrelid = '" + sequence.replace("'", "''") + "'::regclass")) {
+						rs.next();
+						return rs.getBoolean(2) ? rs.getLong(1) + rs.getLong(3) : rs.getLong(1);
+				}
+		}
+
+		static OutputStream gzip(OutputStream out, int level) throws IOException {
+				return new GZIPOutputStream(out, 64 * 1024) {
+						{
+								def.setLevel(level);
+						}
+				};
+		}
+
+		@PreDestroy
+		public void shutdown() {
+				executor.shutdownNow();
+		}
+
+		private record TableData(String table, Path file, long rows) {
+		}
+
+		@FunctionalInterface
+		interface ConnectionWork<T> {
+				T run(Connection connection) throws SQLException, IOException;
+		}
+}
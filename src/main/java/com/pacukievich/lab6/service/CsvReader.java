@@ -0,0 +1,96 @@
+package com.pacukievich.lab6.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Потоковый разбор CSV (RFC 4180): значения в кавычках, "" внутри кавычек, переводы строк внутри
+// значения, окончания строк LF и CRLF. Читает по одной записи, файл целиком в памяти не держит.
+class CsvReader {
+
+		private final Reader reader;
+		private final char delimiter;
+		private final char[] buffer = new char[64 * 1024];
+		private int position;
+		private int limit;
+		private boolean firstRead = true;
+
+		CsvReader(Reader reader, char delimiter) {
+				this.reader = reader;
+				this.delimiter = delimiter;
+		}
+
+		// Следующая запись или null в конце файла
+		List<String> next() throws IOException {
+				int c = read();
+				if (c < 0) {
+						return null;
+				}
+				List<String> values = new ArrayList<>();
+				StringBuilder value = new StringBuilder();
+				boolean quoted = false;
+				boolean wasQuoted = false;
+				while (true) {
+						if (quoted) {
+								if (c < 0) {
+										throw new IllegalArgumentException("Незакрытая кавычка в CSV");
+								}
+								if (c == '"') {
+										int nextChar = read();
+										if (nextChar == '"') {
+												value.append('"');
+										} else {
+												quoted = false;
+												c = nextChar;
+												continue;
+										}
+								} else {
+										value.append((char) c);
+								}
+						} else if (c < 0 || c == '\n') {
+								values.add(value.toString());
+								return values;
+						} else if (c == '\r') {
+								int nextChar = read();
+								if (nextChar != '\n' && nextChar >= 0) {
+										position--;
+								}
+								values.add(value.toString());
+								return values;
+						} else if (c == delimiter) {
+								values.add(value.toString());
+								value.setLength(0);
+								wasQuoted = false;
+						} else if (c == '"' && value.isEmpty() && !wasQuoted) {
+								quoted = true;
+								wasQuoted = true;
+						} else {
+								value.append((char) c);
+						}
+						c = read();
+				}
+		}
+
+		private int read() throws IOException {
+				if (position == limit) {
+						limit = reader.read(buffer, 0, buffer.length);
+						position = 0;
+						if (limit <= 0) {
+								limit = 0;
+								return -1;
+						}
+						// BOM в начале файла (Excel сохраняет CSV в UTF-8 с BOM)
+						if (firstRead) {
+								firstRead = false;
+								if (buffer[0] == '\uFEFF') {
+										position = 1;
+										if (limit == 1) {
+												return read();
+										}
+								}
+						}
+				}
+				return buffer[position++];
+		}
+}
@@ -0,0 +1,122 @@
+package com.pacukievich.lab6.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Состояние фонового резервного копирования или восстановления. Ход обновляют поток задания
+// и воркеры CopyBackupService (по таблице), поэтому все методы синхронизированы.
+public class DumpJob {
+
+		public enum Type { BACKUP, RESTORE }
+
+		public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+		private final String id;
+		private final Type type;
+		private final boolean scheduled;
+		private final long submittedAt = System.currentTimeMillis();
+		private Status status = Status.QUEUED;
+		private String format;
+		private String file;
+		private String phase;
+		private Integer tablesTotal;
+		private int tablesDone;
+		private long rows;
+		private String error;
+		private Long startedAt;
+		private Long finishedAt;
+
+		DumpJob(String id, Type type, String format, String file, boolean scheduled) {
+				this.id = id;
+				this.type = type;
+				this.format = format;
+				this.file = file;
+				this.scheduled = scheduled;
+		}
+
+		public String getId() {
+				return id;
+		}
+
+		Type getType() {
+				return type;
+		}
+
+		synchronized String getFormat() {
+				return format;
+		}
+
+		synchronized String getFile() {
+				return file;
+		}
+
+		synchronized void markRunning() {
+				status = Status.RUNNING;
+				startedAt = System.currentTimeMillis();
+		}
+
+		synchronized void setFormat(String format) {
+				this.format = format;
+		}
+
+		synchronized void setFile(String file) {
+				this.file = file;
+		}
+
+		synchronized void setPhase(String phase) {
+				this.phase = phase;
+		}
+
+		synchronized void setTablesTotal(int tablesTotal) {
+				this.tablesTotal = tablesTotal;
+		}
+
+		synchronized void tableDone(String table, long tableRows) {
+				tablesDone++;
+				rows += tableRows;
+				phase = "table " + table;
+		}
+
+		synchronized void addRows(long count) {
+				rows += count;
+		}
+
+		synchronized long getRows() {
+				return rows;
+		}
+
+		synchronized void finish(Status finalStatus, String error) {
+				status = finalStatus;
+				this.error = error;
+				phase = null;
+				finishedAt = System.currentTimeMillis();
+		}
+
+		synchronized boolean isActive() {
+				return status == Status.QUEUED || status == Status.RUNNING;
+		}
+
+		synchronized boolean isExpired(long retentionMillis, long now) {
+				return finishedAt != null && now - finishedAt > retentionMillis;
+		}
+
+		public synchronized Map<String, Object> getStatus() {
+				Map<String, Object> result = new LinkedHashMap<>();
+				result.put("id", id);
+				result.put("type", type);
+				result.put("status", status);
+				result.put("scheduled", scheduled);
+				result.put("format", format);
+				result.put("file", file);
+				result.put("phase", phase);
+				result.put("tablesDone", tablesDone);
+				result.put("tablesTotal", tablesTotal);
+				result.put("percent", tablesTotal != null && tablesTotal > 0 ? Math.min(100, tablesDone * 100 / tablesTotal) : null);
+				result.put("rows", rows);
+				result.put("submittedAt", submittedAt);
+				result.put("startedAt", startedAt);
+				result.put("finishedAt", finishedAt);
+				result.put("error", error);
+				return result;
+		}
+}
@@ -0,0 +1,168 @@
+package com.pacukievich.lab6.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Резервное копирование и восстановление в фоне: запрос только ставит задание и сразу отвечает,
+// ход выполнения опрашивается по id. Задания выполняются по одному в отдельном потоке, повторный
+// запрос копии, пока предыдущая не готова, возвращает уже запущенное задание. По расписанию cron
+// копии создаются автоматически, после каждой успешной копии старые файлы удаляются по правилам ротации.
+@Service
+public class DumpJobService {
+
+		private final DumpService dumpService;
+		private final Map<String, DumpJob> jobs = new ConcurrentHashMap<>();
+		private final ExecutorService executor;
+		private final ScheduledExecutorService scheduler;
+		private final CronExpression cron;
+		private final String scheduledFormat;
+		private final int keep;
+		private final int maxAgeDays;
+		private final long retentionMillis;
+		private DumpJob activeBackup;
+
+		public DumpJobService(DumpService dumpService,
+		                      @Value("${app.dump.schedule.cron:}") String cron,
+		                      @Value("${app.dump.schedule.format:}") String scheduledFormat,
+		                      @Value("${app.dump.retention.keep:0}") int keep,
+		                      @Value("${app.dump.retention.max-age-days:0}") int maxAgeDays,
+		                      @Value("${app.dump.jobs-retention-minutes:1440}") long jobsRetentionMinutes) {
+				this.dumpService = dumpService;
+				this.cron = cron == null || cron.isBlank() ? null : CronExpression.parse(cron);
+				// формат расписания проверяется при старте, а не в момент первого запуска по cron
+				this.scheduledFormat = this.cron == null ? scheduledFormat : dumpService.checkFormat(scheduledFormat);
+				this.keep = keep;
+				this.maxAgeDays = maxAgeDays;
+				this.retentionMillis = TimeUnit.MINUTES.toMillis(jobsRetentionMinutes);
+				this.executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("dump-job-"));
+				this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dump-scheduler-"));
+				this.scheduler.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.HOURS);
+				scheduleNext();
+		}
+
+		public DumpJob submitBackup(String format) {
+				return submitBackup(format, false);
+		}
+
+		private synchronized DumpJob submitBackup(String format, boolean scheduled) {
+				if (activeBackup != null && activeBackup.isActive()) {
+						return activeBackup;
+				}
+				DumpJob job = new DumpJob(UUID.randomUUID().toString(), DumpJob.Type.BACKUP,
+								dumpService.checkFormat(format), null, scheduled);
+				submit(job, () -> {
+						String path = dumpService.createDump(job.getFormat(), job);
+						// Ротация по умолчанию выключена: каталог копий по умолчанию — ~/Downloads, где лежат и чужие файлы.
+						// Включать её стоит вместе с отдельным app.dump.backup-dir
+						rotateBackups();
+						return path;
+				});
+				activeBackup = job;
+				return job;
+		}
+
+		// Ошибка ротации не делает готовую копию неудачной: она только выводится в лог
+		private void rotateBackups() {
+				try {
+						List<String> removed = dumpService.rotateBackups(keep, maxAgeDays);
+						removed.forEach(file -> System.out.println("Удалена устаревшая копия: " + file));
+				} catch (Exception e) {
+						System.err.println("Ошибка ротации резервных копий: " + e.getMessage());
+				}
+		}
+
+		public DumpJob submitRestore(String dumpFilePath) {
+				if (dumpFilePath == null || !new File(dumpFilePath).exists()) {
+						throw new IllegalArgumentException("Файл дампа не найден: " + dumpFilePath);
+				}
+				DumpJob job = new DumpJob(UUID.randomUUID().toString(), DumpJob.Type.RESTORE, null, dumpFilePath, false);
+				submit(job, () -> {
+						dumpService.restoreDump(dumpFilePath, job);
+						return dumpFilePath;
+				});
+				return job;
+		}
+
+		private void submit(DumpJob job, DumpTask task) {
+				jobs.put(job.getId(), job);
+				executor.submit(() -> {
+						job.markRunning();
+						try {
+								job.setFile(task.run());
+								job.finish(DumpJob.Status.SUCCEEDED, null);
+						} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								job.finish(DumpJob.Status.FAILED, "Задание прервано");
+						} catch (Exception e) {
+								job.finish(DumpJob.Status.FAILED, e.getMessage());
+						}
+				});
+		}
+
+		public DumpJob getJob(String jobId) {
+				DumpJob job = jobs.get(jobId);
+				if (job == null) {
+						throw new IllegalArgumentException("Задание не найдено: " + jobId);
+				}
+				return job;
+		}
+
+		public List<Map<String, Object>> getJobs() {
+				return jobs.values().stream()
+								.map(DumpJob::getStatus)
+								.sorted(Comparator.comparing((Map<String, Object> status) -> (Long) status.get("submittedAt")).reversed())
+								.toList();
+		}
+
+		private void scheduleNext() {
+				if (cron == null) {
+						return;
+				}
+				LocalDateTime now = LocalDateTime.now();
+				LocalDateTime next = cron.next(now);
+				if (next == null) {
+						return;
+				}
+				scheduler.schedule(() -> {
+						try {
+								submitBackup(scheduledFormat, true);
+						} catch (RuntimeException e) {
+								System.err.println("Не удалось запустить копирование по расписанию: " + e.getMessage());
+						} finally {
+								scheduleNext();
+						}
+				}, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		private void evictExpired() {
+				long now = System.currentTimeMillis();
+				jobs.values().removeIf(job -> job.isExpired(retentionMillis, now));
+		}
+
+		@PreDestroy
+		public void shutdown() {
+				scheduler.shutdownNow();
+				executor.shutdownNow();
+		}
+
+		@FunctionalInterface
+		private interface DumpTask {
+				String run() throws Exception;
+		}
+}
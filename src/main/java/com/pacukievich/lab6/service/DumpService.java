@@ -1,104 +1,558 @@
 package com.pacukievich.lab6.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 @Service
 public class DumpService {
 
-		private static final String HOST = "localhost";
-		private static final String PORT = "5432";
-		private static final String DATABASE_NAME = "voenkomat2";
-		private static final String USER = "postgres";
-		private static final String PASSWORD = "postgres";
-		private static final String PG_DUMP_PATH = "/Applications/Postgres.app/Contents/Versions/latest/bin/pg_dump";
-		private static final String PSQL_PATH = "/Applications/Postgres.app/Contents/Versions/latest/bin/psql";
-		private static final String BACKUP_DIR = Paths.get(System.getProperty("user.home"), "Downloads").toString();
+		public static final String FORMAT_PLAIN = "plain";
+		public static final String FORMAT_DIRECTORY = "directory";
+		public static final String FORMAT_NATIVE = "native";
+		public static final String FORMAT_REPOSITORY = "repository";
+		public static final String FORMAT_INCREMENTAL = "incremental";
+
+		private static final int STREAM_BUFFER = 64 * 1024;
+		private static final int SQL_PROBE = 512;
+		private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+		private static final byte[] PGDMP_MAGIC = "PGDMP".getBytes(StandardCharsets.US_ASCII);
+		private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+		private static final int ZIP_HEADER = 30;
+		private static final String DIRECTORY_TOC = "toc.dat";
+		// Файлы каталога pg_dump: toc.dat и данные таблиц <oid>.dat, сжатые или нет
+		private static final Pattern DIRECTORY_ENTRY = Pattern.compile("(?:.*/)?(?:toc|\\d+)\\.dat(?:\\.\\w+)?");
+		private static final String DIRECTORY_ZIP_ERROR = "Архив каталога pg_dump (directory) нельзя восстановить напрямую: "
+						+ "распакуйте его и укажите путь к каталогу при восстановлении из файла";
+		private static final Pattern TABLE_PROGRESS = Pattern.compile("(?:dumping contents of table|processing data for table) \"?([^\"]+)\"?");
+		private static final Pattern ROWS_PROGRESS = Pattern.compile("(?:COPY|INSERT \\d+) (\\d+)");
+		private static final Pattern BACKUP_NAME = Pattern.compile("backup_(\\d{8}_\\d{6})\\..+");
+		private static final List<String> SQL_PREFIXES = List.of("--", "/*", "\\", "SET ", "SELECT ", "CREATE ", "BEGIN",
+						"DROP ", "ALTER ", "INSERT ", "COPY ", "START ", "COMMENT ");
+
+		private final QueryResultCache queryResultCache;
+		private final SchemaMetadataCache schemaCache;
+		private final CopyBackupService copyBackupService;
+		private final ChunkRepositoryService chunkRepository;
+		private final AppMetrics metrics;
+		private final String host;
+		private final String port;
+		private final String databaseName;
+		private final String user;
+		private final String password;
+		private final String pgDumpPath;
+		private final String pgRestorePath;
+		private final String psqlPath;
+		private final String backupDir;
+		private final String defaultFormat;
+		private final int jobs;
+		private final int compression;
+		private final boolean precompress;
+		private final int fullEvery;
+		private final ReentrantLock restoreLock = new ReentrantLock();
+		private volatile RestoreProgress lastRestore;
+
+		public DumpService(QueryResultCache queryResultCache, SchemaMetadataCache schemaCache,
+		                   CopyBackupService copyBackupService, ChunkRepositoryService chunkRepository, AppMetrics metrics,
+		                   @Value("${app.dump.host:localhost}") String host,
+		                   @Value("${app.dump.port:5432}") String port,
+		                   @Value("${app.dump.database:voenkomat2}") String databaseName,
+		                   @Value("${app.dump.user:postgres}") String user,
+		                   @Value("${app.dump.password:postgres}") String password,
+		                   @Value("${app.dump.pg-dump-path:pg_dump}") String pgDumpPath,
+		                   @Value("${app.dump.pg-restore-path:pg_restore}") String pgRestorePath,
+		                   @Value("${app.dump.psql-path:psql}") String psqlPath,
+		                   @Value("${app.dump.backup-dir:${user.home}/Downloads}") String backupDir,
+		                   @Value("${app.dump.format:native}") String defaultFormat,
+		                   @Value("${app.dump.jobs:4}") int jobs,
+		                   @Value("${app.dump.compression:6}") int compression,
+		                   @Value("${app.dump.precompress:true}") boolean precompress,
+		                   @Value("${app.dump.incremental.full-every:7}") int fullEvery) {
+				this.queryResultCache = queryResultCache;
+				this.schemaCache = schemaCache;
+				this.copyBackupService = copyBackupService;
+				this.chunkRepository = chunkRepository;
+				this.metrics = metrics;
+				this.host = host;
+				this.port = port;
+				this.databaseName = databaseName;
+				this.user = user;
+				this.password = password;
+				this.pgDumpPath = pgDumpPath;
+				this.pgRestorePath = pgRestorePath;
+				this.psqlPath = psqlPath;
+				this.backupDir = backupDir;
+				this.defaultFormat = checkFormat(defaultFormat);
+				this.jobs = Math.max(1, jobs);
+				this.compression = Math.max(0, Math.min(9, compression));
+				this.precompress = precompress;
+				this.fullEvery = fullEvery;
+		}
 
 		public String createDump() throws IOException, InterruptedException {
+				return createDump(defaultFormat);
+		}
+
+		public String createDump(String format) throws IOException, InterruptedException {
+				return createDump(format, new DumpJob(UUID.randomUUID().toString(), DumpJob.Type.BACKUP, format, null, false));
+		}
+
+		// native — архив CopyBackupService (COPY через JDBC, внешние программы не нужны);
+		// repository — манифест ChunkRepositoryService, данные которого хранятся общими кусками без повторов;
+		// incremental — то же, но таблицы без изменений с прошлого манифеста не выгружаются;
+		// plain — SQL-файл с INSERT для psql; directory — каталог pg_dump -F d, который выгружается
+		// и восстанавливается параллельно в jobs потоков, данные таблиц сжимаются на лету
+		public String createDump(String format, DumpJob job) throws IOException, InterruptedException {
 				String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-				String plainDumpFilePath = Paths.get(BACKUP_DIR, "backup_" + timestamp + ".sql").toString();
-				createDatabaseDump(plainDumpFilePath, "p");
-				return plainDumpFilePath;
+				String dumpPath;
+				String checkedFormat = checkFormat(format);
+				job.setFormat(checkedFormat);
+				if (FORMAT_NATIVE.equals(checkedFormat)) {
+						dumpPath = Paths.get(backupDir, "backup_" + timestamp + CopyBackupService.ARCHIVE_EXTENSION).toString();
+						job.setFile(dumpPath);
+						copyBackupService.backup(Paths.get(dumpPath), job);
+				} else if (FORMAT_REPOSITORY.equals(checkedFormat) || FORMAT_INCREMENTAL.equals(checkedFormat)) {
+						dumpPath = Paths.get(backupDir, "backup_" + timestamp + ChunkRepositoryService.MANIFEST_EXTENSION).toString();
+						job.setFile(dumpPath);
+						Path base = FORMAT_INCREMENTAL.equals(checkedFormat) ? incrementalBase() : null;
+						Map<String, Object> manifest = chunkRepository.backup(Paths.get(dumpPath), base, job);
+						// На диск записаны только новые куски — их объём и есть стоимость копии
+						metrics.recordDump("backup", checkedFormat, job.getRows(), ((Number) manifest.get("storedBytes")).longValue());
+						return dumpPath;
+				} else if (FORMAT_PLAIN.equals(checkedFormat)) {
+						dumpPath = Paths.get(backupDir, "backup_" + timestamp + ".sql").toString();
+						job.setFile(dumpPath);
+						createDatabaseDump(dumpPath, List.of("--inserts", "-F", "p"), job);
+						if (precompress) {
+								job.setPhase("gzip");
+								writeGzipVariant(Paths.get(dumpPath));
+						}
+				} else {
+						dumpPath = Paths.get(backupDir, "backup_" + timestamp + ".dir").toString();
+						job.setFile(dumpPath);
+						createDatabaseDump(dumpPath, List.of("-F", "d", "-j", String.valueOf(jobs), "-Z", String.valueOf(compression)), job);
+				}
+				metrics.recordDump("backup", checkedFormat, job.getRows(), sizeOf(new File(dumpPath)));
+				return dumpPath;
 		}
 
-		private void createDatabaseDump(String dumpFilePath, String format) throws IOException, InterruptedException {
-				if (dumpFilePath == null || dumpFilePath.isEmpty()) {
-						throw new IllegalArgumentException("Путь к файлу дампа не может быть пустым.");
+		// SQL-дамп сжимается в несколько раз; рядом кладётся <файл>.gz, который отдаётся клиентам
+		// с Accept-Encoding: gzip. Архивы native и directory уже сжаты и такого варианта не получают
+		private void writeGzipVariant(Path dump) throws IOException {
+				Path compressed = Paths.get(dump + ".gz");
+				try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed), STREAM_BUFFER) {
+						{
+								def.setLevel(compression);
+						}
+				}) {
+						Files.copy(dump, out);
+				} catch (IOException e) {
+						Files.deleteIfExists(compressed);
+						throw e;
 				}
+		}
 
-				ProcessBuilder processBuilder = new ProcessBuilder(
-								PG_DUMP_PATH,
-								"--inserts",
-								"-h", HOST,
-								"-p", PORT,
-								"-U", USER,
-								"-F", format,
-								"-v",
-								"-f", dumpFilePath,
-								DATABASE_NAME
-				);
+		// Ротация копий в backupDir: файлы backup_<время>.* (вместе с .gz-вариантами) старше maxAgeDays
+		// и всё, что не входит в keep последних копий, удаляются. keep <= 0 и maxAgeDays <= 0 отключают правило.
+		// Куски хранилища, на которые больше не ссылается ни один манифест, удаляются следом
+		public List<String> rotateBackups(int keep, int maxAgeDays) throws IOException {
+				File[] files = new File(backupDir).listFiles();
+				if (files == null) {
+						return List.of();
+				}
+				TreeMap<String, List<File>> backups = new TreeMap<>(Comparator.reverseOrder());
+				for (File file : files) {
+						Matcher matcher = BACKUP_NAME.matcher(file.getName());
+						if (matcher.matches()) {
+								backups.computeIfAbsent(matcher.group(1), key -> new ArrayList<>()).add(file);
+						}
+				}
+				String oldestKept = LocalDateTime.now().minusDays(maxAgeDays).format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+				List<String> removed = new ArrayList<>();
+				int index = 0;
+				for (Map.Entry<String, List<File>> backup : backups.entrySet()) {
+						boolean tooMany = keep > 0 && index++ >= keep;
+						boolean tooOld = maxAgeDays > 0 && backup.getKey().compareTo(oldestKept) < 0;
+						if (tooMany || tooOld) {
+								for (File file : backup.getValue()) {
+										deleteRecursively(file.toPath());
+										removed.add(file.getAbsolutePath());
+								}
+						}
+				}
+				if (!removed.isEmpty()) {
+						long chunks = chunkRepository.collectGarbage();
+						if (chunks > 0) {
+								System.out.println("Удалено неиспользуемых кусков хранилища: " + chunks);
+						}
+				}
+				return removed;
+		}
 
-				Map<String, String> environment = processBuilder.environment();
-				environment.put("PGPASSWORD", PASSWORD);
+		private static void deleteRecursively(Path path) throws IOException {
+				try (Stream<Path> files = Files.walk(path)) {
+						for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+								Files.deleteIfExists(file);
+						}
+				}
+		}
 
-				System.out.println("Запуск команды: " + String.join(" ", processBuilder.command()));
+		// Раз в fullEvery копий цепочка начинается заново с полной выгрузки: это ограничивает ущерб
+		// от маловероятного совпадения отметок изменённой таблицы и от повреждённых кусков хранилища
+		private Path incrementalBase() throws IOException {
+				Path base = chunkRepository.latestManifest();
+				if (base == null || (fullEvery > 0 && chunkRepository.chainLength(base) + 1 >= fullEvery)) {
+						return null;
+				}
+				return base;
+		}
 
-				Process process = processBuilder.start();
-				logProcessOutput(process);
-				int exitCode = process.waitFor();
+		String checkFormat(String format) {
+				if (format == null || format.isBlank()) {
+						return defaultFormat;
+				}
+				if (!FORMAT_NATIVE.equals(format) && !FORMAT_REPOSITORY.equals(format) && !FORMAT_INCREMENTAL.equals(format)
+								&& !FORMAT_PLAIN.equals(format) && !FORMAT_DIRECTORY.equals(format)) {
+						throw new IllegalArgumentException("Неизвестный формат дампа: " + format +
+										". Допустимые: native, repository, incremental, plain, directory");
+				}
+				return format;
+		}
 
+		private void createDatabaseDump(String dumpFilePath, List<String> formatOptions, DumpJob job) throws IOException, InterruptedException {
+				if (dumpFilePath == null || dumpFilePath.isEmpty()) {
+						throw new IllegalArgumentException("Путь к файлу дампа не может быть пустым.");
+				}
+
+				List<String> command = new ArrayList<>(List.of(pgDumpPath, "-h", host, "-p", port, "-U", user));
+				command.addAll(formatOptions);
+				command.addAll(List.of("-v", "-f", dumpFilePath, databaseName));
+
+				job.setTablesTotal(copyBackupService.countTables());
+				int exitCode = runProcess(command, "Запуск команды: ", line -> trackProgress(line, job));
 				if (exitCode != 0) {
 						throw new RuntimeException("Ошибка создания дампа, код: " + exitCode);
 				}
 		}
 
 		public void restoreDump(String dumpFilePath) throws IOException, InterruptedException {
+				restoreDump(dumpFilePath, new DumpJob(UUID.randomUUID().toString(), DumpJob.Type.RESTORE, null, dumpFilePath, false));
+		}
+
+		// Каталог directory-формата и custom-архив восстанавливаются через pg_restore -j, SQL-файл — через psql.
+		// Архивы native и repository восстанавливаются в одной транзакции; pg_restore -j работает в нескольких
+		// соединениях, поэтому при ошибке часть таблиц может остаться уже пересозданной
+		public void restoreDump(String dumpFilePath, DumpJob job) throws IOException, InterruptedException {
 				File dumpFile = new File(dumpFilePath);
 				if (!dumpFile.exists()) {
 						throw new IllegalArgumentException("Файл дампа не найден: " + dumpFilePath);
 				}
+				if (dumpFile.isFile() && dumpFile.getName().endsWith(".zip") && isDirectoryZip(dumpFile)) {
+						throw new IllegalArgumentException(DIRECTORY_ZIP_ERROR);
+				}
+				if (!restoreLock.tryLock()) {
+						throw new IllegalStateException("Восстановление уже выполняется");
+				}
+				try {
+						if (dumpFile.getName().endsWith(CopyBackupService.ARCHIVE_EXTENSION)) {
+								job.setFormat(FORMAT_NATIVE);
+								copyBackupService.restore(dumpFile.toPath(), job);
+								metrics.recordDump("restore", FORMAT_NATIVE, job.getRows(), dumpFile.length());
+								return;
+						}
+						if (dumpFile.getName().endsWith(ChunkRepositoryService.MANIFEST_EXTENSION)) {
+								job.setFormat(FORMAT_REPOSITORY);
+								chunkRepository.restore(dumpFile.toPath(), job);
+								metrics.recordDump("restore", FORMAT_REPOSITORY, job.getRows(), dumpFile.length());
+								return;
+						}
 
-				ProcessBuilder processBuilder = new ProcessBuilder(
-								PSQL_PATH,
-								"-h", HOST,
-								"-p", PORT,
-								"-U", USER,
-								"-d", DATABASE_NAME,
-								"-f", dumpFilePath
-				);
+						List<String> command;
+						if (dumpFile.isDirectory() || !dumpFile.getName().endsWith(".sql")) {
+								job.setFormat(dumpFile.isDirectory() ? FORMAT_DIRECTORY : "custom");
+								command = List.of(pgRestorePath, "-h", host, "-p", port, "-U", user, "-d", databaseName,
+												"-j", String.valueOf(jobs), "-v", "--clean", "--if-exists", "--no-owner", dumpFilePath);
+						} else {
+								job.setFormat(FORMAT_PLAIN);
+								command = List.of(psqlPath, "-h", host, "-p", port, "-U", user, "-d", databaseName, "-f", dumpFilePath);
+						}
 
-				Map<String, String> environment = processBuilder.environment();
-				environment.put("PGPASSWORD", PASSWORD);
+						int exitCode = runProcess(command, "Запуск команды восстановления: ", line -> trackProgress(line, job));
+						if (exitCode != 0) {
+								throw new RuntimeException("Ошибка восстановления дампа, код: " + exitCode);
+						}
+						metrics.recordDump("restore", job.getFormat(), job.getRows(), sizeOf(dumpFile));
+				} finally {
+						// Даже неудачное восстановление могло успеть изменить часть таблиц
+						invalidateCaches();
+						restoreLock.unlock();
+				}
+		}
+
+		// Ход выгрузки и загрузки по выводу -v: pg_dump/pg_restore сообщают о каждой таблице с данными,
+		// psql печатает число строк после каждого COPY и INSERT
+		private static void trackProgress(String line, DumpJob job) {
+				Matcher table = TABLE_PROGRESS.matcher(line);
+				if (table.find()) {
+						job.tableDone(table.group(1), 0);
+						return;
+				}
+				Matcher rows = ROWS_PROGRESS.matcher(line);
+				if (rows.matches()) {
+						job.addRows(Long.parseLong(rows.group(1)));
+				}
+		}
+
+		// Восстановление прямо из тела запроса, без записи загрузки на диск. Gzip распаковывается на лету,
+		// формат определяется по первым байтам: архив .pgcopy (zip) загружается через COPY FROM STDIN,
+		// custom-архив pg_dump (PGDMP) передаётся в stdin pg_restore, SQL-текст — в stdin psql.
+		// pg_restore читает архив из stdin только последовательно, поэтому -j здесь не используется,
+		// и все форматы восстанавливаются в одной транзакции: при ошибке база остаётся прежней.
+		public Map<String, Object> restoreFromStream(InputStream body, long totalBytes) throws IOException, InterruptedException {
+				if (!restoreLock.tryLock()) {
+						throw new IllegalStateException("Восстановление уже выполняется");
+				}
+				RestoreProgress progress = new RestoreProgress(totalBytes);
+				lastRestore = progress;
+				try {
+						BufferedInputStream in = new BufferedInputStream(progress.track(body), STREAM_BUFFER);
+						InputStream data = in;
+						if (startsWith(in, GZIP_MAGIC)) {
+								data = new BufferedInputStream(new GZIPInputStream(in, STREAM_BUFFER), STREAM_BUFFER);
+						}
+						String format = detectFormat(data);
+						progress.setFormat(format);
+						progress.setPhase("restoring");
+						System.out.println("Потоковое восстановление, формат: " + format);
+
+						Map<String, Object> result = new LinkedHashMap<>();
+						if ("pgcopy".equals(format)) {
+								result.putAll(copyBackupService.restore(data, progress));
+						} else if ("custom".equals(format)) {
+								pipeToProcess(List.of(pgRestorePath, "-h", host, "-p", port, "-U", user, "-d", databaseName,
+												"--clean", "--if-exists", "--no-owner", "--single-transaction"), data, progress);
+						} else {
+								pipeToProcess(List.of(psqlPath, "-h", host, "-p", port, "-U", user, "-d", databaseName,
+												"-v", "ON_ERROR_STOP=1", "--single-transaction", "-f", "-"), data, progress);
+						}
+						progress.finish(null);
+						metrics.recordDump("restore", format, progress.getRows(), progress.getBytesRead());
+						result.putAll(progress.toMap());
+						return result;
+				} catch (IOException | InterruptedException | RuntimeException e) {
+						progress.finish(e.getMessage());
+						throw e;
+				} finally {
+						// Даже неудачное восстановление могло успеть изменить часть таблиц
+						invalidateCaches();
+						restoreLock.unlock();
+				}
+		}
+
+		// Имя первой записи из локального заголовка zip: длина имени — в байтах 26–27, само имя — с 30-го байта
+		private static String firstZipEntryName(InputStream in) throws IOException {
+				in.mark(ZIP_HEADER + 0xFFFF);
+				try {
+						byte[] header = in.readNBytes(ZIP_HEADER);
+						if (header.length < ZIP_HEADER) {
+								return null;
+						}
+						int nameLength = (header[26] & 0xFF) | (header[27] & 0xFF) << 8;
+						byte[] name = in.readNBytes(nameLength);
+						return name.length < nameLength ? null : new String(name, StandardCharsets.UTF_8);
+				} finally {
+						in.reset();
+				}
+		}
+
+		private static boolean isDirectoryZip(File file) throws IOException {
+				try (ZipFile zip = new ZipFile(file)) {
+						return zip.stream().anyMatch(entry -> entry.getName().equals(DIRECTORY_TOC)
+										|| entry.getName().endsWith("/" + DIRECTORY_TOC));
+				}
+		}
+
+		public Map<String, Object> getRestoreProgress() {
+				RestoreProgress progress = lastRestore;
+				return progress == null ? Map.of("phase", "idle") : progress.toMap();
+		}
+
+		private static boolean startsWith(InputStream in, byte[] magic) throws IOException {
+				in.mark(magic.length);
+				try {
+						return Arrays.equals(in.readNBytes(magic.length), magic);
+				} finally {
+						in.reset();
+				}
+		}
+
+		// Zip-архив .pgcopy начинается с manifest.json, а архив каталога pg_dump, который отдаёт скачивание
+		// backup_*.dir.zip, — с toc.dat: его pg_restore из потока прочитать не может
+		static String detectFormat(InputStream in) throws IOException {
+				if (startsWith(in, PGDMP_MAGIC)) {
+						return "custom";
+				}
+				if (startsWith(in, ZIP_MAGIC)) {
+						String firstEntry = firstZipEntryName(in);
+						if (firstEntry != null && DIRECTORY_ENTRY.matcher(firstEntry).matches()) {
+								throw new IllegalArgumentException(DIRECTORY_ZIP_ERROR);
+						}
+						return "pgcopy";
+				}
+				in.mark(SQL_PROBE);
+				byte[] head;
+				try {
+						head = in.readNBytes(SQL_PROBE);
+				} finally {
+						in.reset();
+				}
+				if (head.length == 0) {
+						throw new IllegalArgumentException("Файл резервной копии пуст");
+				}
+				for (byte b : head) {
+						if (b == 0) {
+								throw new IllegalArgumentException("Неизвестный формат резервной копии: ожидается SQL, архив pg_dump или .pgcopy");
+						}
+				}
+				String text = new String(head, StandardCharsets.UTF_8).replace("\uFEFF", "").stripLeading().toUpperCase(Locale.ROOT);
+				for (String prefix : SQL_PREFIXES) {
+						if (text.startsWith(prefix)) {
+								return "plain";
+						}
+				}
+				throw new IllegalArgumentException("Неизвестный формат резервной копии: ожидается SQL, архив pg_dump или .pgcopy");
+		}
 
+		// Вывод процесса читается отдельным потоком: текущий поток занят записью в stdin
+		private void pipeToProcess(List<String> command, InputStream data, RestoreProgress progress) throws IOException, InterruptedException {
+				ProcessBuilder processBuilder = new ProcessBuilder(command);
+				processBuilder.redirectErrorStream(true);
+				processBuilder.environment().put("PGPASSWORD", password);
 				System.out.println("Запуск команды восстановления: " + String.join(" ", processBuilder.command()));
 
 				Process process = processBuilder.start();
-				logProcessOutput(process);
+				Thread outputReader = new Thread(() -> {
+						try {
+								// ход потокового восстановления считается по прочитанным байтам,
+								// строки — по тегам COPY и INSERT, которые печатает psql
+								logProcessOutput(process, line -> {
+										Matcher rows = ROWS_PROGRESS.matcher(line);
+										if (rows.matches()) {
+												progress.setRows(progress.getRows() + Long.parseLong(rows.group(1)));
+										}
+								});
+						} catch (IOException e) {
+								System.out.println("[WARN] Не удалось прочитать вывод процесса: " + e.getMessage());
+						}
+				}, "restore-output");
+				outputReader.start();
+				try (OutputStream stdin = process.getOutputStream()) {
+						data.transferTo(stdin);
+				} catch (IOException e) {
+						// Процесс мог завершиться с ошибкой раньше, чем дочитал вход (ON_ERROR_STOP) — тогда важен его код
+						if (process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() != 0) {
+								outputReader.join();
+								throw new RuntimeException("Ошибка восстановления дампа, код: " + process.exitValue());
+						}
+						process.destroyForcibly();
+						throw e;
+				}
 				int exitCode = process.waitFor();
-
+				outputReader.join();
 				if (exitCode != 0) {
 						throw new RuntimeException("Ошибка восстановления дампа, код: " + exitCode);
 				}
 		}
 
-		private void logProcessOutput(Process process) throws IOException {
-				try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-				     BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+		private void invalidateCaches() {
+				queryResultCache.invalidateAll();
+				schemaCache.invalidateAll();
+		}
+
+		private int runProcess(List<String> command, String logPrefix, Consumer<String> onLine) throws IOException, InterruptedException {
+				ProcessBuilder processBuilder = new ProcessBuilder(command);
+				processBuilder.redirectErrorStream(true);
+				Map<String, String> environment = processBuilder.environment();
+				environment.put("PGPASSWORD", password);
+
+				System.out.println(logPrefix + String.join(" ", processBuilder.command()));
+
+				Process process = processBuilder.start();
+				logProcessOutput(process, onLine);
+				return process.waitFor();
+		}
+
+		// Каталог дампа отдаётся одним zip-архивом; файлы данных уже сжаты pg_dump, поэтому без повторного сжатия.
+		// toc.dat пишется первым, чтобы такой архив узнавался при загрузке по первой записи
+		public void writeDirectoryAsZip(File directory, OutputStream out) throws IOException {
+				Path root = directory.toPath();
+				ZipOutputStream zip = new ZipOutputStream(out);
+				zip.setLevel(0);
+				try (Stream<Path> files = Files.walk(root)) {
+						Stream<Path> ordered = files.filter(Files::isRegularFile)
+										.sorted(Comparator.comparing((Path file) -> !file.getFileName().toString().equals(DIRECTORY_TOC))
+														.thenComparing(Path::toString));
+						for (Path file : (Iterable<Path>) ordered::iterator) {
+								zip.putNextEntry(new ZipEntry(directory.getName() + "/" + root.relativize(file).toString().replace(File.separatorChar, '/')));
+								Files.copy(file, zip);
+								zip.closeEntry();
+						}
+				}
+				zip.finish();
+		}
+
+		private long sizeOf(File file) throws IOException {
+				if (!file.isDirectory()) {
+						return file.length();
+				}
+				try (Stream<Path> files = Files.walk(file.toPath())) {
+						return files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+				}
+		}
+
+		// stderr объединён с stdout (redirectErrorStream): при раздельном чтении подробный вывод -v
+		// заполнял буфер stderr, пока читался stdout, и процесс зависал
+		private void logProcessOutput(Process process, Consumer<String> onLine) throws IOException {
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
 						String line;
 						while ((line = reader.readLine()) != null) {
 								System.out.println("[INFO] " + line);
-						}
-						while ((line = errorReader.readLine()) != null) {
-								System.err.println("[ERROR] " + line);
+								onLine.accept(line);
 						}
 				}
 		}
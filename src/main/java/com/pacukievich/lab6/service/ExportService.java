@@ -0,0 +1,595 @@
+package com.pacukievich.lab6.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Service
+public class ExportService {
+
+		private static final int MAX_SHEET_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+		private static final int MAX_CELL_TEXT = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+		private static final long MAX_EXACT_LONG = 1L << 53;
+		private static final int STREAM_BUFFER = 64 * 1024;
+
+		private final TableService tableService;
+		private final AppMetrics metrics;
+		private final DataSource dataSource;
+		private final ObjectMapper objectMapper;
+		private final int rowAccessWindow;
+		private final int cursorFetchSize;
+		private final int exportParallelism;
+		private final ExecutorService exportExecutor;
+
+		public ExportService(TableService tableService, AppMetrics metrics, DataSource dataSource, ObjectMapper objectMapper,
+		                     @Value("${app.export.row-access-window:100}") int rowAccessWindow,
+		                     @Value("${app.jdbc.cursor-fetch-size:1000}") int cursorFetchSize,
+		                     @Value("${app.export.parallelism:4}") int parallelism,
+		                     @Value("${app.export.reserved-connections:4}") int reservedConnections) {
+				this.tableService = tableService;
+				this.metrics = metrics;
+				this.dataSource = dataSource;
+				this.objectMapper = objectMapper;
+				this.rowAccessWindow = rowAccessWindow;
+				this.cursorFetchSize = cursorFetchSize;
+				// Воркеры выгрузки не должны забирать весь пул Hikari: часть соединений остаётся
+				// для интерактивных запросов и для соединения, удерживающего снимок
+				int poolSize = Integer.MAX_VALUE;
+				try {
+						if (dataSource.isWrapperFor(HikariDataSource.class)) {
+								poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+						}
+				} catch (SQLException ignored) {
+						// размер пула неизвестен — ограничиваемся настройкой
+				}
+				this.exportParallelism = Math.max(1, Math.min(parallelism, poolSize - reservedConnections));
+				this.exportExecutor = Executors.newFixedThreadPool(exportParallelism, new CustomizableThreadFactory("export-"));
+		}
+
+		// Строки пишутся в ответ по мере чтения курсора, без промежуточного List<Map<String, Object>>
+		public void writeTableJson(String tableName, OutputStream out) throws IOException {
+				String sql = "SELECT * FROM " + SqlIdentifiers.quote(tableName);
+				AppMetrics.CountingOutputStream counted = AppMetrics.counting(out);
+				long rows;
+				try (JsonGenerator generator = objectMapper.getFactory().createGenerator(counted)) {
+						// При ошибке на середине выгрузки JSON должен остаться незакрытым, чтобы клиент её заметил
+						generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+						generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+						generator.writeStartArray();
+						rows = tableService.queryWithCursor(sql, rs -> {
+								try {
+										return writeJsonObjects(rs, generator, false);
+								} catch (IOException e) {
+										throw new UncheckedIOException(e);
+								}
+						});
+						generator.writeEndArray();
+				} catch (UncheckedIOException e) {
+						throw e.getCause();
+				}
+				metrics.recordExport("json", rows, counted.getCount());
+		}
+
+		// CSV и NDJSON пишутся в ответ по мере чтения, без POI и без Map на строку; gzip сжимает поток на лету.
+		// xlsx уже сжат, поэтому gzip для него не применяется.
+		public void writeTable(String tableName, Format format, boolean gzip, OutputStream out) throws IOException {
+				if (format == Format.XLSX) {
+						writeTableXlsx(tableName, out);
+						return;
+				}
+				AppMetrics.CountingOutputStream counted = AppMetrics.counting(out);
+				OutputStream target = gzip ? new GzipTarget(counted) : counted;
+				long rows;
+				if (format == Format.CSV) {
+						// COPY отдаёт готовый CSV прямо с сервера — в JVM строки не разбираются вовсе
+						try (Connection connection = dataSource.getConnection()) {
+								rows = copyCsv(connection, tableName, target);
+						} catch (SQLException e) {
+								throw new IOException("Ошибка выгрузки таблицы " + tableName + ": " + e.getMessage(), e);
+						}
+				} else {
+						try {
+								rows = tableService.queryWithCursor("SELECT * FROM " + SqlIdentifiers.quote(tableName), rs -> {
+										try {
+												return writeNdjson(rs, target);
+										} catch (IOException e) {
+												throw new UncheckedIOException(e);
+										}
+								});
+						} catch (UncheckedIOException e) {
+								throw e.getCause();
+						}
+				}
+				// При ошибке выше gzip не завершается: оборванный архив клиент отличит от полного
+				if (target instanceof GzipTarget compressed) {
+						compressed.finish();
+				}
+				metrics.recordExport(format.getExtension(), rows, counted.getCount());
+		}
+
+		// Несколько таблиц в CSV или NDJSON — zip-архив, по файлу на таблицу. Все таблицы читаются
+		// на одном соединении в одной транзакции REPEATABLE READ, то есть из одного снимка.
+		public void writeTables(List<String> tableNames, Format format, OutputStream out) throws IOException {
+				if (format == Format.XLSX) {
+						writeTablesXlsx(tableNames, out);
+						return;
+				}
+				AppMetrics.CountingOutputStream counted = AppMetrics.counting(out);
+				ZipOutputStream zip = new ZipOutputStream(counted);
+				long rows = 0;
+				try (Connection connection = dataSource.getConnection()) {
+						boolean autoCommit = connection.getAutoCommit();
+						int isolation = connection.getTransactionIsolation();
+						connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+						connection.setAutoCommit(false);
+						try {
+								for (String tableName : tableNames) {
+										zip.putNextEntry(new ZipEntry(tableName + "." + format.getExtension()));
+										if (format == Format.CSV) {
+												rows += copyCsv(connection, tableName, zip);
+										} else {
+												try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+														statement.setFetchSize(cursorFetchSize);
+														try (ResultSet rs = statement.executeQuery("SELECT * FROM " + SqlIdentifiers.quote(tableName))) {
+																rows += writeNdjson(rs, zip);
+														}
+												}
+										}
+										zip.closeEntry();
+								}
+						} finally {
+								connection.rollback();
+								connection.setAutoCommit(autoCommit);
+								connection.setTransactionIsolation(isolation);
+						}
+				} catch (SQLException e) {
+						throw new IOException("Ошибка выгрузки таблиц: " + e.getMessage(), e);
+				}
+				zip.finish();
+				metrics.recordExport(format.getExtension(), rows, counted.getCount());
+		}
+
+		// Результат запроса, прочитанный курсором: строки пишутся сразу из ResultSet, без List<Map<String, Object>>
+		public long writeResultSet(ResultSet rs, Format format, boolean gzip, OutputStream out) throws SQLException, IOException {
+				if (format == Format.XLSX) {
+						throw new IllegalArgumentException("Потоковая выгрузка результата запроса поддерживает только csv и ndjson");
+				}
+				AppMetrics.CountingOutputStream counted = AppMetrics.counting(out);
+				OutputStream target = gzip ? new GzipTarget(counted) : counted;
+				long rows = format == Format.CSV ? writeCsv(rs, target) : writeNdjson(rs, target);
+				if (target instanceof GzipTarget compressed) {
+						compressed.finish();
+				}
+				metrics.recordExport(format.getExtension(), rows, counted.getCount());
+				return rows;
+		}
+
+		public void writeTableXlsx(String tableName, OutputStream out) throws IOException {
+				writeTablesXlsx(List.of(tableName), out);
+		}
+
+		// SXSSF держит в памяти только последние rowAccessWindow строк, остальные сбрасываются во временный файл
+		public void writeTablesXlsx(List<String> tableNames, OutputStream out) throws IOException {
+				SXSSFWorkbook workbook = new SXSSFWorkbook(rowAccessWindow);
+				workbook.setCompressTempFiles(true);
+				AppMetrics.CountingOutputStream counted = AppMetrics.counting(out);
+				long rows = 0;
+				try {
+						CellStyle dateStyle = workbook.createCellStyle();
+						dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+
+						if (tableNames.size() > 1 && exportParallelism > 1) {
+								rows = writeSheetsInParallel(workbook, tableNames, dateStyle);
+						} else {
+								for (String tableName : tableNames) {
+										String sql = "SELECT * FROM " + SqlIdentifiers.quote(tableName);
+										rows += tableService.queryWithCursor(sql, rs -> {
+												SheetWriter writer = new SheetWriter(workbook, tableName, readColumns(rs), dateStyle);
+												int columnCount = rs.getMetaData().getColumnCount();
+												while (rs.next()) {
+														Object[] values = new Object[columnCount];
+														for (int i = 1; i <= columnCount; i++) {
+																values[i - 1] = JdbcUtils.getResultSetValue(rs, i);
+														}
+														writer.appendRow(values);
+												}
+												return writer.getRowsWritten();
+										});
+								}
+						}
+						workbook.write(counted);
+				} finally {
+						workbook.dispose();
+						workbook.close();
+				}
+				metrics.recordExport("xlsx", rows, counted.getCount());
+		}
+
+		// Таблицы читаются параллельно, каждая на своём соединении из пула, но все — в одном снимке
+		// REPEATABLE READ, экспортированном через pg_export_snapshot(). Листы добавляются в книгу
+		// в исходном порядке таблиц по мере готовности: SXSSFWorkbook не потокобезопасен.
+		private long writeSheetsInParallel(SXSSFWorkbook workbook, List<String> tableNames, CellStyle dateStyle) throws IOException {
+				List<Future<TableSpool>> futures = new ArrayList<>();
+				int written = 0;
+				long rows = 0;
+				try (Connection snapshotConnection = dataSource.getConnection()) {
+						boolean autoCommit = snapshotConnection.getAutoCommit();
+						int isolation = snapshotConnection.getTransactionIsolation();
+						snapshotConnection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+						snapshotConnection.setAutoCommit(false);
+						try {
+								String snapshotId;
+								try (Statement statement = snapshotConnection.createStatement();
+								     ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot()")) {
+										rs.next();
+										snapshotId = rs.getString(1);
+								}
+
+								for (String tableName : tableNames) {
+										futures.add(exportExecutor.submit(() -> spoolTable(tableName, snapshotId)));
+								}
+								for (; written < futures.size(); written++) {
+										try (TableSpool spool = futures.get(written).get()) {
+												SheetWriter writer = new SheetWriter(workbook, tableNames.get(written), spool.getColumns(), dateStyle);
+												spool.forEachRow(writer::appendRow);
+												rows += writer.getRowsWritten();
+										}
+								}
+						} finally {
+								// Снимок должен жить, пока все воркеры не выполнили SET TRANSACTION SNAPSHOT
+								snapshotConnection.rollback();
+								snapshotConnection.setAutoCommit(autoCommit);
+								snapshotConnection.setTransactionIsolation(isolation);
+						}
+				} catch (SQLException e) {
+						throw new IOException("Ошибка получения снимка базы данных: " + e.getMessage(), e);
+				} catch (ExecutionException e) {
+						throw new IOException("Ошибка выгрузки таблицы: " + e.getCause().getMessage(), e.getCause());
+				} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Выгрузка прервана", e);
+				} finally {
+						discardPending(futures, written);
+				}
+				return rows;
+		}
+
+		private TableSpool spoolTable(String tableName, String snapshotId) throws SQLException, IOException {
+				TableSpool spool = TableSpool.create();
+				try (Connection connection = dataSource.getConnection()) {
+						boolean autoCommit = connection.getAutoCommit();
+						int isolation = connection.getTransactionIsolation();
+						connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+						connection.setAutoCommit(false);
+						try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+								statement.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+								statement.setFetchSize(cursorFetchSize);
+								try (ResultSet rs = statement.executeQuery("SELECT * FROM " + SqlIdentifiers.quote(tableName))) {
+										spool.write(rs);
+								}
+						} finally {
+								connection.rollback();
+								connection.setAutoCommit(autoCommit);
+								connection.setTransactionIsolation(isolation);
+						}
+						if (Thread.currentThread().isInterrupted()) {
+								throw new IOException("Выгрузка таблицы " + tableName + " отменена");
+						}
+						return spool;
+				} catch (SQLException | IOException | RuntimeException e) {
+						spool.close();
+						throw e;
+				}
+		}
+
+		private void discardPending(List<Future<TableSpool>> futures, int fromIndex) {
+				for (int i = fromIndex; i < futures.size(); i++) {
+						Future<TableSpool> future = futures.get(i);
+						if (!future.cancel(true) && !future.isCancelled()) {
+								try {
+										future.get().close();
+								} catch (Exception ignored) {
+										// таблица не была выгружена — удалять нечего
+								}
+						}
+				}
+		}
+
+		// Имя таблицы приходит из URL: без экранирования имя вида x" TO PROGRAM '...' -- превратило бы
+		// выгрузку в запуск команды на сервере базы
+		private static long copyCsv(Connection connection, String tableName, OutputStream out) throws SQLException, IOException {
+				return connection.unwrap(PGConnection.class).getCopyAPI()
+								.copyOut("COPY " + SqlIdentifiers.quote(tableName) + " TO STDOUT (FORMAT csv, HEADER)", out);
+		}
+
+		private long writeNdjson(ResultSet rs, OutputStream out) throws SQLException, IOException {
+				try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+						generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+						// Объекты разделяются переводом строки, а не пробелом по умолчанию
+						generator.setRootValueSeparator(null);
+						return writeJsonObjects(rs, generator, true);
+				}
+		}
+
+		private static long writeJsonObjects(ResultSet rs, JsonGenerator generator, boolean lineDelimited) throws SQLException, IOException {
+				String[] names = readColumns(rs);
+				SerializedString[] columns = new SerializedString[names.length];
+				for (int i = 0; i < names.length; i++) {
+						columns[i] = new SerializedString(names[i]);
+				}
+				long rowCount = 0;
+				while (rs.next()) {
+						generator.writeStartObject();
+						for (int i = 1; i <= columns.length; i++) {
+								generator.writeFieldName(columns[i - 1]);
+								generator.writeObject(JdbcUtils.getResultSetValue(rs, i));
+						}
+						generator.writeEndObject();
+						if (lineDelimited) {
+								generator.writeRaw('\n');
+						}
+						rowCount++;
+				}
+				return rowCount;
+		}
+
+		// Тот же CSV, что выдаёт COPY ... (FORMAT csv, HEADER): NULL — пустое поле, пустая строка — "",
+		// значения в текстовом представлении PostgreSQL
+		private static long writeCsv(ResultSet rs, OutputStream out) throws SQLException, IOException {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER);
+				String[] columns = readColumns(rs);
+				for (int i = 0; i < columns.length; i++) {
+						if (i > 0) {
+								writer.write(',');
+						}
+						writeCsvField(writer, columns[i]);
+				}
+				writer.write('\n');
+				long rowCount = 0;
+				while (rs.next()) {
+						for (int i = 1; i <= columns.length; i++) {
+								if (i > 1) {
+										writer.write(',');
+								}
+								String value = rs.getString(i);
+								if (value != null) {
+										writeCsvField(writer, value);
+								}
+						}
+						writer.write('\n');
+						rowCount++;
+				}
+				writer.flush();
+				return rowCount;
+		}
+
+		private static void writeCsvField(Writer writer, String value) throws IOException {
+				boolean quote = value.isEmpty();
+				for (int i = 0; i < value.length() && !quote; i++) {
+						char c = value.charAt(i);
+						quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+				}
+				if (!quote) {
+						writer.write(value);
+						return;
+				}
+				writer.write('"');
+				for (int i = 0; i < value.length(); i++) {
+						char c = value.charAt(i);
+						if (c == '"') {
+								writer.write('"');
+						}
+						writer.write(c);
+				}
+				writer.write('"');
+		}
+
+		private static String[] readColumns(ResultSet rs) throws SQLException {
+				ResultSetMetaData metaData = rs.getMetaData();
+				String[] columns = new String[metaData.getColumnCount()];
+				for (int i = 1; i <= columns.length; i++) {
+						columns[i - 1] = JdbcUtils.lookupColumnName(metaData, i);
+				}
+				return columns;
+		}
+
+		@PreDestroy
+		public void shutdown() {
+				exportExecutor.shutdownNow();
+		}
+
+		public enum Format {
+				XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+				CSV("csv", "text/csv; charset=UTF-8"),
+				NDJSON("ndjson", "application/x-ndjson");
+
+				private final String extension;
+				private final String contentType;
+
+				Format(String extension, String contentType) {
+						this.extension = extension;
+						this.contentType = contentType;
+				}
+
+				public static Format parse(String value) {
+						try {
+								return valueOf(value.trim().toUpperCase(Locale.ROOT));
+						} catch (IllegalArgumentException e) {
+								throw new IllegalArgumentException("Неизвестный формат экспорта: " + value + " (поддерживаются xlsx, csv, ndjson)");
+						}
+				}
+
+				// Только текстовые форматы имеет смысл сжимать gzip
+				public boolean isText() {
+						return this != XLSX;
+				}
+
+				public String getExtension() {
+						return extension;
+				}
+
+				public String getContentType() {
+						return contentType;
+				}
+		}
+
+		// Буфер перед Deflater: COPY и курсор пишут построчно, а deflate на каждую короткую запись дорог
+		private static final class GzipTarget extends BufferedOutputStream {
+				private final GZIPOutputStream gzip;
+
+				GzipTarget(OutputStream out) throws IOException {
+						this(new GZIPOutputStream(out, STREAM_BUFFER));
+				}
+
+				private GzipTarget(GZIPOutputStream gzip) {
+						super(gzip, STREAM_BUFFER);
+						this.gzip = gzip;
+				}
+
+				void finish() throws IOException {
+						flush();
+						gzip.finish();
+				}
+		}
+
+		// Ячейка Excel хранит double: числовой ячейкой пишется только то, что double передаёт точно.
+		// bigint больше 2^53 и numeric с длинной мантиссой пишутся текстом, иначе они молча исказились бы
+		static boolean isExactDouble(Number number) {
+				if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+						return true;
+				}
+				if (number instanceof Double || number instanceof Float) {
+						return Double.isFinite(number.doubleValue());
+				}
+				if (number instanceof Long value) {
+						return value >= -MAX_EXACT_LONG && value <= MAX_EXACT_LONG;
+				}
+				BigDecimal decimal;
+				if (number instanceof BigDecimal value) {
+						decimal = value;
+				} else if (number instanceof BigInteger value) {
+						decimal = new BigDecimal(value);
+				} else {
+						return false;
+				}
+				double converted = decimal.doubleValue();
+				return Double.isFinite(converted) && BigDecimal.valueOf(converted).compareTo(decimal) == 0;
+		}
+
+		private static class SheetWriter {
+				private final SXSSFWorkbook workbook;
+				private final String tableName;
+				private final String[] columns;
+				private final CellStyle dateStyle;
+				private Sheet sheet;
+				private int sheetNumber = 1;
+				private int rowIndex = 1;
+				private long rowsWritten;
+
+				SheetWriter(SXSSFWorkbook workbook, String tableName, String[] columns, CellStyle dateStyle) {
+						this.workbook = workbook;
+						this.tableName = tableName;
+						this.columns = columns;
+						this.dateStyle = dateStyle;
+						this.sheet = createSheet();
+				}
+
+				void appendRow(Object[] values) {
+						// Лист Excel ограничен 1 048 576 строками — остаток таблицы переносится на следующий лист
+						if (rowIndex == MAX_SHEET_ROWS) {
+								sheetNumber++;
+								sheet = createSheet();
+								rowIndex = 1;
+						}
+						Row row = sheet.createRow(rowIndex++);
+						for (int i = 0; i < values.length; i++) {
+								setCellValue(row.createCell(i), values[i]);
+						}
+						rowsWritten++;
+				}
+
+				long getRowsWritten() {
+						return rowsWritten;
+				}
+
+				private Sheet createSheet() {
+						String name = sheetNumber == 1 ? tableName : tableName + " (" + sheetNumber + ")";
+						Sheet newSheet = workbook.createSheet(WorkbookUtil.createSafeSheetName(name));
+						Row headerRow = newSheet.createRow(0);
+						for (int i = 0; i < columns.length; i++) {
+								headerRow.createCell(i).setCellValue(columns[i]);
+						}
+						return newSheet;
+				}
+
+				private void setCellValue(Cell cell, Object value) {
+						if (value == null) {
+								return;
+						}
+						if (value instanceof Number number && isExactDouble(number)) {
+								cell.setCellValue(number.doubleValue());
+						} else if (value instanceof Boolean bool) {
+								cell.setCellValue(bool);
+						} else if (value instanceof Time) {
+								cell.setCellValue(value.toString());
+						} else if (value instanceof Date date) {
+								cell.setCellValue(date);
+								cell.setCellStyle(dateStyle);
+						} else if (value instanceof LocalDateTime dateTime) {
+								cell.setCellValue(dateTime);
+								cell.setCellStyle(dateStyle);
+						} else if (value instanceof LocalDate date) {
+								cell.setCellValue(date);
+								cell.setCellStyle(dateStyle);
+						} else {
+								String text = value.toString();
+								cell.setCellValue(text.length() > MAX_CELL_TEXT ? text.substring(0, MAX_CELL_TEXT) : text);
+						}
+				}
+		}
+}
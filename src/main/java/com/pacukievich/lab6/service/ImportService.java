@@ -0,0 +1,598 @@
+package com.pacukievich.lab6.service;
+
+import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TableRequest;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.sql.DataSource;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Массовая загрузка CSV и XLSX в таблицу через COPY. CSV читается потоково, XLSX разбирается
+// событийно (XSSFReader + SAX), книга целиком в память не загружается. Каждая строка проверяется
+// по типам колонок до отправки в COPY: неподходящие строки отклоняются с указанием причины, остальные
+// уходят пакетами по batchRows строк. Если пакет всё же отвергнут базой (ограничения, длина строк),
+// он повторяется построчно, чтобы найти виновные строки. Вся загрузка — одна транзакция.
+@Service
+public class ImportService {
+
+		public static final String FORMAT_CSV = "csv";
+		public static final String FORMAT_XLSX = "xlsx";
+
+		public record ImportOptions(String format, boolean createTable, boolean inferTypes, char delimiter, boolean header) {
+		}
+
+		private final DataSource dataSource;
+		private final TableService tableService;
+		private final SchemaMetadataCache schemaCache;
+		private final QueryResultCache queryResultCache;
+		private final int batchRows;
+		private final int sampleRows;
+		private final int reportedRejects;
+		private final int rejectLimit;
+
+		public ImportService(DataSource dataSource, TableService tableService, SchemaMetadataCache schemaCache,
+		                     QueryResultCache queryResultCache,
+		                     @Value("${app.import.batch-rows:5000}") int batchRows,
+		                     @Value("${app.import.inference-sample-rows:1000}") int sampleRows,
+		                     @Value("${app.import.reported-rejects:100}") int reportedRejects,
+		                     @Value("${app.import.reject-limit:10000}") int rejectLimit) {
+				this.dataSource = dataSource;
+				this.tableService = tableService;
+				this.schemaCache = schemaCache;
+				this.queryResultCache = queryResultCache;
+				this.batchRows = Math.max(1, batchRows);
+				this.sampleRows = Math.max(1, sampleRows);
+				this.reportedRejects = reportedRejects;
+				this.rejectLimit = rejectLimit;
+		}
+
+		public Map<String, Object> importFile(String tableName, String fileName, InputStream in, ImportOptions options)
+						throws IOException, SQLException {
+				if (tableName == null || !tableName.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+						throw new IllegalArgumentException("Недопустимое имя таблицы: " + tableName);
+				}
+				String table = tableName.toLowerCase(Locale.ROOT);
+				String format = options.format() != null && !options.format().isBlank()
+								? options.format().toLowerCase(Locale.ROOT)
+								: fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".xlsx") ? FORMAT_XLSX : FORMAT_CSV;
+				if (!FORMAT_CSV.equals(format) && !FORMAT_XLSX.equals(format)) {
+						throw new IllegalArgumentException("Неизвестный формат импорта: " + format + ". Допустимые: csv, xlsx");
+				}
+
+				long startedAt = System.nanoTime();
+				Importer importer;
+				try (Connection connection = dataSource.getConnection()) {
+						boolean autoCommit = connection.getAutoCommit();
+						connection.setAutoCommit(false);
+						try {
+								importer = new Importer(connection, table, options);
+								if (FORMAT_CSV.equals(format)) {
+										CsvReader reader = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8), options.delimiter());
+										List<String> row;
+										while ((row = reader.next()) != null) {
+												importer.row(row);
+										}
+								} else {
+										readXlsx(in, importer);
+								}
+								importer.finish();
+								connection.commit();
+						} catch (IOException | SQLException | RuntimeException e) {
+								connection.rollback();
+								throw e;
+						} finally {
+								connection.setAutoCommit(autoCommit);
+						}
+				} finally {
+						schemaCache.invalidate(table);
+						queryResultCache.invalidateTable(table);
+				}
+
+				long elapsedMillis = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+				Map<String, Object> result = new LinkedHashMap<>();
+				result.put("table", table);
+				result.put("format", format);
+				result.put("created", importer.created);
+				result.put("columns", importer.columnSummary());
+				result.put("rowsImported", importer.imported);
+				result.put("rowsRejected", importer.rejected);
+				result.put("rejects", importer.rejects);
+				result.put("elapsedMillis", elapsedMillis);
+				result.put("rowsPerSecond", importer.imported * 1000 / elapsedMillis);
+				return result;
+		}
+
+		// XSSFReader требует произвольного доступа к zip, поэтому книга сохраняется во временный файл
+		// (он сжат и в разы меньше листа); лист читается SAX-парсером по строкам
+		private void readXlsx(InputStream in, Importer importer) throws IOException, SQLException {
+				Path temp = Files.createTempFile("import-", ".xlsx");
+				try {
+						Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+						try (OPCPackage workbook = OPCPackage.open(temp.toFile(), PackageAccess.READ)) {
+								XSSFReader reader = new XSSFReader(workbook);
+								ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(workbook);
+								Iterator<InputStream> sheets = reader.getSheetsData();
+								if (!sheets.hasNext()) {
+										throw new IllegalArgumentException("В книге нет листов");
+								}
+								try (InputStream sheet = sheets.next()) {
+										XMLReader parser = XMLHelper.newXMLReader();
+										parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, strings,
+														new SheetRows(importer), new RawValueFormatter(), false));
+										parser.parse(new InputSource(sheet));
+								}
+						} catch (RowFailure e) {
+								throw e.getCause();
+						} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+								throw new IllegalArgumentException("Не удалось прочитать XLSX: " + e.getMessage(), e);
+						}
+				} finally {
+						Files.deleteIfExists(temp);
+				}
+		}
+
+		// Строки листа в порядке следования; пропущенные пустые ячейки восстанавливаются по ссылке ячейки
+		private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+				private final Importer importer;
+				private List<String> row;
+
+				SheetRows(Importer importer) {
+						this.importer = importer;
+				}
+
+				@Override
+				public void startRow(int rowNum) {
+						row = new ArrayList<>();
+				}
+
+				@Override
+				public void endRow(int rowNum) {
+						try {
+								importer.row(row);
+						} catch (SQLException e) {
+								throw new RowFailure(e);
+						}
+				}
+
+				@Override
+				public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+						int column = cellReference != null ? new CellReference(cellReference).getCol() : row.size();
+						while (row.size() < column) {
+								row.add("");
+						}
+						row.add(formattedValue == null ? "" : formattedValue);
+				}
+		}
+
+		// SAX-обработчик не может бросить SQLException — он передаётся наружу в обёртке
+		private static final class RowFailure extends RuntimeException {
+				RowFailure(SQLException cause) {
+						super(cause);
+				}
+
+				@Override
+				public synchronized SQLException getCause() {
+						return (SQLException) super.getCause();
+				}
+		}
+
+		// Значения как есть, а не в отображаемом формате ячейки: даты — ISO-8601, числа — без группировки разрядов
+		private static final class RawValueFormatter extends DataFormatter {
+				@Override
+				public String formatRawCellContents(double value, int formatIndex, String formatString) {
+						if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+								LocalDateTime dateTime = DateUtil.getLocalDateTime(value);
+								return dateTime.toLocalTime().equals(LocalTime.MIDNIGHT) ? dateTime.toLocalDate().toString() : dateTime.toString();
+						}
+						return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+				}
+		}
+
+		private record Column(String name, String type, boolean notNull) {
+		}
+
+		// Состояние одной загрузки: заголовок, выборка для определения типов, текущий пакет COPY и отклонённые строки
+		private final class Importer {
+
+				private final Connection connection;
+				private final CopyManager copyManager;
+				private final String table;
+				private final ImportOptions options;
+				private final List<List<String>> sample = new ArrayList<>();
+				private final List<Long> sampleRowNumbers = new ArrayList<>();
+				private final StringBuilder batch = new StringBuilder();
+				private final List<String> batchLines = new ArrayList<>();
+				private final List<Long> batchRowNumbers = new ArrayList<>();
+				private final List<Map<String, Object>> rejects = new ArrayList<>();
+				private List<String> header;
+				private List<Column> columns;
+				private String copySql;
+				private boolean created;
+				private long rowNumber;
+				private long imported;
+				private long rejected;
+
+				Importer(Connection connection, String table, ImportOptions options) throws SQLException {
+						this.connection = connection;
+						this.copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+						this.table = table;
+						this.options = options;
+				}
+
+				void row(List<String> values) throws SQLException {
+						rowNumber++;
+						if (values.stream().allMatch(value -> value == null || value.isBlank())) {
+								return;
+						}
+						if (options.header() && header == null) {
+								header = values;
+								return;
+						}
+						if (columns == null) {
+								if (tableExists()) {
+										columns = existingColumns(values.size());
+								} else if (!options.createTable()) {
+										throw new IllegalArgumentException("Таблица " + table + " не существует");
+								} else {
+										// Типы новой таблицы определяются по первым sampleRows строкам
+										sample.add(values);
+										sampleRowNumbers.add(rowNumber);
+										if (sample.size() < sampleRows) {
+												return;
+										}
+										createFromSample();
+										return;
+								}
+						}
+						accept(values, rowNumber);
+				}
+
+				void finish() throws SQLException {
+						if (columns == null) {
+								if (sample.isEmpty() && header == null) {
+										throw new IllegalArgumentException("Файл не содержит данных");
+								}
+								if (tableExists()) {
+										columns = existingColumns(header != null ? header.size() : 0);
+								} else if (options.createTable()) {
+										createFromSample();
+								} else {
+										throw new IllegalArgumentException("Таблица " + table + " не существует");
+								}
+						}
+						flush();
+				}
+
+				private void accept(List<String> values, long number) throws SQLException {
+						if (values.size() > columns.size()
+										&& values.subList(columns.size(), values.size()).stream().anyMatch(value -> !value.isBlank())) {
+								reject(number, values, "Значений больше, чем колонок: " + values.size() + " > " + columns.size());
+								return;
+						}
+						StringBuilder line = new StringBuilder();
+						for (int i = 0; i < columns.size(); i++) {
+								Column column = columns.get(i);
+								String value = i < values.size() ? values.get(i) : null;
+								if (i > 0) {
+										line.append(',');
+								}
+								if (value == null || value.isBlank()) {
+										if (column.notNull()) {
+												reject(number, values, "Пустое значение в NOT NULL колонке " + column.name());
+												return;
+										}
+										continue;
+								}
+								String normalized;
+								try {
+										normalized = normalize(column.type(), value);
+								} catch (RuntimeException e) {
+										reject(number, values, "Колонка " + column.name() + " (" + column.type() + "): недопустимое значение '" + value + "'");
+										return;
+								}
+								line.append('"').append(normalized.replace("\"", "\"\"")).append('"');
+						}
+						line.append('\n');
+						batch.append(line);
+						batchLines.add(line.toString());
+						batchRowNumbers.add(number);
+						if (batchLines.size() >= batchRows) {
+								flush();
+						}
+				}
+
+				// Пакет загружается под точкой сохранения; при ошибке базы он повторяется построчно
+				private void flush() throws SQLException {
+						if (batchLines.isEmpty()) {
+								return;
+						}
+						Savepoint savepoint = connection.setSavepoint();
+						try {
+								imported += copy(batch.toString());
+								connection.releaseSavepoint(savepoint);
+						} catch (SQLException e) {
+								connection.rollback(savepoint);
+								for (int i = 0; i < batchLines.size(); i++) {
+										Savepoint rowSavepoint = connection.setSavepoint();
+										try {
+												imported += copy(batchLines.get(i));
+												connection.releaseSavepoint(rowSavepoint);
+										} catch (SQLException rowError) {
+												connection.rollback(rowSavepoint);
+												reject(batchRowNumbers.get(i), List.of(batchLines.get(i).trim()), rowError.getMessage());
+										}
+								}
+						}
+						batch.setLength(0);
+						batchLines.clear();
+						batchRowNumbers.clear();
+				}
+
+				private long copy(String data) throws SQLException {
+						try {
+								return copyManager.copyIn(copySql, new StringReader(data));
+						} catch (IOException e) {
+								throw new SQLException("Ошибка передачи данных COPY: " + e.getMessage(), e);
+						}
+				}
+
+				private void reject(long number, List<String> values, String reason) {
+						rejected++;
+						if (rejectLimit >= 0 && rejected > rejectLimit) {
+								throw new IllegalArgumentException("Отклонено больше " + rejectLimit + " строк, импорт отменён. Последняя причина: " + reason);
+						}
+						if (rejects.size() < reportedRejects) {
+								Map<String, Object> reject = new LinkedHashMap<>();
+								reject.put("row", number);
+								reject.put("reason", reason);
+								reject.put("values", values);
+								rejects.add(reject);
+						}
+				}
+
+				private boolean tableExists() throws SQLException {
+						try (PreparedStatement statement = connection.prepareStatement(
+										"SELECT 1 FROM information_schema.tables WHERE table_schema = 'public' AND table_name = ?")) {
+								statement.setString(1, table);
+								try (ResultSet rs = statement.executeQuery()) {
+										return rs.next();
+								}
+						}
+				}
+
+				// С заголовком колонки сопоставляются по именам, без заголовка — по порядку,
+				// пропуская колонки с автоматическими значениями (serial, identity)
+				private List<Column> existingColumns(int width) throws SQLException {
+						Map<String, Column> byName = new LinkedHashMap<>();
+						List<Column> generated = new ArrayList<>();
+						try (PreparedStatement statement = connection.prepareStatement(
+										"SELECT column_name, data_type, is_nullable, column_default, is_identity FROM information_schema.columns " +
+														"WHERE table_schema = 'public' AND table_name = ? ORDER BY ordinal_position")) {
+								statement.setString(1, table);
+								try (ResultSet rs = statement.executeQuery()) {
+										while (rs.next()) {
+												String defaultValue = rs.getString(4);
+												boolean automatic = "YES".equals(rs.getString(5)) || (defaultValue != null && defaultValue.startsWith("nextval("));
+												// Колонка из списка COPY получает NULL, а не значение по умолчанию
+												Column column = new Column(rs.getString(1), rs.getString(2), "NO".equals(rs.getString(3)));
+												byName.put(column.name(), column);
+												if (automatic) {
+														generated.add(column);
+												}
+										}
+								}
+						}
+						List<Column> result = new ArrayList<>();
+						if (header != null) {
+								for (String name : header) {
+										Column column = byName.get(name.trim());
+										if (column == null) {
+												column = byName.get(columnName(name, result.size()));
+										}
+										if (column == null) {
+												throw new IllegalArgumentException("Колонка " + name + " отсутствует в таблице " + table);
+										}
+										result.add(column);
+								}
+						} else {
+								byName.values().stream().filter(column -> !generated.contains(column)).forEach(result::add);
+								if (width > 0 && width != result.size()) {
+										throw new IllegalArgumentException("В файле " + width + " колонок, в таблице " + table + " — " + result.size());
+								}
+						}
+						prepareCopy(result);
+						return result;
+				}
+
+				private void createFromSample() throws SQLException {
+						int width = header != null ? header.size() : sample.stream().mapToInt(List::size).max().orElse(0);
+						List<FieldRequest> fields = new ArrayList<>();
+						List<Column> result = new ArrayList<>();
+						Set<String> names = new HashSet<>();
+						for (int i = 0; i < width; i++) {
+								String name = columnName(header != null ? header.get(i) : null, i);
+								while (!names.add(name)) {
+										name = name + "_" + i;
+								}
+								String type = options.inferTypes() ? inferType(sample, i) : "TEXT";
+								FieldRequest field = new FieldRequest();
+								// Имя в кавычках: заголовок может совпасть с ключевым словом SQL (order, user)
+								field.setName(SqlIdentifiers.quote(name));
+								field.setType(type);
+								// Колонка id из файла становится первичным ключом вместо автоматического id SERIAL
+								field.setPrimaryKey("id".equals(name));
+								fields.add(field);
+								result.add(new Column(name, "TIMESTAMP".equals(type) ? "timestamp without time zone" : type.toLowerCase(Locale.ROOT),
+												field.isPrimaryKey()));
+						}
+						if (fields.isEmpty()) {
+								throw new IllegalArgumentException("Файл не содержит колонок");
+						}
+						TableRequest request = new TableRequest();
+						request.setTableName(table);
+						request.setFields(fields);
+						try (Statement statement = connection.createStatement()) {
+								statement.execute(tableService.generateCreateTableSQL(request));
+						}
+						created = true;
+						columns = result;
+						prepareCopy(result);
+
+						for (int i = 0; i < sample.size(); i++) {
+								accept(sample.get(i), sampleRowNumbers.get(i));
+						}
+						sample.clear();
+						sampleRowNumbers.clear();
+				}
+
+				private void prepareCopy(List<Column> result) {
+						List<String> names = new ArrayList<>();
+						for (Column column : result) {
+								names.add(SqlIdentifiers.quote(column.name()));
+						}
+						copySql = "COPY " + SqlIdentifiers.quote(table) + " (" + String.join(", ", names) + ") FROM STDIN (FORMAT csv)";
+				}
+
+				List<Map<String, String>> columnSummary() {
+						List<Map<String, String>> summary = new ArrayList<>();
+						if (columns != null) {
+								for (Column column : columns) {
+										summary.add(Map.of("name", column.name(), "type", column.type()));
+								}
+						}
+						return summary;
+				}
+		}
+
+		// Имя колонки из заголовка, пригодное для CREATE TABLE без кавычек
+		private static String columnName(String raw, int index) {
+				String name = raw == null ? "" : raw.trim().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_]+", "_");
+				name = name.replaceAll("^_+|_+$", "");
+				if (name.isEmpty()) {
+						return "col_" + (index + 1);
+				}
+				return Character.isDigit(name.charAt(0)) ? "c_" + name : name;
+		}
+
+		// Самый узкий тип, которому соответствуют все непустые значения выборки
+		static String inferType(List<List<String>> sample, int column) {
+				List<String> candidates = new ArrayList<>(List.of("BIGINT", "NUMERIC", "BOOLEAN", "DATE", "TIMESTAMP"));
+				boolean any = false;
+				for (List<String> row : sample) {
+						String value = column < row.size() ? row.get(column) : null;
+						if (value == null || value.isBlank()) {
+								continue;
+						}
+						any = true;
+						candidates.removeIf(type -> !matches(type, value));
+						if (candidates.isEmpty()) {
+								return "TEXT";
+						}
+				}
+				return any ? candidates.get(0) : "TEXT";
+		}
+
+		private static boolean matches(String type, String value) {
+				try {
+						if ("BOOLEAN".equals(type)) {
+								String lower = value.trim().toLowerCase(Locale.ROOT);
+								return lower.equals("true") || lower.equals("false");
+						}
+						normalize("TIMESTAMP".equals(type) ? "timestamp without time zone" : type.toLowerCase(Locale.ROOT), value);
+						return true;
+				} catch (RuntimeException e) {
+						return false;
+				}
+		}
+
+		// Проверка значения по типу колонки (information_schema.columns.data_type); типы, которые здесь
+		// не разбираются, проверяет сама база при COPY
+		static String normalize(String type, String value) {
+				String trimmed = value.trim();
+				switch (type) {
+						case "smallint", "integer", "bigint" -> {
+								long number = Long.parseLong(trimmed);
+								if (("smallint".equals(type) && (number < Short.MIN_VALUE || number > Short.MAX_VALUE))
+												|| ("integer".equals(type) && (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE))) {
+										throw new IllegalArgumentException("Число вне диапазона " + type);
+								}
+								return trimmed;
+						}
+						case "numeric", "real", "double precision" -> {
+								new BigDecimal(trimmed);
+								return trimmed;
+						}
+						case "boolean" -> {
+								return switch (trimmed.toLowerCase(Locale.ROOT)) {
+										case "true", "t", "yes", "y", "on", "1" -> "true";
+										case "false", "f", "no", "n", "off", "0" -> "false";
+										default -> throw new IllegalArgumentException("Не логическое значение");
+								};
+						}
+						case "date" -> {
+								return LocalDate.parse(trimmed).toString();
+						}
+						case "timestamp without time zone", "timestamp with time zone" -> {
+								String iso = trimmed.replace(' ', 'T');
+								try {
+										return LocalDateTime.parse(iso).toString();
+								} catch (DateTimeParseException e) {
+										try {
+												return OffsetDateTime.parse(iso).toString();
+										} catch (DateTimeParseException ignored) {
+												return LocalDate.parse(trimmed).toString();
+										}
+								}
+						}
+						default -> {
+								return value;
+						}
+				}
+		}
+}
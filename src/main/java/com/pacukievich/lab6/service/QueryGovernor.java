@@ -0,0 +1,275 @@
+package com.pacukievich.lab6.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Допуск тяжёлых запросов (сохранённых и произвольных) к общему пулу соединений: не больше maxConcurrent
+// одновременно, остальные ждут в справедливой очереди ограниченной длины; не больше perSession запросов
+// от одного клиента (HTTP-сессии в веб-интерфейсе, пользователя или адреса в REST API). Каждый запрос выполняется в своей транзакции с SET LOCAL statement_timeout
+// и work_mem, а число возвращаемых строк жёстко ограничено.
+@Component
+public class QueryGovernor {
+
+		private final JdbcTemplate jdbcTemplate;
+		private final Semaphore slots;
+		private final Map<String, AtomicInteger> sessionQueries = new ConcurrentHashMap<>();
+		private final int maxQueue;
+		private final long queueTimeoutMillis;
+		private final int perSession;
+		private final long defaultStatementTimeoutSeconds;
+		private final String defaultWorkMem;
+		private final int maxRows;
+		private final int cursorFetchSize;
+
+		public QueryGovernor(JdbcTemplate jdbcTemplate,
+		                     @Value("${app.query-governor.max-concurrent:4}") int maxConcurrent,
+		                     @Value("${app.query-governor.max-queue:20}") int maxQueue,
+		                     @Value("${app.query-governor.queue-timeout-seconds:30}") long queueTimeoutSeconds,
+		                     @Value("${app.query-governor.per-session:2}") int perSession,
+		                     @Value("${app.query-governor.statement-timeout-seconds:120}") long statementTimeoutSeconds,
+		                     @Value("${app.query-governor.work-mem:}") String workMem,
+		                     @Value("${app.query-governor.max-rows:10000}") int maxRows,
+		                     @Value("${app.jdbc.cursor-fetch-size:1000}") int cursorFetchSize) {
+				this.jdbcTemplate = jdbcTemplate;
+				this.slots = new Semaphore(maxConcurrent, true);
+				this.maxQueue = maxQueue;
+				this.queueTimeoutMillis = TimeUnit.SECONDS.toMillis(queueTimeoutSeconds);
+				this.perSession = perSession;
+				this.defaultStatementTimeoutSeconds = statementTimeoutSeconds;
+				this.defaultWorkMem = workMem == null || workMem.isBlank() ? null : validateWorkMem(workMem);
+				this.maxRows = maxRows;
+				this.cursorFetchSize = cursorFetchSize;
+		}
+
+		public static String validateWorkMem(String workMem) {
+				String value = workMem.trim();
+				if (!value.matches("\\d+\\s*(kB|MB|GB)?")) {
+						throw new IllegalArgumentException("Некорректное значение work_mem: " + workMem + " (пример: 64MB)");
+				}
+				return value;
+		}
+
+		public Rows query(String sessionKey, String sql, Map<String, Object> parameters, String workMem, Integer statementTimeoutSeconds) {
+				return run(sessionKey, sql, parameters, workMem, statementTimeoutSeconds, false);
+		}
+
+		// Тот же допуск и лимиты, но транзакция всегда откатывается — для EXPLAIN ANALYZE,
+		// который выполняет запрос по-настоящему
+		public Rows queryAndRollback(String sessionKey, String sql, Map<String, Object> parameters, String workMem, Integer statementTimeoutSeconds) {
+				return run(sessionKey, sql, parameters, workMem, statementTimeoutSeconds, true);
+		}
+
+		// Выгрузка результата без лимита строк: строки читаются серверным курсором порциями cursorFetchSize
+		// и сразу передаются extractor, в памяти не накапливаются. Транзакция откатывается.
+		public <T> T stream(String sessionKey, String sql, Map<String, Object> parameters, String workMem, Integer statementTimeoutSeconds,
+		                    ResultSetExtractor<T> extractor) {
+				return run(sessionKey, sql, parameters, workMem, statementTimeoutSeconds, true, extractor);
+		}
+
+		private Rows run(String sessionKey, String sql, Map<String, Object> parameters, String workMem, Integer statementTimeoutSeconds,
+		                 boolean rollback) {
+				Rows rows = run(sessionKey, sql, parameters, workMem, statementTimeoutSeconds, rollback, null);
+				return rows != null ? rows : new Rows(List.of(), false);
+		}
+
+		private <T> T run(String sessionKey, String sql, Map<String, Object> parameters, String workMem, Integer statementTimeoutSeconds,
+		                  boolean rollback, ResultSetExtractor<T> extractor) {
+				return admit(sessionKey, () -> execute(sql, parameters,
+								workMem != null && !workMem.isBlank() ? validateWorkMem(workMem) : defaultWorkMem,
+								statementTimeoutSeconds != null ? statementTimeoutSeconds : defaultStatementTimeoutSeconds,
+								rollback, extractor));
+		}
+
+		// Только допуск: фоновые задания QueryJobService сами ведут оператор и транзакцию,
+		// но занимают те же слоты и тот же лимит на сессию, что и интерактивные запросы
+		<T> T admit(String sessionKey, Supplier<T> work) {
+				acquireSession(sessionKey);
+				try {
+						acquireSlot();
+						try {
+								return work.get();
+						} finally {
+								slots.release();
+						}
+				} finally {
+						releaseSession(sessionKey);
+				}
+		}
+
+		private void acquireSession(String sessionKey) {
+				if (sessionKey == null) {
+						return;
+				}
+				AtomicInteger active = sessionQueries.computeIfAbsent(sessionKey, key -> new AtomicInteger());
+				if (active.incrementAndGet() > perSession) {
+						releaseSession(sessionKey);
+						throw new IllegalStateException("Превышено число одновременных запросов от одного клиента (" + perSession + ")");
+				}
+		}
+
+		private void releaseSession(String sessionKey) {
+				if (sessionKey == null) {
+						return;
+				}
+				sessionQueries.computeIfPresent(sessionKey, (key, active) -> active.decrementAndGet() <= 0 ? null : active);
+		}
+
+		private void acquireSlot() {
+				if (slots.getQueueLength() >= maxQueue) {
+						throw new IllegalStateException("Сервер перегружен тяжёлыми запросами, повторите позже");
+				}
+				try {
+						if (!slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+								throw new IllegalStateException("Не дождались очереди на выполнение запроса, повторите позже");
+						}
+				} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("Ожидание выполнения запроса прервано", e);
+				}
+		}
+
+		// Без extractor результат читается в Rows с ограничением maxRows
+		@SuppressWarnings("unchecked")
+		private <T> T execute(String sql, Map<String, Object> parameters, String workMem, long statementTimeoutSeconds, boolean rollback,
+		                      ResultSetExtractor<T> extractor) {
+				return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+						boolean autoCommit = connection.getAutoCommit();
+						connection.setAutoCommit(false);
+						try {
+								try (Statement settings = connection.createStatement()) {
+										if (statementTimeoutSeconds > 0) {
+												settings.execute("SET LOCAL statement_timeout = " + TimeUnit.SECONDS.toMillis(statementTimeoutSeconds));
+										}
+										if (workMem != null) {
+												settings.execute("SET LOCAL work_mem = '" + workMem + "'");
+										}
+								}
+								T rows = null;
+								try (BoundStatement statement = bind(connection, sql, parameters)) {
+										if (extractor == null) {
+												// Одна лишняя строка показывает, что результат был обрезан
+												statement.setMaxRows(maxRows + 1);
+										} else {
+												statement.setFetchSize(cursorFetchSize);
+										}
+										if (statement.execute()) {
+												try (ResultSet rs = statement.getResultSet()) {
+														rows = extractor == null ? (T) readRows(rs) : extractor.extractData(rs);
+												}
+										}
+								}
+								if (rollback) {
+										connection.rollback();
+								} else {
+										connection.commit();
+								}
+								return rows;
+						} catch (SQLException | RuntimeException e) {
+								connection.rollback();
+								throw e;
+						} finally {
+								connection.setAutoCommit(autoCommit);
+						}
+				});
+		}
+
+		// Запрос без параметров выполняется обычным Statement, как и раньше: в PreparedStatement драйвер
+		// принял бы операторы jsonb ?, ?| и ?& за места параметров
+		static BoundStatement bind(Connection connection, String sql, Map<String, Object> parameters) throws SQLException {
+				if (parameters.isEmpty()) {
+						return new BoundStatement(connection.createStatement(), sql);
+				}
+				ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+				MapSqlParameterSource parameterSource = new MapSqlParameterSource(parameters);
+				Object[] args = NamedParameterUtils.buildValueArray(parsedSql, parameterSource, null);
+				PreparedStatement statement = connection.prepareStatement(NamedParameterUtils.substituteNamedParameters(parsedSql, parameterSource));
+				try {
+						for (int i = 0; i < args.length; i++) {
+								// Тип NULL задаёт SqlParameterValue из QueryParameters.convert
+								StatementCreatorUtils.setParameterValue(statement, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+						}
+				} catch (SQLException | RuntimeException e) {
+						statement.close();
+						throw e;
+				}
+				return new BoundStatement(statement, null);
+		}
+
+		private Rows readRows(ResultSet rs) throws SQLException {
+				ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+				List<Map<String, Object>> rows = new ArrayList<>();
+				while (rs.next()) {
+						if (rows.size() == maxRows) {
+								return new Rows(rows, true);
+						}
+						rows.add(rowMapper.mapRow(rs, rows.size()));
+				}
+				return new Rows(rows, false);
+		}
+
+		public record Rows(List<Map<String, Object>> rows, boolean truncated) {
+		}
+
+		// Оператор вместе со способом его выполнить: у PreparedStatement текст уже привязан, у Statement передаётся в execute
+		static final class BoundStatement implements AutoCloseable {
+				private final Statement statement;
+				private final String sql;
+
+				private BoundStatement(Statement statement, String sql) {
+						this.statement = statement;
+						this.sql = sql;
+				}
+
+				Statement getStatement() {
+						return statement;
+				}
+
+				void setMaxRows(int maxRows) throws SQLException {
+						statement.setMaxRows(maxRows);
+				}
+
+				void setFetchSize(int fetchSize) throws SQLException {
+						statement.setFetchSize(fetchSize);
+				}
+
+				boolean execute() throws SQLException {
+						return sql == null ? ((PreparedStatement) statement).execute() : statement.execute(sql);
+				}
+
+				ResultSet getResultSet() throws SQLException {
+						return statement.getResultSet();
+				}
+
+				long getUpdateCount() throws SQLException {
+						return statement.getUpdateCount();
+				}
+
+				@Override
+				public void close() throws SQLException {
+						statement.close();
+				}
+		}
+}
@@ -0,0 +1,173 @@
+package com.pacukievich.lab6.service;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+// Состояние фонового выполнения запроса. Statement сохраняется на время выполнения,
+// чтобы отмена могла вызвать Statement.cancel() из другого потока.
+public class QueryJob {
+
+		public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+		private final String id;
+		private final String sql;
+		private final String sessionKey;
+		private final long submittedAt = System.currentTimeMillis();
+		private final List<Map<String, Object>> rows = new ArrayList<>();
+		private Status status = Status.QUEUED;
+		private List<String> columns = List.of();
+		private long rowCount;
+		private boolean truncated;
+		private String error;
+		private Long startedAt;
+		private Long finishedAt;
+		private Statement statement;
+		private Future<?> future;
+		private boolean committing;
+
+		QueryJob(String id, String sql, String sessionKey) {
+				this.id = id;
+				this.sql = sql;
+				this.sessionKey = sessionKey;
+		}
+
+		public String getId() {
+				return id;
+		}
+
+		String getSql() {
+				return sql;
+		}
+
+		String getSessionKey() {
+				return sessionKey;
+		}
+
+		synchronized void setFuture(Future<?> future) {
+				this.future = future;
+		}
+
+		synchronized boolean markRunning() {
+				if (status != Status.QUEUED) {
+						return false;
+				}
+				status = Status.RUNNING;
+				startedAt = System.currentTimeMillis();
+				return true;
+		}
+
+		// Отмена, пришедшая до привязки оператора, иначе осталась бы незамеченной: отменять ещё нечего
+		synchronized void attachStatement(Statement statement) {
+				if (status == Status.CANCELLED) {
+						throw new CancellationException("Запрос " + id + " отменён");
+				}
+				this.statement = statement;
+		}
+
+		// Решение о фиксации принимается под той же блокировкой, что и отмена: либо отмена успела
+		// и транзакция откатывается, либо транзакция фиксируется и отмена уже не принимается
+		synchronized boolean beginCommit() {
+				if (status == Status.CANCELLED) {
+						return false;
+				}
+				committing = true;
+				statement = null;
+				return true;
+		}
+
+		synchronized void setColumns(List<String> columns) {
+				this.columns = columns;
+		}
+
+		synchronized int getRetainedRows() {
+				return rows.size();
+		}
+
+		synchronized void addRow(Map<String, Object> row) {
+				rowCount++;
+				rows.add(row);
+		}
+
+		// Строка посчитана, но не сохранена: исчерпан лимит задания или общий бюджет строк
+		synchronized void skipRow() {
+				rowCount++;
+				truncated = true;
+		}
+
+		synchronized int releaseRows() {
+				int released = rows.size();
+				rows.clear();
+				return released;
+		}
+
+		synchronized void setUpdateCount(long updateCount) {
+				this.rowCount = updateCount;
+		}
+
+		synchronized void finish(Status finalStatus, String error) {
+				statement = null;
+				if (status == Status.CANCELLED) {
+						return;
+				}
+				status = finalStatus;
+				this.error = error;
+				finishedAt = System.currentTimeMillis();
+		}
+
+		synchronized boolean cancel() {
+				if (status != Status.QUEUED && status != Status.RUNNING || committing) {
+						return false;
+				}
+				status = Status.CANCELLED;
+				finishedAt = System.currentTimeMillis();
+				if (future != null) {
+						future.cancel(false);
+				}
+				if (statement != null) {
+						try {
+								statement.cancel();
+						} catch (SQLException e) {
+								System.err.println("Не удалось отменить запрос " + id + ": " + e.getMessage());
+						}
+				}
+				return true;
+		}
+
+		synchronized boolean isCancelled() {
+				return status == Status.CANCELLED;
+		}
+
+		synchronized boolean isExpired(long retentionMillis, long now) {
+				return finishedAt != null && now - finishedAt > retentionMillis;
+		}
+
+		public synchronized Map<String, Object> getStatus() {
+				Map<String, Object> result = new LinkedHashMap<>();
+				result.put("id", id);
+				result.put("status", status);
+				result.put("rowCount", rowCount);
+				result.put("truncated", truncated);
+				result.put("submittedAt", submittedAt);
+				result.put("startedAt", startedAt);
+				result.put("finishedAt", finishedAt);
+				result.put("error", error);
+				return result;
+		}
+
+		public synchronized Map<String, Object> getPage(int offset, int limit) {
+				int from = Math.min(Math.max(offset, 0), rows.size());
+				int to = Math.min(from + Math.max(limit, 0), rows.size());
+				Map<String, Object> result = getStatus();
+				result.put("columns", columns);
+				result.put("offset", from);
+				result.put("rows", new ArrayList<>(rows.subList(from, to)));
+				result.put("hasMore", to < rows.size() || status == Status.RUNNING);
+				return result;
+		}
+}
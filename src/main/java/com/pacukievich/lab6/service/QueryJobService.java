@@ -0,0 +1,217 @@
+package com.pacukievich.lab6.service;
+
+import com.pacukievich.lab6.model.SavedQuery;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Фоновое выполнение произвольных и сохранённых запросов: отдельный ограниченный пул потоков,
+// statement_timeout на каждое задание, отмена через Statement.cancel() и удаление
+// завершённых заданий по истечении срока хранения. Задания проходят допуск QueryGovernor,
+// а число хранимых заданий и суммарное число хранимых строк ограничены.
+@Service
+public class QueryJobService {
+
+		private final JdbcTemplate jdbcTemplate;
+		private final SavedQueryService savedQueryService;
+		private final QueryResultCache resultCache;
+		private final QueryGovernor governor;
+		private final Map<String, QueryJob> jobs = new ConcurrentHashMap<>();
+		private final AtomicLong retainedRows = new AtomicLong();
+		private final ThreadPoolExecutor executor;
+		private final ScheduledExecutorService cleaner;
+		private final long statementTimeoutMillis;
+		private final long retentionMillis;
+		private final int maxResultRows;
+		private final long maxTotalRows;
+		private final int maxJobs;
+		private final int fetchSize;
+
+		public QueryJobService(JdbcTemplate jdbcTemplate, SavedQueryService savedQueryService, QueryResultCache resultCache,
+		                       QueryGovernor governor,
+		                       @Value("${app.query-jobs.threads:2}") int threads,
+		                       @Value("${app.query-jobs.queue-capacity:50}") int queueCapacity,
+		                       @Value("${app.query-jobs.statement-timeout-seconds:300}") long statementTimeoutSeconds,
+		                       @Value("${app.query-jobs.retention-minutes:30}") long retentionMinutes,
+		                       @Value("${app.query-jobs.max-result-rows:100000}") int maxResultRows,
+		                       @Value("${app.query-jobs.max-total-rows:500000}") long maxTotalRows,
+		                       @Value("${app.query-jobs.max-jobs:200}") int maxJobs,
+		                       @Value("${app.jdbc.cursor-fetch-size:1000}") int fetchSize) {
+				this.jdbcTemplate = jdbcTemplate;
+				this.savedQueryService = savedQueryService;
+				this.resultCache = resultCache;
+				this.governor = governor;
+				this.statementTimeoutMillis = TimeUnit.SECONDS.toMillis(statementTimeoutSeconds);
+				this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+				this.maxResultRows = maxResultRows;
+				this.maxTotalRows = maxTotalRows;
+				this.maxJobs = maxJobs;
+				this.fetchSize = fetchSize;
+				this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+								new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("query-job-"));
+				this.cleaner = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("query-job-cleaner-"));
+				this.cleaner.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+		}
+
+		public QueryJob submitSql(String sql, String sessionKey) {
+				return submit(sql, Map.of(), sessionKey);
+		}
+
+		public QueryJob submitSavedQuery(Long queryId, Map<String, String> parameterValues, String sessionKey) {
+				SavedQuery query = savedQueryService.getQueryById(queryId);
+				Map<String, String> declared = savedQueryService.getDeclaredParameters(query);
+				return submit(query.getQueryText(), QueryParameters.convert(declared, parameterValues), sessionKey);
+		}
+
+		// При переполненной очереди или слишком большом числе хранимых заданий бросается
+		// RejectedExecutionException — задание не создаётся
+		private synchronized QueryJob submit(String sql, Map<String, Object> parameters, String sessionKey) {
+				if (jobs.size() >= maxJobs) {
+						evictExpired();
+						if (jobs.size() >= maxJobs) {
+								throw new RejectedExecutionException("Слишком много хранимых заданий (" + maxJobs + "), повторите позже");
+						}
+				}
+				QueryJob job = new QueryJob(UUID.randomUUID().toString(), sql, sessionKey);
+				jobs.put(job.getId(), job);
+				try {
+						job.setFuture(executor.submit(() -> run(job, parameters)));
+				} catch (RejectedExecutionException e) {
+						jobs.remove(job.getId());
+						throw new RejectedExecutionException("Очередь запросов переполнена, повторите позже", e);
+				}
+				return job;
+		}
+
+		public QueryJob getJob(String jobId) {
+				QueryJob job = jobs.get(jobId);
+				if (job == null) {
+						throw new IllegalArgumentException("Задание не найдено: " + jobId);
+				}
+				return job;
+		}
+
+		public boolean cancel(String jobId) {
+				return getJob(jobId).cancel();
+		}
+
+		private void run(QueryJob job, Map<String, Object> parameters) {
+				if (!job.markRunning()) {
+						return;
+				}
+				try {
+						// Задание ждёт слот QueryGovernor в своём потоке; при перегрузке оно завершается ошибкой
+						governor.admit(job.getSessionKey(), () -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+								boolean autoCommit = connection.getAutoCommit();
+								connection.setAutoCommit(false);
+								try {
+										try (Statement settings = connection.createStatement()) {
+												settings.execute("SET LOCAL statement_timeout = " + statementTimeoutMillis);
+										}
+										try (QueryGovernor.BoundStatement statement = QueryGovernor.bind(connection, job.getSql(), parameters)) {
+												job.attachStatement(statement.getStatement());
+												statement.setFetchSize(fetchSize);
+												if (statement.execute()) {
+														try (ResultSet rs = statement.getResultSet()) {
+																readRows(job, rs);
+														}
+												} else {
+														job.setUpdateCount(statement.getUpdateCount());
+												}
+										}
+										if (job.beginCommit()) {
+												connection.commit();
+										} else {
+												connection.rollback();
+										}
+								} catch (Exception e) {
+										connection.rollback();
+										throw e;
+								} finally {
+										connection.setAutoCommit(autoCommit);
+								}
+								return null;
+						}));
+						job.finish(QueryJob.Status.SUCCEEDED, null);
+				} catch (Exception e) {
+						job.finish(QueryJob.Status.FAILED, e.getMessage());
+				} finally {
+						if (!QueryResultCache.isReadOnly(job.getSql())) {
+								resultCache.invalidateAll();
+						}
+				}
+		}
+
+		private void readRows(QueryJob job, ResultSet rs) throws SQLException {
+				ResultSetMetaData metaData = rs.getMetaData();
+				List<String> columns = new ArrayList<>();
+				for (int i = 1; i <= metaData.getColumnCount(); i++) {
+						columns.add(JdbcUtils.lookupColumnName(metaData, i));
+				}
+				job.setColumns(columns);
+
+				ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+				int rowNum = 0;
+				while (!job.isCancelled() && rs.next()) {
+						if (job.getRetainedRows() < maxResultRows && reserveRow()) {
+								job.addRow(rowMapper.mapRow(rs, rowNum));
+						} else {
+								job.skipRow();
+						}
+						rowNum++;
+				}
+		}
+
+		// Общий бюджет строк всех хранимых заданий: без него каждое задание держало бы
+		// до maxResultRows строк весь срок хранения, и память не была бы ограничена
+		private boolean reserveRow() {
+				long current;
+				do {
+						current = retainedRows.get();
+						if (current >= maxTotalRows) {
+								return false;
+						}
+				} while (!retainedRows.compareAndSet(current, current + 1));
+				return true;
+		}
+
+		private void evictExpired() {
+				long now = System.currentTimeMillis();
+				jobs.values().removeIf(job -> {
+						if (!job.isExpired(retentionMillis, now)) {
+								return false;
+						}
+						retainedRows.addAndGet(-job.releaseRows());
+						return true;
+				});
+		}
+
+		@PreDestroy
+		public void shutdown() {
+				cleaner.shutdownNow();
+				executor.shutdownNow();
+				jobs.values().forEach(QueryJob::cancel);
+		}
+}
@@ -0,0 +1,129 @@
+package com.pacukievich.lab6.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Именованные параметры сохранённых запросов (:name). Объявления хранятся в SavedQuery.parameters
+// как JSON {"имя": "тип"}; значения из запроса приводятся к объявленному типу до привязки,
+// чтобы подготовленный на сервере оператор всегда получал параметры одних и тех же типов.
+final class QueryParameters {
+
+		private static final ObjectMapper MAPPER = new ObjectMapper();
+		private static final Set<String> TYPES = Set.of("text", "integer", "bigint", "numeric", "boolean", "date", "timestamp");
+		private static final Pattern IGNORED = Pattern.compile("'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"|--[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+		private static final Pattern PARAMETER = Pattern.compile("(?<![:\\w]):([A-Za-z_]\\w*)");
+
+		private QueryParameters() {
+		}
+
+		static Map<String, String> parseDeclarations(String json) {
+				if (json == null || json.isBlank()) {
+						return new LinkedHashMap<>();
+				}
+				try {
+						Map<String, String> declared = MAPPER.readValue(json, new TypeReference<LinkedHashMap<String, String>>() {});
+						for (Map.Entry<String, String> entry : declared.entrySet()) {
+								String type = entry.getValue() == null ? "" : entry.getValue().toLowerCase();
+								if (!TYPES.contains(type)) {
+										throw new IllegalArgumentException("Неизвестный тип параметра " + entry.getKey() + ": " + entry.getValue() +
+														". Допустимые типы: " + TYPES);
+								}
+								entry.setValue(type);
+						}
+						return declared;
+				} catch (JsonProcessingException e) {
+						throw new IllegalArgumentException("Параметры должны быть JSON-объектом вида {\"имя\": \"тип\"}", e);
+				}
+		}
+
+		static Set<String> findNames(String sql) {
+				Set<String> names = new LinkedHashSet<>();
+				Matcher matcher = PARAMETER.matcher(IGNORED.matcher(sql).replaceAll(" "));
+				while (matcher.find()) {
+						names.add(matcher.group(1));
+				}
+				return names;
+		}
+
+		static void validate(String sql, Map<String, String> declared) {
+				Set<String> used = findNames(sql);
+				for (String name : used) {
+						if (!declared.containsKey(name)) {
+								throw new IllegalArgumentException("Параметр :" + name + " используется в запросе, но не объявлен");
+						}
+				}
+				for (String name : declared.keySet()) {
+						if (!used.contains(name)) {
+								throw new IllegalArgumentException("Параметр " + name + " объявлен, но не используется в запросе");
+						}
+				}
+		}
+
+		static Map<String, Object> convert(Map<String, String> declared, Map<String, String> values) {
+				Map<String, Object> converted = new LinkedHashMap<>();
+				for (Map.Entry<String, String> entry : declared.entrySet()) {
+						String name = entry.getKey();
+						String value = values.get(name);
+						if (value == null || value.isEmpty()) {
+								// NULL привязывается с объявленным типом: по одному NULL драйвер тип параметра не определит
+								converted.put(name, new SqlParameterValue(sqlType(entry.getValue()), null));
+								continue;
+						}
+						try {
+								converted.put(name, switch (entry.getValue()) {
+										case "integer" -> Integer.valueOf(value.trim());
+										case "bigint" -> Long.valueOf(value.trim());
+										case "numeric" -> new BigDecimal(value.trim());
+										case "boolean" -> parseBoolean(value.trim());
+										case "date" -> LocalDate.parse(value.trim());
+										case "timestamp" -> LocalDateTime.parse(value.trim());
+										default -> value;
+								});
+						} catch (NumberFormatException | DateTimeParseException e) {
+								throw new IllegalArgumentException("Некорректное значение параметра " + name + " (" + entry.getValue() + "): " + value, e);
+						}
+				}
+				return converted;
+		}
+
+		static int sqlType(String type) {
+				return switch (type) {
+						case "integer" -> Types.INTEGER;
+						case "bigint" -> Types.BIGINT;
+						case "numeric" -> Types.NUMERIC;
+						case "boolean" -> Types.BOOLEAN;
+						case "date" -> Types.DATE;
+						case "timestamp" -> Types.TIMESTAMP;
+						default -> Types.VARCHAR;
+				};
+		}
+
+		// Стабильное текстовое представление значений для ключа кэша результатов
+		static String describe(Map<String, Object> parameters) {
+				Map<String, Object> values = new TreeMap<>();
+				parameters.forEach((name, value) -> values.put(name, value instanceof SqlParameterValue typed ? typed.getValue() : value));
+				return values.toString();
+		}
+
+		private static Boolean parseBoolean(String value) {
+				if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+						return Boolean.valueOf(value);
+				}
+				throw new NumberFormatException(value);
+		}
+}
@@ -0,0 +1,155 @@
+package com.pacukievich.lab6.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pacukievich.lab6.model.QueryPlanRun;
+import com.pacukievich.lab6.model.SavedQuery;
+import com.pacukievich.lab6.repository.QueryPlanRunRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Профилирование сохранённых запросов: EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) в откатываемой транзакции,
+// сохранение основных показателей плана в query_plan_history и сравнение с предыдущим запуском.
+@Service
+public class QueryProfilerService {
+
+		private final SavedQueryService savedQueryService;
+		private final QueryGovernor governor;
+		private final QueryPlanRunRepository planRepository;
+		private final ObjectMapper objectMapper;
+		private final double regressionRatio;
+		private final int historySize;
+
+		public QueryProfilerService(SavedQueryService savedQueryService, QueryGovernor governor,
+		                            QueryPlanRunRepository planRepository, ObjectMapper objectMapper,
+		                            @Value("${app.query-profiler.regression-ratio:1.5}") double regressionRatio,
+		                            @Value("${app.query-profiler.history-size:20}") int historySize) {
+				this.savedQueryService = savedQueryService;
+				this.governor = governor;
+				this.planRepository = planRepository;
+				this.objectMapper = objectMapper;
+				this.regressionRatio = regressionRatio;
+				this.historySize = historySize;
+		}
+
+		public QueryPlanRun profile(SavedQuery query, Map<String, String> parameterValues, String sessionKey) {
+				Map<String, String> declared = savedQueryService.getDeclaredParameters(query);
+				Map<String, Object> parameters = QueryParameters.convert(declared, parameterValues);
+
+				// Даже для изменяющих запросов ANALYZE ничего не оставит: транзакция откатывается
+				QueryGovernor.Rows rows = governor.queryAndRollback(sessionKey,
+								"EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + query.getQueryText(),
+								parameters, query.getWorkMem(), query.getStatementTimeoutSeconds());
+				if (rows.rows().isEmpty()) {
+						throw new IllegalStateException("EXPLAIN не вернул план");
+				}
+				String planJson = String.valueOf(rows.rows().get(0).values().iterator().next());
+
+				QueryPlanRun run = new QueryPlanRun();
+				run.setSavedQuery(query);
+				run.setExecutedAt(LocalDateTime.now());
+				run.setPlanJson(planJson);
+				try {
+						run.setParameterValues(parameters.isEmpty() ? null : objectMapper.writeValueAsString(parameterValues(declared, parameterValues)));
+						JsonNode explain = objectMapper.readTree(planJson).get(0);
+						JsonNode plan = explain.get("Plan");
+						run.setPlanningTimeMs(explain.path("Planning Time").asDouble());
+						run.setExecutionTimeMs(explain.path("Execution Time").asDouble());
+						// Счётчики буферов корневого узла уже включают все дочерние узлы
+						run.setSharedHitBlocks(plan.path("Shared Hit Blocks").asLong());
+						run.setSharedReadBlocks(plan.path("Shared Read Blocks").asLong());
+						run.setEstimatedRows(plan.path("Plan Rows").asDouble());
+						run.setActualRows(plan.path("Actual Rows").asDouble() * Math.max(plan.path("Actual Loops").asDouble(), 1));
+						run.setMaxEstimateError(maxEstimateError(plan));
+						StringBuilder shape = new StringBuilder();
+						appendShape(plan, shape);
+						run.setPlanShape(shape.toString());
+				} catch (JsonProcessingException e) {
+						throw new IllegalStateException("Не удалось разобрать план запроса: " + e.getOriginalMessage(), e);
+				}
+				return planRepository.save(run);
+		}
+
+		public List<QueryPlanRun> getHistory(Long queryId) {
+				return planRepository.findBySavedQueryIdOrderByExecutedAtDesc(queryId, PageRequest.of(0, historySize));
+		}
+
+		// Для каждого запуска (история от новых к старым) — список отличий от предыдущего запуска
+		public Map<Long, List<String>> findRegressions(List<QueryPlanRun> history) {
+				Map<Long, List<String>> regressions = new LinkedHashMap<>();
+				for (int i = 0; i < history.size(); i++) {
+						QueryPlanRun current = history.get(i);
+						List<String> notes = new ArrayList<>();
+						if (i + 1 < history.size()) {
+								QueryPlanRun previous = history.get(i + 1);
+								if (!current.getPlanShape().equals(previous.getPlanShape())) {
+										notes.add("изменилась структура плана");
+								}
+								if (grew(previous.getExecutionTimeMs(), current.getExecutionTimeMs())) {
+										notes.add(String.format("время выполнения выросло с %.1f до %.1f мс",
+														previous.getExecutionTimeMs(), current.getExecutionTimeMs()));
+								}
+								if (grew(previous.getSharedReadBlocks(), current.getSharedReadBlocks())) {
+										notes.add("чтений с диска стало " + current.getSharedReadBlocks() + " вместо " + previous.getSharedReadBlocks());
+								}
+								if (grew(previous.getMaxEstimateError(), current.getMaxEstimateError())) {
+										notes.add(String.format("ошибка оценки строк выросла до %.0fx — возможно, нужен ANALYZE таблиц",
+														current.getMaxEstimateError()));
+								}
+						}
+						regressions.put(current.getId(), notes);
+				}
+				return regressions;
+		}
+
+		private boolean grew(double before, double after) {
+				// Мелкие абсолютные колебания не считаются регрессией
+				return after > before * regressionRatio && after - before >= 1;
+		}
+
+		private Map<String, String> parameterValues(Map<String, String> declared, Map<String, String> values) {
+				Map<String, String> used = new LinkedHashMap<>();
+				for (String name : declared.keySet()) {
+						used.put(name, values.get(name));
+				}
+				return used;
+		}
+
+		private double maxEstimateError(JsonNode node) {
+				double estimated = Math.max(node.path("Plan Rows").asDouble(), 1);
+				double actual = Math.max(node.path("Actual Rows").asDouble(), 1);
+				double error = Math.max(estimated, actual) / Math.min(estimated, actual);
+				for (JsonNode child : node.path("Plans")) {
+						error = Math.max(error, maxEstimateError(child));
+				}
+				return error;
+		}
+
+		private void appendShape(JsonNode node, StringBuilder shape) {
+				shape.append(node.path("Node Type").asText());
+				if (node.has("Index Name")) {
+						shape.append('[').append(node.get("Index Name").asText()).append(']');
+				} else if (node.has("Relation Name")) {
+						shape.append('[').append(node.get("Relation Name").asText()).append(']');
+				}
+				JsonNode children = node.path("Plans");
+				if (children.size() > 0) {
+						shape.append('(');
+						for (int i = 0; i < children.size(); i++) {
+								if (i > 0) {
+										shape.append(", ");
+								}
+								appendShape(children.get(i), shape);
+						}
+						shape.append(')');
+				}
+		}
+}
@@ -0,0 +1,157 @@
+package com.pacukievich.lab6.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Кэш результатов сохранённых запросов с TTL и LRU-вытеснением по числу записей и по суммарному числу ячеек.
+// Запись сбрасывается, когда TableService меняет любую таблицу, имя которой встречается в тексте запроса.
+@Component
+public class QueryResultCache {
+
+		private static final Pattern IDENTIFIER = Pattern.compile("\"((?:[^\"]|\"\")+)\"|([A-Za-z_][A-Za-z0-9_$]*)");
+		private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+		private static final Set<String> WRITE_KEYWORDS = Set.of(
+						"insert", "update", "delete", "merge", "truncate", "drop", "alter", "create", "grant", "revoke", "copy", "call",
+						"into", "nextval", "setval");
+
+		private final long ttlMillis;
+		private final int maxEntries;
+		private final long maxCells;
+		private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+		private long totalCells;
+		private long generation;
+
+		public QueryResultCache(@Value("${app.query-cache.ttl-seconds:60}") long ttlSeconds,
+		                        @Value("${app.query-cache.max-entries:200}") int maxEntries,
+		                        @Value("${app.query-cache.max-cells:2000000}") long maxCells) {
+				this.ttlMillis = ttlSeconds * 1000;
+				this.maxEntries = maxEntries;
+				this.maxCells = maxCells;
+		}
+
+		public static String normalize(String sql) {
+				String normalized = sql.trim().replaceAll("\\s+", " ");
+				while (normalized.endsWith(";")) {
+						normalized = normalized.substring(0, normalized.length() - 1).trim();
+				}
+				return normalized;
+		}
+
+		// Кэшируются только чтения: запрос без ключевых слов, изменяющих данные или схему
+		public static boolean isReadOnly(String sql) {
+				Set<String> identifiers = identifiers(sql);
+				return Collections.disjoint(identifiers, WRITE_KEYWORDS)
+								&& (identifiers.contains("select") || identifiers.contains("values") || identifiers.contains("table"));
+		}
+
+		public synchronized Entry get(Long queryId, String normalizedSql) {
+				Key key = new Key(queryId, normalizedSql);
+				Entry entry = entries.get(key);
+				if (entry == null) {
+						return null;
+				}
+				if (System.currentTimeMillis() - entry.createdAt() > ttlMillis) {
+						remove(key);
+						return null;
+				}
+				return entry;
+		}
+
+		public synchronized long currentGeneration() {
+				return generation;
+		}
+
+		// startGeneration снимается до выполнения запроса: если за это время была инвалидация,
+		// результат мог устареть ещё до попадания в кэш и не сохраняется
+		public synchronized Entry put(Long queryId, String normalizedSql, List<Map<String, Object>> rows, long startGeneration) {
+				long cells = rows.isEmpty() ? 1 : (long) rows.size() * rows.get(0).size();
+				Entry entry = new Entry(Collections.unmodifiableList(rows), System.currentTimeMillis(), identifiers(normalizedSql), cells);
+				if (cells > maxCells || startGeneration != generation) {
+						return entry;
+				}
+				Key key = new Key(queryId, normalizedSql);
+				remove(key);
+				entries.put(key, entry);
+				totalCells += cells;
+
+				Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+				while ((entries.size() > maxEntries || totalCells > maxCells) && eldest.hasNext()) {
+						totalCells -= eldest.next().getValue().cells();
+						eldest.remove();
+				}
+				return entry;
+		}
+
+		// Внутри транзакции запись повторно сбрасывается после коммита: иначе между инвалидацией
+		// и коммитом в кэш может попасть результат, прочитанный до изменений
+		public void invalidateTable(String tableName) {
+				invalidateEntries(tableName);
+				if (TransactionSynchronizationManager.isSynchronizationActive()) {
+						TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+								@Override
+								public void afterCommit() {
+										invalidateEntries(tableName);
+								}
+						});
+				}
+		}
+
+		private synchronized void invalidateEntries(String tableName) {
+				generation++;
+				String table = tableName.toLowerCase();
+				Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+				while (iterator.hasNext()) {
+						Entry entry = iterator.next().getValue();
+						if (entry.identifiers().contains(tableName) || entry.identifiers().contains(table)) {
+								totalCells -= entry.cells();
+								iterator.remove();
+						}
+				}
+		}
+
+		public synchronized void invalidateAll() {
+				generation++;
+				entries.clear();
+				totalCells = 0;
+		}
+
+		private void remove(Key key) {
+				Entry removed = entries.remove(key);
+				if (removed != null) {
+						totalCells -= removed.cells();
+				}
+		}
+
+		// Имена в кавычках берутся как есть, остальные приводятся к нижнему регистру, как это делает PostgreSQL.
+		// Лишние совпадения (ключевые слова, имена колонок) приводят лишь к более частой инвалидации.
+		private static Set<String> identifiers(String sql) {
+				Set<String> identifiers = new HashSet<>();
+				Matcher matcher = IDENTIFIER.matcher(STRING_LITERAL.matcher(sql).replaceAll("''"));
+				while (matcher.find()) {
+						if (matcher.group(1) != null) {
+								identifiers.add(matcher.group(1).replace("\"\"", "\""));
+						} else {
+								identifiers.add(matcher.group(2).toLowerCase());
+						}
+				}
+				return identifiers;
+		}
+
+		private record Key(Long queryId, String sql) {
+		}
+
+		public record Entry(List<Map<String, Object>> rows, long createdAt, Set<String> identifiers, long cells) {
+		}
+}
@@ -0,0 +1,105 @@
+package com.pacukievich.lab6.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Ход потокового восстановления: сколько байт загрузки прочитано (до распаковки), текущий этап,
+// число загруженных строк. Поля читаются из другого потока — обработчиком запроса статуса.
+public class RestoreProgress {
+
+		private final long totalBytes;
+		private final LocalDateTime startedAt = LocalDateTime.now();
+		private volatile long bytesRead;
+		private volatile long rows;
+		private volatile String format;
+		private volatile String phase = "detecting";
+		private volatile LocalDateTime finishedAt;
+		private volatile String error;
+
+		public RestoreProgress(long totalBytes) {
+				this.totalBytes = totalBytes;
+		}
+
+		// Считает байты, прочитанные из исходного потока
+		public InputStream track(InputStream in) {
+				return new FilterInputStream(in) {
+						@Override
+						public int read() throws IOException {
+								int b = super.read();
+								if (b >= 0) {
+										bytesRead++;
+								}
+								return b;
+						}
+
+						@Override
+						public int read(byte[] buffer, int offset, int length) throws IOException {
+								int count = super.read(buffer, offset, length);
+								if (count > 0) {
+										bytesRead += count;
+								}
+								return count;
+						}
+
+						@Override
+						public long skip(long n) throws IOException {
+								long skipped = super.skip(n);
+								bytesRead += skipped;
+								return skipped;
+						}
+				};
+		}
+
+		public long getBytesRead() {
+				return bytesRead;
+		}
+
+		public long getRows() {
+				return rows;
+		}
+
+		public void setRows(long rows) {
+				this.rows = rows;
+		}
+
+		public void setFormat(String format) {
+				this.format = format;
+		}
+
+		public void setPhase(String phase) {
+				this.phase = phase;
+		}
+
+		public boolean isFinished() {
+				return finishedAt != null;
+		}
+
+		public void finish(String error) {
+				this.error = error;
+				this.phase = error == null ? "done" : "failed";
+				this.finishedAt = LocalDateTime.now();
+		}
+
+		public Map<String, Object> toMap() {
+				Map<String, Object> status = new LinkedHashMap<>();
+				status.put("format", format);
+				status.put("phase", phase);
+				status.put("bytesRead", bytesRead);
+				status.put("totalBytes", totalBytes >= 0 ? totalBytes : null);
+				status.put("percent", totalBytes > 0 ? Math.min(100.0, bytesRead * 100.0 / totalBytes) : null);
+				status.put("rows", rows);
+				status.put("startedAt", startedAt.toString());
+				LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+				long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+				status.put("elapsedMillis", millis);
+				status.put("bytesPerSecond", bytesRead * 1000 / millis);
+				status.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+				status.put("error", error);
+				return status;
+		}
+}
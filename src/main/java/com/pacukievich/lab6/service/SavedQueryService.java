@@ -1,8 +1,9 @@
 package com.pacukievich.lab6.service;
 
+import com.pacukievich.lab6.model.QueryResult;
 import com.pacukievich.lab6.model.SavedQuery;
 import com.pacukievich.lab6.repository.SavedQueryRepository;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -11,12 +12,14 @@ import java.util.Map;
 @Service
 public class SavedQueryService {
 
-		private final JdbcTemplate jdbcTemplate;
 		private final SavedQueryRepository repository;
+		private final QueryResultCache resultCache;
+		private final QueryGovernor governor;
 
-		public SavedQueryService(JdbcTemplate jdbcTemplate, SavedQueryRepository repository) {
-				this.jdbcTemplate = jdbcTemplate;
+		public SavedQueryService(SavedQueryRepository repository, QueryResultCache resultCache, QueryGovernor governor) {
 				this.repository = repository;
+				this.resultCache = resultCache;
+				this.governor = governor;
 		}
 
 		public List<SavedQuery> getAllQueries() {
@@ -27,7 +30,84 @@ public class SavedQueryService {
 				return repository.findById(id).orElseThrow();
 		}
 
-		public List<Map<String, Object>> executeSql(String sql) {
-				return jdbcTemplate.queryForList(sql);
+		// Все пользовательские запросы проходят через QueryGovernor: ограничение числа одновременных
+		// тяжёлых запросов, лимит на сессию, statement_timeout/work_mem и предел числа строк
+		public QueryResult executeSql(String sql, String sessionKey, String workMem, Integer statementTimeoutSeconds) {
+				QueryGovernor.Rows rows = governor.query(sessionKey, sql, Map.of(), workMem, statementTimeoutSeconds);
+				return new QueryResult(rows.rows(), "BYPASS", 0, rows.truncated());
 		}
-}
\ No newline at end of file
+
+		public SavedQuery saveQuery(String name, String queryText, String parameters, String workMem, Integer statementTimeoutSeconds) {
+				QueryParameters.validate(queryText, QueryParameters.parseDeclarations(parameters));
+				if (statementTimeoutSeconds != null && statementTimeoutSeconds < 0) {
+						throw new IllegalArgumentException("Таймаут запроса не может быть отрицательным");
+				}
+				SavedQuery savedQuery = new SavedQuery();
+				savedQuery.setName(name);
+				savedQuery.setQueryText(queryText);
+				savedQuery.setParameters(parameters == null || parameters.isBlank() ? null : parameters);
+				savedQuery.setWorkMem(workMem == null || workMem.isBlank() ? null : QueryGovernor.validateWorkMem(workMem));
+				savedQuery.setStatementTimeoutSeconds(statementTimeoutSeconds);
+				return repository.save(savedQuery);
+		}
+
+		public Map<String, String> getDeclaredParameters(SavedQuery query) {
+				return QueryParameters.parseDeclarations(query.getParameters());
+		}
+
+		// Текст SQL с параметрами не меняется от вызова к вызову, поэтому драйвер берёт оператор из кэша
+		// соединения и после prepareThreshold выполнений использует подготовленный на сервере оператор
+		// без повторного разбора и планирования. Обрезанный по лимиту строк результат не кэшируется.
+		public QueryResult executeSavedQuery(SavedQuery query, Map<String, String> parameterValues, String sessionKey) {
+				Map<String, String> declared = getDeclaredParameters(query);
+				Map<String, Object> parameters = QueryParameters.convert(declared, parameterValues);
+
+				String sql = QueryResultCache.normalize(query.getQueryText());
+				if (!QueryResultCache.isReadOnly(sql)) {
+						QueryGovernor.Rows rows = runSavedQuery(query, parameters, sessionKey);
+						resultCache.invalidateAll();
+						return new QueryResult(rows.rows(), "BYPASS", 0, rows.truncated());
+				}
+
+				String cacheKey = parameters.isEmpty() ? sql : sql + " /* " + QueryParameters.describe(parameters) + " */";
+				QueryResultCache.Entry cached = resultCache.get(query.getId(), cacheKey);
+				if (cached != null) {
+						return new QueryResult(cached.rows(), "HIT", System.currentTimeMillis() - cached.createdAt());
+				}
+				long generation = resultCache.currentGeneration();
+				QueryGovernor.Rows rows = runSavedQuery(query, parameters, sessionKey);
+				if (rows.truncated()) {
+						return new QueryResult(rows.rows(), "BYPASS", 0, true);
+				}
+				QueryResultCache.Entry entry = resultCache.put(query.getId(), cacheKey, rows.rows(), generation);
+				return new QueryResult(entry.rows(), "MISS", 0);
+		}
+
+		// Выгрузка идёт мимо кэша и без лимита строк, поэтому разрешена только для запросов на чтение
+		public <T> T streamSavedQuery(SavedQuery query, Map<String, String> parameterValues, String sessionKey,
+		                              ResultSetExtractor<T> extractor) {
+				if (!QueryResultCache.isReadOnly(QueryResultCache.normalize(query.getQueryText()))) {
+						throw new IllegalArgumentException("Выгружать можно только запросы на чтение");
+				}
+				Map<String, Object> parameters = QueryParameters.convert(getDeclaredParameters(query), parameterValues);
+				T result = governor.stream(sessionKey, query.getQueryText(), parameters, query.getWorkMem(),
+								query.getStatementTimeoutSeconds(), extractor);
+				if (result == null) {
+						throw new IllegalArgumentException("Запрос не вернул набор строк");
+				}
+				return result;
+		}
+
+		private QueryGovernor.Rows runSavedQuery(SavedQuery query, Map<String, Object> parameters, String sessionKey) {
+				return governor.query(sessionKey, query.getQueryText(), parameters, query.getWorkMem(), query.getStatementTimeoutSeconds());
+		}
+
+		// Произвольный запрос не кэшируется, но если он мог изменить данные, кэш сбрасывается целиком
+		public QueryResult executeTempQuery(String sql, String sessionKey, String workMem, Integer statementTimeoutSeconds) {
+				QueryResult result = executeSql(sql, sessionKey, workMem, statementTimeoutSeconds);
+				if (!QueryResultCache.isReadOnly(sql)) {
+						resultCache.invalidateAll();
+				}
+				return result;
+		}
+}
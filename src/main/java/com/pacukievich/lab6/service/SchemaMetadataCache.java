@@ -0,0 +1,97 @@
+package com.pacukievich.lab6.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Кэш типов колонок (таблица, колонка) -> SQL-тип. Колонки таблицы загружаются одним запросом
+// к information_schema, таблицы вытесняются по LRU. TableService сбрасывает запись при любом DDL.
+@Component
+public class SchemaMetadataCache {
+
+		private final JdbcTemplate jdbcTemplate;
+		private final Map<String, Map<String, String>> columnTypes;
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+		private final int maxTables;
+
+		public SchemaMetadataCache(JdbcTemplate jdbcTemplate,
+		                           @Value("${app.schema-cache.max-tables:256}") int maxTables) {
+				this.jdbcTemplate = jdbcTemplate;
+				this.maxTables = maxTables;
+				this.columnTypes = new LinkedHashMap<>(16, 0.75f, true) {
+						@Override
+						protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+								if (size() > SchemaMetadataCache.this.maxTables) {
+										evictions.incrementAndGet();
+										return true;
+								}
+								return false;
+						}
+				};
+		}
+
+		public String getColumnType(String tableName, String columnName) {
+				Map<String, String> types;
+				synchronized (columnTypes) {
+						types = columnTypes.get(tableName);
+				}
+				if (types != null && types.containsKey(columnName)) {
+						hits.incrementAndGet();
+						return types.get(columnName);
+				}
+
+				// Таблицы нет в кэше или колонка появилась в обход приложения — перечитываем таблицу целиком
+				misses.incrementAndGet();
+				types = loadColumnTypes(tableName);
+				synchronized (columnTypes) {
+						columnTypes.put(tableName, types);
+				}
+				return types.get(columnName);
+		}
+
+		public void invalidate(String tableName) {
+				synchronized (columnTypes) {
+						columnTypes.remove(tableName);
+				}
+		}
+
+		public void invalidateAll() {
+				synchronized (columnTypes) {
+						columnTypes.clear();
+				}
+		}
+
+		public Map<String, Object> getStats() {
+				Map<String, Object> stats = new LinkedHashMap<>();
+				synchronized (columnTypes) {
+						stats.put("tables", columnTypes.size());
+				}
+				stats.put("maxTables", maxTables);
+				stats.put("hits", hits.get());
+				stats.put("misses", misses.get());
+				stats.put("evictions", evictions.get());
+				return stats;
+		}
+
+		private Map<String, String> loadColumnTypes(String tableName) {
+				String sql = "SELECT column_name, UPPER(data_type) AS data_type FROM information_schema.columns " +
+								"WHERE table_schema = 'public' AND table_name = ?";
+				Map<String, String> types = new HashMap<>();
+				jdbcTemplate.query(sql, rs -> {
+						String dataType = rs.getString("data_type");
+						// Пример преобразования типов:
+						if (dataType.contains("CHARACTER VARYING")) {
+								dataType = "VARCHAR";
+						}
+						types.put(rs.getString("column_name"), dataType);
+				}, tableName);
+				return types;
+		}
+}
@@ -0,0 +1,56 @@
+package com.pacukievich.lab6.service;
+
+import com.pacukievich.lab6.model.TableRequest;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+// Таймеры на все публичные методы TableService, SavedQueryService и DumpService.
+// Имя таблицы из параметра tableName (или из TableRequest) становится тегом table.
+@Aspect
+@Component
+public class ServiceMetricsAspect {
+
+		private final AppMetrics metrics;
+
+		public ServiceMetricsAspect(AppMetrics metrics) {
+				this.metrics = metrics;
+		}
+
+		@Around("execution(public * com.pacukievich.lab6.service.TableService.*(..))"
+						+ " || execution(public * com.pacukievich.lab6.service.SavedQueryService.*(..))"
+						+ " || execution(public * com.pacukievich.lab6.service.DumpService.*(..))"
+						+ " || execution(public * com.pacukievich.lab6.service.ImportService.*(..))")
+		public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+				MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+				String tableName = findTableName(signature.getParameterNames(), joinPoint.getArgs());
+				String outcome = "success";
+				long start = System.nanoTime();
+				try {
+						return joinPoint.proceed();
+				} catch (Throwable e) {
+						outcome = "error";
+						throw e;
+				} finally {
+						metrics.recordServiceCall(signature.getDeclaringType().getSimpleName(), signature.getName(),
+										tableName, outcome, System.nanoTime() - start);
+				}
+		}
+
+		private String findTableName(String[] parameterNames, Object[] args) {
+				if (parameterNames == null) {
+						return null;
+				}
+				for (int i = 0; i < parameterNames.length; i++) {
+						if ("tableName".equals(parameterNames[i]) && args[i] instanceof String tableName) {
+								return tableName;
+						}
+						if (args[i] instanceof TableRequest request) {
+								return request.getTableName();
+						}
+				}
+				return null;
+		}
+}
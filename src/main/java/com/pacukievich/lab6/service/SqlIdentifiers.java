@@ -0,0 +1,13 @@
+package com.pacukievich.lab6.service;
+
+// Экранирование имён таблиц, колонок и индексов для SQL, который собирается строкой: имена приходят
+// из URL и тела запроса, а кавычка внутри имени иначе закрыла бы идентификатор
+final class SqlIdentifiers {
+
+		private SqlIdentifiers() {
+		}
+
+		static String quote(String identifier) {
+				return "\"" + identifier.replace("\"", "\"\"") + "\"";
+		}
+}
@@ -1,38 +1,74 @@
 package com.pacukievich.lab6.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pacukievich.lab6.model.FieldRequest;
+import com.pacukievich.lab6.model.TablePage;
 import com.pacukievich.lab6.model.TableRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class TableService {
+		private static final String PAGE_KEY_PREFIX = "__page_key_";
+		private static final ObjectMapper PAGE_TOKEN_MAPPER = new ObjectMapper();
+
 		private final JdbcTemplate jdbcTemplate;
 		private final DataSource dataSource;
-
-		public TableService(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+		private final SchemaMetadataCache schemaCache;
+		private final QueryResultCache queryResultCache;
+		private final int defaultPageSize;
+		private final int maxPageSize;
+		private final int cursorFetchSize;
+		private final String fullTextConfig;
+
+		public TableService(JdbcTemplate jdbcTemplate, DataSource dataSource, SchemaMetadataCache schemaCache,
+		                    QueryResultCache queryResultCache,
+		                    @Value("${app.table.page-size:100}") int defaultPageSize,
+		                    @Value("${app.table.max-page-size:1000}") int maxPageSize,
+		                    @Value("${app.jdbc.cursor-fetch-size:1000}") int cursorFetchSize,
+		                    @Value("${app.search.text-config:simple}") String fullTextConfig) {
 				this.jdbcTemplate = jdbcTemplate;
 				this.dataSource = dataSource;
+				this.schemaCache = schemaCache;
+				this.queryResultCache = queryResultCache;
+				this.defaultPageSize = defaultPageSize;
+				this.maxPageSize = maxPageSize;
+				this.cursorFetchSize = cursorFetchSize;
+				if (!fullTextConfig.matches("[a-z_]+")) {
+						throw new IllegalArgumentException("Некорректная конфигурация полнотекстового поиска: " + fullTextConfig);
+				}
+				this.fullTextConfig = fullTextConfig;
 		}
 
 		public void createTable(TableRequest request) {
 				String sql = generateCreateTableSQL(request);
 				jdbcTemplate.execute(sql);
+				schemaCache.invalidate(request.getTableName());
+				schemaCache.invalidate(request.getTableName().toLowerCase());
 		}
 
 
 
-		private String generateCreateTableSQL(TableRequest request) {
+		String generateCreateTableSQL(TableRequest request) {
 				StringBuilder sql = new StringBuilder("CREATE TABLE " + request.getTableName() + " (");
 
 				boolean hasPrimaryKey = false;
@@ -80,6 +116,8 @@ public class TableService {
 		public void deleteTable(String tableName) {
 				String sql = "DROP TABLE IF EXISTS \"" + tableName + "\" CASCADE";
 				jdbcTemplate.execute(sql);
+				schemaCache.invalidate(tableName);
+				queryResultCache.invalidateTable(tableName);
 		}
 
 
@@ -89,8 +127,167 @@ public class TableService {
 				return jdbcTemplate.queryForList(query);
 		}
 
+		// Постраничное чтение по первичному ключу (keyset): WHERE (pk) > (последний ключ) ORDER BY pk LIMIT n.
+		// Для таблиц без первичного ключа используется ctid — страницы могут сместиться при конкурентных UPDATE.
+		public TablePage getTablePage(String tableName, String pageToken, Integer pageSize) {
+				return readPage(tableName, null, List.of(), pageToken, pageSize);
+		}
+
+		private TablePage readPage(String tableName, String filter, List<Object> filterParams, String pageToken, Integer pageSize) {
+				int limit = resolvePageSize(pageSize);
+				List<KeyColumn> primaryKeys = getPrimaryKeyColumns(tableName);
+
+				List<String> keyExpressions = new ArrayList<>();
+				List<String> keyTypes = new ArrayList<>();
+				if (primaryKeys.isEmpty()) {
+						keyExpressions.add("ctid");
+						keyTypes.add("TID");
+				} else {
+						for (KeyColumn key : primaryKeys) {
+								keyExpressions.add(SqlIdentifiers.quote(key.name()));
+								keyTypes.add(key.type());
+						}
+				}
+
+				List<String> selectList = new ArrayList<>();
+				for (int i = 0; i < keyExpressions.size(); i++) {
+						selectList.add(keyExpressions.get(i) + "::text AS \"" + PAGE_KEY_PREFIX + i + "\"");
+				}
+				selectList.add("*");
+
+				StringBuilder sql = new StringBuilder("SELECT " + String.join(", ", selectList) + " FROM " + SqlIdentifiers.quote(tableName));
+				List<String> conditions = new ArrayList<>();
+				List<Object> params = new ArrayList<>();
+				if (filter != null) {
+						conditions.add(filter);
+						params.addAll(filterParams);
+				}
+
+				List<String> lastKey = decodePageToken(pageToken);
+				if (lastKey != null) {
+						if (lastKey.size() != keyExpressions.size()) {
+								throw new IllegalArgumentException("Некорректный токен страницы");
+						}
+						List<String> placeholders = new ArrayList<>();
+						for (int i = 0; i < keyTypes.size(); i++) {
+								placeholders.add("CAST(? AS " + keyTypes.get(i) + ")");
+								params.add(lastKey.get(i));
+						}
+						conditions.add("(" + String.join(", ", keyExpressions) + ") > (" + String.join(", ", placeholders) + ")");
+				}
+				if (!conditions.isEmpty()) {
+						sql.append(" WHERE ").append(String.join(" AND ", conditions));
+				}
+
+				// Запрашиваем на одну строку больше, чтобы понять, есть ли следующая страница
+				sql.append(" ORDER BY ").append(String.join(", ", keyExpressions)).append(" LIMIT ?");
+				params.add(limit + 1);
+
+				int keyCount = keyExpressions.size();
+				return jdbcTemplate.query(sql.toString(), rs -> {
+						ResultSetMetaData metaData = rs.getMetaData();
+						List<String> columns = new ArrayList<>();
+						for (int i = keyCount + 1; i <= metaData.getColumnCount(); i++) {
+								columns.add(metaData.getColumnLabel(i));
+						}
+
+						ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+						List<Map<String, Object>> rows = new ArrayList<>();
+						List<String> pageKey = null;
+						int rowNum = 0;
+						boolean hasMore = false;
+						while (rs.next()) {
+								if (rowNum == limit) {
+										hasMore = true;
+										break;
+								}
+								Map<String, Object> row = rowMapper.mapRow(rs, rowNum++);
+								pageKey = new ArrayList<>();
+								for (int i = 0; i < keyCount; i++) {
+										pageKey.add((String) row.remove(PAGE_KEY_PREFIX + i));
+								}
+								rows.add(row);
+						}
+
+						TablePage result = new TablePage();
+						result.setColumns(columns);
+						result.setRows(rows);
+						result.setPageSize(limit);
+						result.setNextPageToken(hasMore ? encodePageToken(pageKey) : null);
+						return result;
+				}, params.toArray());
+		}
+
+		// Чтение через серверный курсор: драйвер PostgreSQL держит курсор открытым только при выключенном
+		// autocommit и заданном fetch size, иначе весь результат загружается в память сразу.
+		public <T> T queryWithCursor(String sql, ResultSetExtractor<T> extractor, Object... params) {
+				return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+						boolean autoCommit = connection.getAutoCommit();
+						connection.setAutoCommit(false);
+						try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+								statement.setFetchSize(cursorFetchSize);
+								for (int i = 0; i < params.length; i++) {
+										statement.setObject(i + 1, params[i]);
+								}
+								T result;
+								try (ResultSet rs = statement.executeQuery()) {
+										result = extractor.extractData(rs);
+								}
+								connection.commit();
+								return result;
+						} catch (SQLException | RuntimeException e) {
+								connection.rollback();
+								throw e;
+						} finally {
+								connection.setAutoCommit(autoCommit);
+						}
+				});
+		}
+
+		private int resolvePageSize(Integer pageSize) {
+				if (pageSize == null || pageSize <= 0) {
+						return defaultPageSize;
+				}
+				return Math.min(pageSize, maxPageSize);
+		}
+
+		// Тип ключа — полный, с длиной и модификатором (character(2), а не character) и с именем для
+		// перечислений и массивов: ключ из токена страницы приводится к нему без обрезки
+		private List<KeyColumn> getPrimaryKeyColumns(String tableName) {
+				String sql = "SELECT a.attname, format_type(a.atttypid, a.atttypmod) FROM pg_index i " +
+								"JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = ANY(i.indkey) " +
+								"WHERE i.indrelid = to_regclass(quote_ident(?)) AND i.indisprimary " +
+								"ORDER BY array_position(i.indkey::int2[], a.attnum)";
+				return jdbcTemplate.query(sql, (rs, rowNum) -> new KeyColumn(rs.getString(1), rs.getString(2)), tableName);
+		}
+
+		private record KeyColumn(String name, String type) {
+		}
+
+		private String encodePageToken(List<String> key) {
+				try {
+						byte[] json = PAGE_TOKEN_MAPPER.writeValueAsBytes(key);
+						return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+				} catch (JsonProcessingException e) {
+						throw new IllegalStateException("Не удалось сформировать токен страницы", e);
+				}
+		}
+
+		private List<String> decodePageToken(String pageToken) {
+				if (pageToken == null || pageToken.isBlank()) {
+						return null;
+				}
+				try {
+						byte[] json = Base64.getUrlDecoder().decode(pageToken);
+						return PAGE_TOKEN_MAPPER.readValue(json, new TypeReference<List<String>>() {});
+				} catch (IllegalArgumentException | IOException e) {
+						throw new IllegalArgumentException("Некорректный токен страницы", e);
+				}
+		}
+
 
 		public void addColumns(String tableName, List<String> fieldsName, List<String> fieldsType, List<String> fieldsNotNull) {
+				boolean fullTextIndexed = hasFullTextIndex(tableName);
 				for (int i = 0; i < fieldsName.size(); i++) {
 						String columnName = fieldsName.get(i);
 						String columnType = fieldsType.get(i);
@@ -100,12 +297,24 @@ public class TableService {
 								sql += " NOT NULL";
 						}
 						jdbcTemplate.execute(sql);
+						schemaCache.invalidate(tableName);
+						queryResultCache.invalidateTable(tableName);
+				}
+				if (fullTextIndexed) {
+						rebuildFullTextIndex(tableName);
 				}
 		}
 
 		public void deleteColumn(String tableName, String columnName) {
+				boolean fullTextIndexed = hasFullTextIndex(tableName);
 				String sql = "ALTER TABLE \"" + tableName + "\" DROP COLUMN \"" + columnName + "\" CASCADE";
 				jdbcTemplate.execute(sql);
+				schemaCache.invalidate(tableName);
+				queryResultCache.invalidateTable(tableName);
+				// DROP COLUMN ... CASCADE удаляет и полнотекстовый индекс, если колонка в него входила
+				if (fullTextIndexed) {
+						rebuildFullTextIndex(tableName);
+				}
 		}
 
 		public void deleteRow(String tableName, String id) {
@@ -113,6 +322,7 @@ public class TableService {
 						Long longId = Long.parseLong(id);
 						String sql = "DELETE FROM \"" + tableName + "\" WHERE \"id\" = ?";
 						jdbcTemplate.update(sql, longId);
+						queryResultCache.invalidateTable(tableName);
 				} catch (NumberFormatException e) {
 						throw new IllegalArgumentException("Некорректный формат ID: " + id, e);
 				}
@@ -146,6 +356,7 @@ public class TableService {
 						System.out.println("📦 Параметры для updateRow: " + params);
 
 						int rowsUpdated = jdbcTemplate.update(sql, params.toArray());
+						queryResultCache.invalidateTable(tableName);
 						if (rowsUpdated > 0) {
 								System.out.println("Строка обновлена успешно.");
 						} else {
@@ -185,6 +396,67 @@ public class TableService {
 				System.out.println("📦 Параметры для insertRow: " + values);
 
 				jdbcTemplate.update(sql, values.toArray());
+				queryResultCache.invalidateTable(tableName);
+		}
+
+		// Пакетное сохранение изменений из редактора: одна команда INSERT ... ON CONFLICT ("id") DO UPDATE
+		// на каждый набор колонок, выполняемая через batchUpdate в одной транзакции.
+		@Transactional
+		public int upsertRows(String tableName, List<Map<String, String>> rows) {
+				Map<List<String>, List<Object[]>> batches = new LinkedHashMap<>();
+				for (Map<String, String> row : rows) {
+						if (!row.containsKey("id")) {
+								continue;
+						}
+						String id = row.get("id");
+						try {
+								Long.parseLong(id == null ? "" : id.trim());
+						} catch (NumberFormatException e) {
+								throw new IllegalArgumentException("Некорректный формат ID: " + id, e);
+						}
+
+						List<String> columns = new ArrayList<>();
+						List<Object> values = new ArrayList<>();
+						columns.add("id");
+						values.add(id.trim());
+						for (Map.Entry<String, String> entry : row.entrySet()) {
+								if ("id".equals(entry.getKey())) {
+										continue;
+								}
+								columns.add(entry.getKey());
+								values.add((entry.getValue() == null || entry.getValue().trim().isEmpty()) ? null : entry.getValue());
+						}
+						batches.computeIfAbsent(columns, key -> new ArrayList<>()).add(values.toArray());
+				}
+
+				int saved = 0;
+				for (Map.Entry<List<String>, List<Object[]>> batch : batches.entrySet()) {
+						String sql = generateUpsertSQL(tableName, batch.getKey());
+						saved += jdbcTemplate.batchUpdate(sql, batch.getValue()).length;
+				}
+				queryResultCache.invalidateTable(tableName);
+				return saved;
+		}
+
+		private String generateUpsertSQL(String tableName, List<String> columns) {
+				List<String> quotedColumns = new ArrayList<>();
+				List<String> placeholders = new ArrayList<>();
+				List<String> updates = new ArrayList<>();
+				for (String column : columns) {
+						String sqlType = getSqlTypeForColumn(tableName, column);
+						if (sqlType == null) {
+								throw new RuntimeException("Не удалось определить тип для колонки " + column);
+						}
+						quotedColumns.add(SqlIdentifiers.quote(column));
+						placeholders.add("CAST(? AS " + sqlType + ")");
+						if (!"id".equals(column)) {
+								updates.add(SqlIdentifiers.quote(column) + " = EXCLUDED." + SqlIdentifiers.quote(column));
+						}
+				}
+
+				String sql = "INSERT INTO " + SqlIdentifiers.quote(tableName) + " (" + String.join(", ", quotedColumns) + ") VALUES (" +
+								String.join(", ", placeholders) + ") ON CONFLICT (\"id\") ";
+				return updates.isEmpty() ? sql + "DO NOTHING" : sql + "DO UPDATE SET " + String.join(", ", updates);
 		}
 
 		public void updateOrInsertRow(String tableName, String id, Map<String, String> updateData) {
@@ -210,23 +482,18 @@ public class TableService {
 		}
 
 		private String getSqlTypeForColumn(String tableName, String columnName) {
-				String sql = "SELECT UPPER(data_type) FROM information_schema.columns " +
-								"WHERE table_schema = 'public' AND table_name = ? AND column_name = ?";
 				try {
-						String dataType = jdbcTemplate.queryForObject(sql, new Object[]{tableName, columnName}, String.class);
-						if (dataType != null) {
-								// Пример преобразования типов:
-								if (dataType.contains("CHARACTER VARYING")) {
-										return "VARCHAR";
-								}
-								return dataType;
-						}
-						return null;
+						return schemaCache.getColumnType(tableName, columnName);
 				} catch (Exception e) {
 						System.err.println("Ошибка получения типа для колонки " + columnName + " таблицы " + tableName + ": " + e.getMessage());
 						return null;
 				}
 		}
+
+		public Map<String, Object> getSchemaCacheStats() {
+				return schemaCache.getStats();
+		}
+
 		public void deleteColumns(String tableName, List<String> columns) {
 				if (tableName == null || tableName.isBlank()) {
 						throw new IllegalArgumentException("Имя таблицы не указано");
@@ -250,11 +517,20 @@ public class TableService {
 
 				System.out.println("SQL для удаления столбцов: " + sql);
 
+				boolean fullTextIndexed = hasFullTextIndex(sanitizedTable);
 				try {
 						jdbcTemplate.execute(sql);
 				} catch (DataAccessException e) {
 						System.err.println("Ошибка при удалении столбцов: " + e.getMessage());
 						throw new RuntimeException("Ошибка при выполнении SQL-запроса", e);
+				} finally {
+						schemaCache.invalidate(tableName);
+						queryResultCache.invalidateTable(tableName);
+						schemaCache.invalidate(sanitizedTable);
+						queryResultCache.invalidateTable(sanitizedTable);
+				}
+				if (fullTextIndexed) {
+						rebuildFullTextIndex(sanitizedTable);
 				}
 		}
 		public List<String> getAllTableNames() {
@@ -278,16 +554,162 @@ public class TableService {
 				});
 		}
 
-		public List<Map<String, Object>> searchRowsByColumn(String tableName, String columnName, String searchTerm) {
-				// Экранируем имена таблицы и столбца
-				String sql = String.format(
-								"SELECT * FROM \"%s\" WHERE \"%s\" ILIKE ?",
-								tableName, columnName
-				);
-				return jdbcTemplate.queryForList(sql, "%" + searchTerm + "%");
+		// Поиск подстроки по выражению "колонка"::text — то же выражение используется в trigram-индексе,
+		// поэтому при наличии индекса планировщик применяет его и для нетекстовых колонок.
+		public TablePage searchRowsByColumn(String tableName, String columnName, String searchTerm, String pageToken, Integer pageSize) {
+				if (getSqlTypeForColumn(tableName, columnName) == null) {
+						throw new IllegalArgumentException("Колонка " + columnName + " не найдена в таблице " + tableName);
+				}
+				String filter = SqlIdentifiers.quote(columnName) + "::text ILIKE ?";
+				return readPage(tableName, filter, List.of("%" + escapeLikePattern(searchTerm) + "%"), pageToken, pageSize);
+		}
+
+		public boolean hasSearchIndex(String tableName, String columnName) {
+				return indexExists(tableName, searchIndexName(tableName, columnName));
+		}
+
+		private boolean indexExists(String tableName, String indexName) {
+				String sql = "SELECT EXISTS (SELECT 1 FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid " +
+								"WHERE c.relname = ? AND i.indrelid = to_regclass(quote_ident(?)) AND i.indisvalid)";
+				return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, indexName, tableName));
 		}
 
+		// CREATE INDEX CONCURRENTLY не блокирует запись, но не может выполняться внутри транзакции
+		public void createSearchIndex(String tableName, String columnName) {
+				if (getSqlTypeForColumn(tableName, columnName) == null) {
+						throw new IllegalArgumentException("Колонка " + columnName + " не найдена в таблице " + tableName);
+				}
+				String indexName = searchIndexName(tableName, columnName);
+				jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+				// Индекс, оставшийся невалидным после прерванного построения, пересоздаём
+				if (!hasSearchIndex(tableName, columnName)) {
+						jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SqlIdentifiers.quote(indexName));
+				}
+				jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + SqlIdentifiers.quote(indexName) + " ON " + SqlIdentifiers.quote(tableName) +
+								" USING gin ((" + SqlIdentifiers.quote(columnName) + "::text) gin_trgm_ops)");
+		}
+
+		public void dropSearchIndex(String tableName, String columnName) {
+				jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SqlIdentifiers.quote(searchIndexName(tableName, columnName)));
+		}
+
+		private String searchIndexName(String tableName, String columnName) {
+				return indexName("trgm_", tableName + "_" + columnName);
+		}
 
+		private String indexName(String prefix, String name) {
+				// Имена длиннее 63 байт PostgreSQL молча обрезает, поэтому заменяем их хэшем
+				if ((prefix + name).getBytes(StandardCharsets.UTF_8).length > 63) {
+						return prefix + Integer.toHexString(name.hashCode());
+				}
+				return prefix + name;
+		}
+
+		// Полнотекстовый поиск по всем текстовым колонкам строки. Вместо генерируемого столбца используется
+		// индекс по выражению, чтобы tsvector не попадал в SELECT * и в экспорт. Выражение в запросе
+		// строится так же, как в индексе, иначе планировщик индекс не применит.
+		public TablePage searchAllColumns(String tableName, String searchTerm, String pageToken, Integer pageSize) {
+				String document = fullTextDocument(tableName);
+				if (document == null) {
+						throw new IllegalArgumentException("В таблице " + tableName + " нет текстовых колонок для поиска");
+				}
+				int limit = resolvePageSize(pageSize);
+				int offset = 0;
+				List<String> token = decodePageToken(pageToken);
+				if (token != null) {
+						try {
+								offset = Integer.parseInt(token.get(0));
+						} catch (NumberFormatException | IndexOutOfBoundsException e) {
+								throw new IllegalArgumentException("Некорректный токен страницы", e);
+						}
+				}
+
+				List<KeyColumn> primaryKeys = getPrimaryKeyColumns(tableName);
+				String tieBreaker = primaryKeys.isEmpty() ? "ctid" : primaryKeys.stream()
+								.map(key -> SqlIdentifiers.quote(key.name()))
+								.collect(Collectors.joining(", "));
+				String query = "plainto_tsquery('" + fullTextConfig + "', ?)";
+				String sql = "SELECT * FROM " + SqlIdentifiers.quote(tableName) + " WHERE " + document + " @@ " + query +
+								" ORDER BY ts_rank(" + document + ", " + query + ") DESC, " + tieBreaker + " LIMIT ? OFFSET ?";
+
+				int startOffset = offset;
+				return jdbcTemplate.query(sql, rs -> {
+						ResultSetMetaData metaData = rs.getMetaData();
+						List<String> columns = new ArrayList<>();
+						for (int i = 1; i <= metaData.getColumnCount(); i++) {
+								columns.add(metaData.getColumnLabel(i));
+						}
+						ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+						List<Map<String, Object>> rows = new ArrayList<>();
+						boolean hasMore = false;
+						while (rs.next()) {
+								if (rows.size() == limit) {
+										hasMore = true;
+										break;
+								}
+								rows.add(rowMapper.mapRow(rs, rows.size()));
+						}
+
+						TablePage result = new TablePage();
+						result.setColumns(columns);
+						result.setRows(rows);
+						result.setPageSize(limit);
+						result.setNextPageToken(hasMore ? encodePageToken(List.of(String.valueOf(startOffset + limit))) : null);
+						return result;
+				}, searchTerm, searchTerm, limit + 1, offset);
+		}
+
+		public boolean hasFullTextIndex(String tableName) {
+				return indexExists(tableName, fullTextIndexName(tableName));
+		}
+
+		public void createFullTextIndex(String tableName) {
+				if (fullTextDocument(tableName) == null) {
+						throw new IllegalArgumentException("В таблице " + tableName + " нет текстовых колонок для поиска");
+				}
+				rebuildFullTextIndex(tableName);
+		}
+
+		public void dropFullTextIndex(String tableName) {
+				jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SqlIdentifiers.quote(fullTextIndexName(tableName)));
+		}
+
+		// Новый индекс строится рядом со старым и подменяет его, чтобы поиск не оставался без индекса
+		private void rebuildFullTextIndex(String tableName) {
+				String indexName = fullTextIndexName(tableName);
+				String document = fullTextDocument(tableName);
+				if (document == null) {
+						jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SqlIdentifiers.quote(indexName));
+						return;
+				}
+				String newIndexName = indexName("fts_new_", tableName);
+				jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SqlIdentifiers.quote(newIndexName));
+				jdbcTemplate.execute("CREATE INDEX CONCURRENTLY " + SqlIdentifiers.quote(newIndexName) + " ON " + SqlIdentifiers.quote(tableName) + " USING gin (" + document + ")");
+				jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SqlIdentifiers.quote(indexName));
+				jdbcTemplate.execute("ALTER INDEX " + SqlIdentifiers.quote(newIndexName) + " RENAME TO " + SqlIdentifiers.quote(indexName));
+		}
+
+		private String fullTextIndexName(String tableName) {
+				return indexName("fts_", tableName);
+		}
+
+		private String fullTextDocument(String tableName) {
+				List<String> textColumns = jdbcTemplate.queryForList(
+								"SELECT column_name FROM information_schema.columns WHERE table_schema = 'public' AND table_name = ? " +
+												"AND data_type IN ('text', 'character varying', 'character') ORDER BY ordinal_position",
+								String.class, tableName);
+				if (textColumns.isEmpty()) {
+						return null;
+				}
+				String text = textColumns.stream()
+								.map(column -> "coalesce(" + SqlIdentifiers.quote(column) + "::text, '')")
+								.collect(Collectors.joining(" || ' ' || "));
+				return "to_tsvector('" + fullTextConfig + "', " + text + ")";
+		}
+
+		private String escapeLikePattern(String term) {
+				return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+		}
 
 		public List<String> debugColumnValues(String tableName, String columnName) {
 				String sql = String.format("SELECT \"%s\" FROM \"%s\"", columnName, tableName);
@@ -0,0 +1,153 @@
+package com.pacukievich.lab6.service;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.function.Consumer;
+
+// Временный файл со строками таблицы, прочитанной в отдельном потоке, до записи её листа в книгу.
+// Значения хранятся уже приведёнными к типам ячеек Excel: число, логическое, дата или текст.
+// long и numeric хранятся точно, а не как double: выбор между числом и текстом делает запись листа.
+class TableSpool implements Closeable {
+		private static final byte NULL = 0;
+		private static final byte NUMBER = 1;
+		private static final byte BOOLEAN = 2;
+		private static final byte DATE = 3;
+		private static final byte TEXT = 4;
+		private static final byte LONG = 5;
+		private static final byte DECIMAL = 6;
+
+		private final Path file;
+		private String[] columns;
+
+		private TableSpool(Path file) {
+				this.file = file;
+		}
+
+		static TableSpool create() throws IOException {
+				return new TableSpool(Files.createTempFile("export_", ".spool"));
+		}
+
+		String[] getColumns() {
+				return columns;
+		}
+
+		void write(ResultSet rs) throws SQLException, IOException {
+				ResultSetMetaData metaData = rs.getMetaData();
+				int columnCount = metaData.getColumnCount();
+				columns = new String[columnCount];
+				for (int i = 1; i <= columnCount; i++) {
+						columns[i - 1] = JdbcUtils.lookupColumnName(metaData, i);
+				}
+
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+						while (rs.next()) {
+								out.writeBoolean(true);
+								for (int i = 1; i <= columnCount; i++) {
+										writeValue(out, JdbcUtils.getResultSetValue(rs, i));
+								}
+						}
+						out.writeBoolean(false);
+				}
+		}
+
+		void forEachRow(Consumer<Object[]> consumer) throws IOException {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+						while (in.readBoolean()) {
+								Object[] values = new Object[columns.length];
+								for (int i = 0; i < values.length; i++) {
+										values[i] = readValue(in);
+								}
+								consumer.accept(values);
+						}
+				}
+		}
+
+		private void writeValue(DataOutputStream out, Object value) throws IOException {
+				if (value == null) {
+						out.writeByte(NULL);
+				} else if (value instanceof Long number) {
+						out.writeByte(LONG);
+						out.writeLong(number);
+				} else if (value instanceof BigDecimal || value instanceof BigInteger) {
+						writeText(out, DECIMAL, value.toString());
+				} else if (value instanceof Number number) {
+						out.writeByte(NUMBER);
+						out.writeDouble(number.doubleValue());
+				} else if (value instanceof Boolean bool) {
+						out.writeByte(BOOLEAN);
+						out.writeBoolean(bool);
+				} else if (value instanceof Time) {
+						writeText(out, TEXT, value.toString());
+				} else if (value instanceof Date date) {
+						out.writeByte(DATE);
+						out.writeLong(date.getTime());
+				} else if (value instanceof LocalDateTime dateTime) {
+						out.writeByte(DATE);
+						out.writeLong(dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+				} else if (value instanceof LocalDate date) {
+						out.writeByte(DATE);
+						out.writeLong(date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+				} else {
+						writeText(out, TEXT, value.toString());
+				}
+		}
+
+		private void writeText(DataOutputStream out, byte type, String text) throws IOException {
+				byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+				out.writeByte(type);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+		}
+
+		private Object readValue(DataInputStream in) throws IOException {
+				byte type = in.readByte();
+				switch (type) {
+						case NULL:
+								return null;
+						case NUMBER:
+								return in.readDouble();
+						case BOOLEAN:
+								return in.readBoolean();
+						case DATE:
+								return new Date(in.readLong());
+						case LONG:
+								return in.readLong();
+						case TEXT:
+								return readText(in);
+						case DECIMAL:
+								return new BigDecimal(readText(in));
+						default:
+								throw new IOException("Повреждён временный файл выгрузки: " + file);
+				}
+		}
+
+		private static String readText(DataInputStream in) throws IOException {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void close() throws IOException {
+				Files.deleteIfExists(file);
+		}
+}
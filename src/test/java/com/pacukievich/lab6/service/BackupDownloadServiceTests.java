@@ -0,0 +1,201 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupDownloadServiceTests {
+
+		private static final String DUMP = "backup_20240101_000000.sql";
+		private static final long DUMP_MODIFIED = 1_704_067_200_000L;
+
+		@TempDir
+		Path root;
+
+		private Path backupDir;
+
+		@Test
+		void servesFileFromBackupDirectoryByNameOrPath() throws IOException {
+				backupDir = Files.createDirectory(root.resolve("backups"));
+				Path dump = Files.writeString(backupDir.resolve("backup_20240101_000000.sql"), "SELECT 1;");
+				BackupDownloadService service = new BackupDownloadService(null, backupDir.toString());
+
+				MockHttpServletResponse byName = download(service, "backup_20240101_000000.sql");
+				assertEquals(200, byName.getStatus());
+				assertEquals("SELECT 1;", byName.getContentAsString());
+				assertEquals(200, download(service, dump.toString()).getStatus());
+		}
+
+		@Test
+		void rejectsPathsOutsideBackupDirectory() throws IOException {
+				backupDir = Files.createDirectory(root.resolve("backups"));
+				Path outside = Files.writeString(root.resolve("secret.txt"), "secret");
+				Files.createDirectories(backupDir.resolve("chunks").resolve("ab"));
+				BackupDownloadService service = new BackupDownloadService(null, backupDir.toString());
+
+				assertEquals(404, download(service, "../secret.txt").getStatus());
+				assertEquals(404, download(service, outside.toString()).getStatus());
+				assertEquals(404, download(service, backupDir.toString()).getStatus());
+				// каталоги, кроме копий формата directory, не архивируются
+				assertEquals(404, download(service, "chunks").getStatus());
+				assertEquals(404, download(service, "").getStatus());
+		}
+
+		@Test
+		void servesSingleAndSuffixRanges() throws IOException {
+				BackupDownloadService service = serviceWithDump("0123456789");
+
+				MockHttpServletResponse range = download(service, withHeader("Range", "bytes=2-5"));
+				assertEquals(206, range.getStatus());
+				assertEquals("bytes 2-5/10", range.getHeader("Content-Range"));
+				assertEquals(4, range.getContentLengthLong());
+				assertEquals("2345", range.getContentAsString());
+
+				MockHttpServletResponse open = download(service, withHeader("Range", "bytes=7-"));
+				assertEquals(206, open.getStatus());
+				assertEquals("789", open.getContentAsString());
+
+				MockHttpServletResponse suffix = download(service, withHeader("Range", "bytes=-3"));
+				assertEquals(206, suffix.getStatus());
+				assertEquals("bytes 7-9/10", suffix.getHeader("Content-Range"));
+				assertEquals("789", suffix.getContentAsString());
+
+				// несколько диапазонов не поддерживаются — файл отдаётся целиком
+				MockHttpServletResponse multiple = download(service, withHeader("Range", "bytes=0-1,4-5"));
+				assertEquals(200, multiple.getStatus());
+				assertEquals("0123456789", multiple.getContentAsString());
+		}
+
+		@Test
+		void rejectsUnsatisfiableRange() throws IOException {
+				BackupDownloadService service = serviceWithDump("0123456789");
+
+				MockHttpServletResponse response = download(service, withHeader("Range", "bytes=10-"));
+				assertEquals(416, response.getStatus());
+				assertEquals("bytes */10", response.getHeader("Content-Range"));
+				assertEquals(0, response.getContentAsByteArray().length);
+		}
+
+		@Test
+		void ignoresRangeWhenIfRangeIsStale() throws IOException {
+				BackupDownloadService service = serviceWithDump("0123456789");
+				String etag = download(service, new MockHttpServletRequest("GET", "/download")).getHeader("ETag");
+
+				MockHttpServletRequest current = withHeader("Range", "bytes=5-");
+				current.addHeader("If-Range", etag);
+				assertEquals(206, download(service, current).getStatus());
+
+				MockHttpServletRequest staleEtag = withHeader("Range", "bytes=5-");
+				staleEtag.addHeader("If-Range", "\"0-0\"");
+				MockHttpServletResponse full = download(service, staleEtag);
+				assertEquals(200, full.getStatus());
+				assertNull(full.getHeader("Content-Range"));
+				assertEquals("0123456789", full.getContentAsString());
+
+				MockHttpServletRequest staleDate = withHeader("Range", "bytes=5-");
+				staleDate.addHeader("If-Range", httpDate(DUMP_MODIFIED - 60_000));
+				assertEquals(200, download(service, staleDate).getStatus());
+
+				MockHttpServletRequest currentDate = withHeader("Range", "bytes=5-");
+				currentDate.addHeader("If-Range", httpDate(DUMP_MODIFIED));
+				assertEquals(206, download(service, currentDate).getStatus());
+		}
+
+		@Test
+		void answersNotModifiedForMatchingEtag() throws IOException {
+				BackupDownloadService service = serviceWithDump("0123456789");
+				String etag = download(service, new MockHttpServletRequest("GET", "/download")).getHeader("ETag");
+
+				MockHttpServletResponse response = download(service, withHeader("If-None-Match", "\"other\", " + etag));
+				assertEquals(304, response.getStatus());
+				assertEquals(etag, response.getHeader("ETag"));
+				assertEquals(0, response.getContentAsByteArray().length);
+				assertEquals(200, download(service, withHeader("If-None-Match", "\"other\"")).getStatus());
+		}
+
+		@Test
+		void servesGzipVariantOnlyWhenFreshAndAccepted() throws IOException {
+				BackupDownloadService service = serviceWithDump("0123456789");
+				Path compressed = Files.write(backupDir.resolve(DUMP + ".gz"), new byte[]{31, -117, 8, 0});
+				Files.setLastModifiedTime(compressed, FileTime.fromMillis(DUMP_MODIFIED + 1000));
+
+				MockHttpServletResponse gzip = download(service, withHeader("Accept-Encoding", "deflate, gzip"));
+				assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+				assertEquals("Accept-Encoding", gzip.getHeader("Vary"));
+				assertArrayEquals(new byte[]{31, -117, 8, 0}, gzip.getContentAsByteArray());
+				assertTrue(gzip.getHeader("ETag").endsWith("-gz\""));
+
+				MockHttpServletResponse refused = download(service, withHeader("Accept-Encoding", "gzip;q=0"));
+				assertNull(refused.getHeader("Content-Encoding"));
+				assertEquals("0123456789", refused.getContentAsString());
+
+				assertNull(download(service, new MockHttpServletRequest("GET", "/download")).getHeader("Content-Encoding"));
+
+				// сжатый вариант старше самой копии — он устарел и не отдаётся
+				Files.setLastModifiedTime(compressed, FileTime.fromMillis(DUMP_MODIFIED - 1000));
+				MockHttpServletResponse stale = download(service, withHeader("Accept-Encoding", "gzip"));
+				assertNull(stale.getHeader("Content-Encoding"));
+				assertEquals("0123456789", stale.getContentAsString());
+		}
+
+		@Test
+		void answersHeadWithoutBody() throws IOException {
+				BackupDownloadService service = serviceWithDump("0123456789");
+
+				MockHttpServletResponse response = download(service, new MockHttpServletRequest("HEAD", "/download"));
+				assertEquals(200, response.getStatus());
+				assertEquals(10, response.getContentLengthLong());
+				assertEquals("bytes", response.getHeader("Accept-Ranges"));
+				assertEquals(0, response.getContentAsByteArray().length);
+
+				MockHttpServletRequest rangeHead = new MockHttpServletRequest("HEAD", "/download");
+				rangeHead.addHeader("Range", "bytes=0-3");
+				MockHttpServletResponse partial = download(service, rangeHead);
+				assertEquals(206, partial.getStatus());
+				assertEquals(4, partial.getContentLengthLong());
+				assertEquals(0, partial.getContentAsByteArray().length);
+		}
+
+		private BackupDownloadService serviceWithDump(String content) throws IOException {
+				backupDir = Files.createDirectory(root.resolve("backups"));
+				Path dump = Files.writeString(backupDir.resolve(DUMP), content);
+				Files.setLastModifiedTime(dump, FileTime.fromMillis(DUMP_MODIFIED));
+				return new BackupDownloadService(null, backupDir.toString());
+		}
+
+		private static MockHttpServletRequest withHeader(String name, String value) {
+				MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+				request.addHeader(name, value);
+				return request;
+		}
+
+		private static String httpDate(long millis) {
+				HttpHeaders headers = new HttpHeaders();
+				headers.setDate("If-Range", millis);
+				return headers.getFirst("If-Range");
+		}
+
+		private static MockHttpServletResponse download(BackupDownloadService service, MockHttpServletRequest request) throws IOException {
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				service.download(DUMP, request, response);
+				return response;
+		}
+
+		private static MockHttpServletResponse download(BackupDownloadService service, String fileName) throws IOException {
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				service.download(fileName, new MockHttpServletRequest("GET", "/download"), response);
+				return response;
+		}
+}
@@ -0,0 +1,190 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentChunkerTests {
+
+		// averageSize 1024: маска на 10 бит, куски от 256 байт до 4 КБ
+		private static final int AVERAGE = 1024;
+		private static final int MIN = 256;
+		private static final int MAX = 4096;
+
+		@Test
+		void chunksReassembleToInputAndRespectSizeLimits() throws IOException {
+				byte[] data = random(200_000, 1);
+				List<byte[]> chunks = chunk(data);
+
+				ByteArrayOutputStream joined = new ByteArrayOutputStream();
+				for (int i = 0; i < chunks.size(); i++) {
+						byte[] piece = chunks.get(i);
+						joined.write(piece);
+						assertTrue(piece.length <= MAX, "кусок " + i + " больше максимума: " + piece.length);
+						if (i < chunks.size() - 1) {
+								assertTrue(piece.length >= MIN, "кусок " + i + " меньше минимума: " + piece.length);
+						}
+				}
+				assertArrayEquals(data, joined.toByteArray());
+				// при среднем размере около килобайта кусков должно быть порядка сотни, а не один-два
+				assertTrue(chunks.size() > 40 && chunks.size() < 800, "кусков: " + chunks.size());
+		}
+
+		@Test
+		void cutsAtMaximumSizeWhenContentHasNoBoundaries() throws IOException {
+				byte[] data = new byte[MAX * 3 + 100];
+				List<byte[]> chunks = chunk(data);
+
+				int total = 0;
+				for (int i = 0; i < chunks.size(); i++) {
+						assertTrue(chunks.get(i).length <= MAX);
+						if (i < chunks.size() - 1) {
+								assertTrue(chunks.get(i).length >= MIN);
+						}
+						total += chunks.get(i).length;
+				}
+				assertEquals(data.length, total);
+		}
+
+		@Test
+		void byteWritesCutAtSameBoundariesAsBulkWrites() throws IOException {
+				byte[] data = random(50_000, 2);
+				List<String> bulk = ids(chunk(data));
+
+				List<byte[]> single = new ArrayList<>();
+				ContentChunker chunker = new ContentChunker(AVERAGE, collect(single));
+				for (byte b : data) {
+						chunker.write(b);
+				}
+				chunker.close();
+
+				assertEquals(bulk, ids(single));
+		}
+
+		@Test
+		void insertionChangesOnlyNeighbouringChunks() throws IOException {
+				byte[] original = random(200_000, 3);
+				byte[] inserted = random(100, 4);
+				int at = 100_000;
+				byte[] edited = new byte[original.length + inserted.length];
+				System.arraycopy(original, 0, edited, 0, at);
+				System.arraycopy(inserted, 0, edited, at, inserted.length);
+				System.arraycopy(original, at, edited, at + inserted.length, original.length - at);
+
+				assertFewNewChunks(original, edited, at);
+		}
+
+		@Test
+		void deletionChangesOnlyNeighbouringChunks() throws IOException {
+				byte[] original = random(200_000, 5);
+				int at = 120_000;
+				int removed = 700;
+				byte[] edited = new byte[original.length - removed];
+				System.arraycopy(original, 0, edited, 0, at);
+				System.arraycopy(original, at + removed, edited, at, original.length - at - removed);
+
+				assertFewNewChunks(original, edited, at);
+		}
+
+		// Строки таблицы однообразны: отличаются только id и флагом, остальное — длинный одинаковый хвост.
+		// Граница по окну в 10–20 байт здесь почти не находится, и куски режутся по максимальному размеру
+		@Test
+		void cutsStructuredRowsByContent() throws IOException {
+				byte[] original = rows(0, 4000);
+				List<byte[]> chunks = chunk(original);
+
+				long forced = chunks.stream().filter(piece -> piece.length == MAX).count();
+				assertTrue(forced * 10 < chunks.size(), "кусков максимального размера: " + forced + " из " + chunks.size());
+				assertTrue(chunks.size() > 100, "кусков: " + chunks.size());
+
+				int at = 2000;
+				ByteArrayOutputStream edited = new ByteArrayOutputStream();
+				edited.write(rows(0, at));
+				edited.write("999999\tt\tinserted\teurope-west\t2024-02-01 10:00:00\t\\N\tinserted row\n".getBytes(StandardCharsets.US_ASCII));
+				edited.write(rows(at, 4000));
+				assertFewNewChunks(original, edited.toByteArray(), rows(0, at).length);
+		}
+
+		@Test
+		void spreadsMaskBitsOverHighPartOfHash() {
+				for (int bits = 10; bits <= 24; bits++) {
+						long mask = ContentChunker.spreadMask(bits);
+						assertEquals(bits, Long.bitCount(mask));
+						assertTrue(Long.numberOfTrailingZeros(mask) >= 15, "маска " + Long.toHexString(mask));
+				}
+		}
+
+		// Куски до места правки совпадают полностью, после неё границы восстанавливаются через кусок-другой
+		private static void assertFewNewChunks(byte[] original, byte[] edited, int editAt) throws IOException {
+				List<String> before = ids(chunk(original));
+				List<String> after = ids(chunk(edited));
+
+				int offset = 0;
+				int prefix = 0;
+				while (prefix < before.size() && offset + before.get(prefix).length() <= editAt) {
+						assertEquals(before.get(prefix), after.get(prefix));
+						offset += before.get(prefix).length();
+						prefix++;
+				}
+				assertTrue(prefix > 0);
+
+				Set<String> known = new HashSet<>(before);
+				long added = after.stream().filter(id -> !known.contains(id)).count();
+				assertTrue(added <= 3, "новых кусков: " + added + " из " + after.size());
+		}
+
+		private static List<byte[]> chunk(byte[] data) throws IOException {
+				List<byte[]> chunks = new ArrayList<>();
+				try (ContentChunker chunker = new ContentChunker(AVERAGE, collect(chunks))) {
+						// запись порциями, не совпадающими с границами кусков
+						for (int offset = 0; offset < data.length; offset += 1000) {
+								chunker.write(data, offset, Math.min(1000, data.length - offset));
+						}
+				}
+				return chunks;
+		}
+
+		private static ContentChunker.ChunkSink collect(List<byte[]> chunks) {
+				return (data, length) -> {
+						byte[] copy = new byte[length];
+						System.arraycopy(data, 0, copy, 0, length);
+						chunks.add(copy);
+						return String.valueOf(chunks.size());
+				};
+		}
+
+		// Идентификатор куска — само содержимое: одинаковые куски совпадают, а длина известна без хеша
+		private static List<String> ids(List<byte[]> chunks) {
+				List<String> ids = new ArrayList<>();
+				for (byte[] chunk : chunks) {
+						ids.add(new String(chunk, StandardCharsets.ISO_8859_1));
+				}
+				return ids;
+		}
+
+		private static byte[] rows(int from, int to) {
+				StringBuilder rows = new StringBuilder();
+				for (int id = from; id < to; id++) {
+						rows.append(id).append('\t').append(id % 3 == 0 ? 't' : 'f')
+										.append("\tactive\teurope-west\t2024-01-01 10:00:00\t\\N\tdefault comment for this row\n");
+				}
+				return rows.toString().getBytes(StandardCharsets.US_ASCII);
+		}
+
+		private static byte[] random(int size, long seed) {
+				byte[] data = new byte[size];
+				new Random(seed).nextBytes(data);
+				return data;
+		}
+}
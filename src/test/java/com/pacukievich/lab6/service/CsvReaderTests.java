@@ -0,0 +1,113 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvReaderTests {
+
+		@Test
+		void readsPlainRecordsWithEmptyFields() throws IOException {
+				assertEquals(List.of(List.of("a", "b", "", ""), List.of("1", "2", "3", "4")),
+								readAll("a,b,,\n1,2,3,4\n", ','));
+		}
+
+		@Test
+		void readsQuotedValuesWithDelimitersAndEscapedQuotes() throws IOException {
+				assertEquals(List.of(List.of("x,y", "he said \"hi\"", "", "z")),
+								readAll("\"x,y\",\"he said \"\"hi\"\"\",\"\",z", ','));
+		}
+
+		@Test
+		void keepsLineBreaksInsideQuotedValues() throws IOException {
+				assertEquals(List.of(List.of("line1\nline2", "b"), List.of("line3\r\nline4", "d")),
+								readAll("\"line1\nline2\",b\r\n\"line3\r\nline4\",d\r\n", ','));
+		}
+
+		@Test
+		void acceptsLfCrlfAndLoneCrLineEndings() throws IOException {
+				assertEquals(List.of(List.of("a"), List.of("b"), List.of("c"), List.of("d")),
+								readAll("a\r\nb\nc\rd", ','));
+		}
+
+		@Test
+		void skipsByteOrderMarkOnlyAtStart() throws IOException {
+				assertEquals(List.of(List.of("id", "name"), List.of("1", "\uFEFFx")),
+								readAll("\uFEFFid,name\n1,\uFEFFx\n", ','));
+		}
+
+		@Test
+		void usesConfiguredDelimiter() throws IOException {
+				assertEquals(List.of(List.of("a,b", "c")), readAll("a,b;c", ';'));
+		}
+
+		@Test
+		void rejectsUnterminatedQuote() {
+				assertThrows(IllegalArgumentException.class, () -> readAll("a,\"open\nb", ','));
+		}
+
+		// Читатель, отдающий по одному символу, ставит границу буфера между любыми двумя символами
+		@Test
+		void parsesTheSameWhenEveryCharacterArrivesSeparately() throws IOException {
+				String csv = "\uFEFFid,\"quoted\r\nvalue\",\"a\"\"b\"\r\n2,x,y\r3,,\"\"\r\n";
+				assertEquals(readAll(csv, ','), readAll(new OneCharReader(csv), ','));
+				assertEquals(List.of(List.of("id", "quoted\r\nvalue", "a\"b"), List.of("2", "x", "y"), List.of("3", "", "")),
+								readAll(new OneCharReader(csv), ','));
+		}
+
+		@Test
+		void handlesCrlfAndLoneCrSplitAcrossBufferBoundary() throws IOException {
+				// буфер — 64 К символов: \r оказывается последним символом первого чтения
+				String field = "x".repeat(64 * 1024 - 1);
+
+				assertEquals(List.of(List.of(field), List.of("y")), readAll(field + "\r\ny", ','));
+				assertEquals(List.of(List.of(field), List.of("y")), readAll(field + "\ry", ','));
+				assertEquals(List.of(List.of(field)), readAll(field + "\r", ','));
+		}
+
+		private static List<List<String>> readAll(String csv, char delimiter) throws IOException {
+				return readAll(new StringReader(csv), delimiter);
+		}
+
+		private static List<List<String>> readAll(Reader reader, char delimiter) throws IOException {
+				CsvReader csv = new CsvReader(reader, delimiter);
+				List<List<String>> records = new ArrayList<>();
+				List<String> record;
+				while ((record = csv.next()) != null) {
+						records.add(record);
+				}
+				assertNull(csv.next());
+				return records;
+		}
+
+		private static final class OneCharReader extends Reader {
+
+				private final String text;
+				private int position;
+
+				OneCharReader(String text) {
+						this.text = text;
+				}
+
+				@Override
+				public int read(char[] buffer, int offset, int length) {
+						if (position == text.length()) {
+								return -1;
+						}
+						buffer[offset] = text.charAt(position++);
+						return 1;
+				}
+
+				@Override
+				public void close() {
+				}
+		}
+}
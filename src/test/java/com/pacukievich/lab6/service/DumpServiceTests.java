@@ -0,0 +1,57 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DumpServiceTests {
+
+		@Test
+		void detectsFormatByFirstBytes() throws IOException {
+				assertEquals("custom", DumpService.detectFormat(stream("PGDMP\u0001\u000e".getBytes(StandardCharsets.US_ASCII))));
+				assertEquals("plain", DumpService.detectFormat(stream("--\n-- PostgreSQL database dump\n".getBytes(StandardCharsets.UTF_8))));
+				assertEquals("pgcopy", DumpService.detectFormat(stream(zip("manifest.json", "data/0.bin.gz"))));
+		}
+
+		@Test
+		void rejectsZippedDirectoryDump() {
+				IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+								() -> DumpService.detectFormat(stream(zip("backup_20250101_120000.dir/toc.dat", "backup_20250101_120000.dir/3456.dat.gz"))));
+				assertTrue(error.getMessage().contains("directory"));
+				assertThrows(IllegalArgumentException.class, () -> DumpService.detectFormat(stream(zip("3456.dat.gz", "toc.dat"))));
+		}
+
+		@Test
+		void leavesStreamAtStartAfterDetection() throws IOException {
+				byte[] archive = zip("manifest.json");
+				BufferedInputStream in = stream(archive);
+				DumpService.detectFormat(in);
+				assertEquals(archive.length, in.readAllBytes().length);
+		}
+
+		private static BufferedInputStream stream(byte[] data) {
+				return new BufferedInputStream(new ByteArrayInputStream(data));
+		}
+
+		private static byte[] zip(String... entries) throws IOException {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				try (ZipOutputStream zip = new ZipOutputStream(out)) {
+						for (String entry : entries) {
+								zip.putNextEntry(new ZipEntry(entry));
+								zip.write(entry.getBytes(StandardCharsets.UTF_8));
+								zip.closeEntry();
+						}
+				}
+				return out.toByteArray();
+		}
+}
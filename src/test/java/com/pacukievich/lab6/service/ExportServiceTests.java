@@ -0,0 +1,41 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportServiceTests {
+
+		@Test
+		void writesSmallIntegersAndFloatingPointAsNumbers() {
+				assertTrue(ExportService.isExactDouble(42));
+				assertTrue(ExportService.isExactDouble((short) -7));
+				assertTrue(ExportService.isExactDouble(1.5f));
+				assertTrue(ExportService.isExactDouble(0.1d));
+				assertFalse(ExportService.isExactDouble(Double.NaN));
+		}
+
+		@Test
+		void writesLongAsNumberOnlyWithinDoublePrecision() {
+				assertTrue(ExportService.isExactDouble(1L << 53));
+				assertTrue(ExportService.isExactDouble(-(1L << 53)));
+				assertFalse(ExportService.isExactDouble((1L << 53) + 1));
+				assertFalse(ExportService.isExactDouble(Long.MIN_VALUE));
+				assertFalse(ExportService.isExactDouble(Long.MAX_VALUE));
+		}
+
+		@Test
+		void writesDecimalAsNumberOnlyWhenDoubleRoundTrips() {
+				assertTrue(ExportService.isExactDouble(new BigDecimal("123.45")));
+				assertTrue(ExportService.isExactDouble(new BigDecimal("1.50")));
+				assertFalse(ExportService.isExactDouble(new BigDecimal("1234567890.123456789")));
+				assertFalse(ExportService.isExactDouble(new BigDecimal("12345678901234567890")));
+				assertFalse(ExportService.isExactDouble(new BigDecimal("1e400")));
+				assertTrue(ExportService.isExactDouble(BigInteger.valueOf(1_000_000)));
+				assertFalse(ExportService.isExactDouble(new BigInteger("123456789012345678901")));
+		}
+}
@@ -0,0 +1,76 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImportServiceTests {
+
+		@Test
+		void normalizesIntegersAndChecksRange() {
+				assertEquals("42", ImportService.normalize("integer", " 42 "));
+				assertEquals("-32768", ImportService.normalize("smallint", "-32768"));
+				assertEquals("9000000000", ImportService.normalize("bigint", "9000000000"));
+
+				assertThrows(IllegalArgumentException.class, () -> ImportService.normalize("smallint", "32768"));
+				assertThrows(IllegalArgumentException.class, () -> ImportService.normalize("integer", "2147483648"));
+				assertThrows(IllegalArgumentException.class, () -> ImportService.normalize("bigint", "9223372036854775808"));
+				assertThrows(IllegalArgumentException.class, () -> ImportService.normalize("integer", "1.5"));
+		}
+
+		@Test
+		void normalizesNumericBooleanAndDates() {
+				assertEquals("1.50", ImportService.normalize("numeric", "1.50"));
+				assertEquals("1e5", ImportService.normalize("double precision", "1e5"));
+				assertThrows(IllegalArgumentException.class, () -> ImportService.normalize("numeric", "1,5"));
+
+				assertEquals("true", ImportService.normalize("boolean", "Yes"));
+				assertEquals("false", ImportService.normalize("boolean", "0"));
+				assertThrows(IllegalArgumentException.class, () -> ImportService.normalize("boolean", "maybe"));
+
+				assertEquals("2024-02-29", ImportService.normalize("date", "2024-02-29"));
+				assertThrows(RuntimeException.class, () -> ImportService.normalize("date", "2023-02-29"));
+				assertEquals("2024-02-29T10:15:30", ImportService.normalize("timestamp without time zone", "2024-02-29 10:15:30"));
+				assertEquals("2024-02-29T10:15:30+03:00", ImportService.normalize("timestamp with time zone", "2024-02-29T10:15:30+03:00"));
+				assertEquals("2024-02-29", ImportService.normalize("timestamp without time zone", "2024-02-29"));
+		}
+
+		@Test
+		void leavesUncheckedTypesAsIs() {
+				assertEquals(" any text ", ImportService.normalize("text", " any text "));
+				assertEquals("{\"a\": 1}", ImportService.normalize("jsonb", "{\"a\": 1}"));
+		}
+
+		@Test
+		void infersNarrowestTypeIgnoringBlanks() {
+				List<List<String>> sample = List.of(
+								row("1", "1.5", "true", "2024-01-01", "2024-01-01", "x"),
+								row("", "", "", "", "2024-01-02 10:00:00", ""),
+								row("-7", "2", "FALSE", "2024-12-31", "2024-01-03", "1"));
+
+				assertEquals("BIGINT", ImportService.inferType(sample, 0));
+				assertEquals("NUMERIC", ImportService.inferType(sample, 1));
+				assertEquals("BOOLEAN", ImportService.inferType(sample, 2));
+				assertEquals("DATE", ImportService.inferType(sample, 3));
+				assertEquals("TIMESTAMP", ImportService.inferType(sample, 4));
+				assertEquals("TEXT", ImportService.inferType(sample, 5));
+		}
+
+		@Test
+		void infersTextForEmptyOrMissingColumns() {
+				List<List<String>> sample = List.of(row("1", " "), row("2"));
+
+				assertEquals("TEXT", ImportService.inferType(sample, 1));
+				assertEquals("TEXT", ImportService.inferType(sample, 5));
+				// "1" и "0" — не логические значения при определении типа, хотя normalize их принимает
+				assertEquals("BIGINT", ImportService.inferType(List.of(row("1"), row("0")), 0));
+		}
+
+		private static List<String> row(String... values) {
+				return Arrays.asList(values);
+		}
+}
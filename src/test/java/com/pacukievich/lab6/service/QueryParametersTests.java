@@ -0,0 +1,114 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryParametersTests {
+
+		@Test
+		void parsesDeclarationsAndNormalizesTypeCase() {
+				Map<String, String> declared = QueryParameters.parseDeclarations("{\"id\": \"INTEGER\", \"name\": \"text\"}");
+
+				assertEquals(List.of("id", "name"), List.copyOf(declared.keySet()));
+				assertEquals("integer", declared.get("id"));
+				assertTrue(QueryParameters.parseDeclarations(null).isEmpty());
+				assertTrue(QueryParameters.parseDeclarations("  ").isEmpty());
+		}
+
+		@Test
+		void rejectsUnknownTypeAndMalformedJson() {
+				assertThrows(IllegalArgumentException.class, () -> QueryParameters.parseDeclarations("{\"id\": \"uuid\"}"));
+				assertThrows(IllegalArgumentException.class, () -> QueryParameters.parseDeclarations("[\"id\"]"));
+		}
+
+		@Test
+		void findsNamesOutsideLiteralsCommentsAndCasts() {
+				String sql = "SELECT ':skip', \":quoted\" FROM t -- :comment\n"
+								+ "WHERE a = :first /* :block */ AND b::text = :second AND c = :first";
+
+				assertEquals(Set.of("first", "second"), QueryParameters.findNames(sql));
+		}
+
+		@Test
+		void validateRejectsUndeclaredParameter() {
+				IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+								() -> QueryParameters.validate("SELECT * FROM t WHERE id = :id AND name = :name", Map.of("id", "integer")));
+				assertTrue(e.getMessage().contains(":name"));
+		}
+
+		@Test
+		void validateRejectsUnusedDeclaration() {
+				IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+								() -> QueryParameters.validate("SELECT * FROM t WHERE id = :id", Map.of("id", "integer", "extra", "text")));
+				assertTrue(e.getMessage().contains("extra"));
+		}
+
+		@Test
+		void validateAcceptsMatchingDeclarations() {
+				assertDoesNotThrow(() -> QueryParameters.validate("SELECT * FROM t WHERE id = :id", Map.of("id", "integer")));
+				assertDoesNotThrow(() -> QueryParameters.validate("SELECT now()::date", Map.of()));
+		}
+
+		@Test
+		void convertsValuesToDeclaredTypes() {
+				Map<String, String> declared = QueryParameters.parseDeclarations("{\"i\": \"integer\", \"b\": \"bigint\", \"n\": \"numeric\", "
+								+ "\"f\": \"boolean\", \"d\": \"date\", \"ts\": \"timestamp\", \"s\": \"text\"}");
+				Map<String, Object> converted = QueryParameters.convert(declared, Map.of(
+								"i", " 42 ", "b", "9000000000", "n", "1.50", "f", "TRUE", "d", "2024-02-29",
+								"ts", "2024-02-29T10:15:30", "s", " as is "));
+
+				assertEquals(42, converted.get("i"));
+				assertEquals(9_000_000_000L, converted.get("b"));
+				assertEquals(new BigDecimal("1.50"), converted.get("n"));
+				assertEquals(Boolean.TRUE, converted.get("f"));
+				assertEquals(LocalDate.of(2024, 2, 29), converted.get("d"));
+				assertEquals(LocalDateTime.of(2024, 2, 29, 10, 15, 30), converted.get("ts"));
+				assertEquals(" as is ", converted.get("s"));
+		}
+
+		@Test
+		void convertsMissingAndEmptyValuesToTypedNull() {
+				Map<String, String> declared = Map.of("id", "integer", "name", "text");
+				Map<String, Object> converted = QueryParameters.convert(declared, Map.of("name", ""));
+
+				SqlParameterValue id = assertInstanceOf(SqlParameterValue.class, converted.get("id"));
+				assertEquals(Types.INTEGER, id.getSqlType());
+				assertNull(id.getValue());
+				SqlParameterValue name = assertInstanceOf(SqlParameterValue.class, converted.get("name"));
+				assertEquals(Types.VARCHAR, name.getSqlType());
+		}
+
+		@Test
+		void describesParametersStablyForCacheKey() {
+				Map<String, String> declared = Map.of("b", "integer", "a", "text");
+
+				String first = QueryParameters.describe(QueryParameters.convert(declared, Map.of("a", "x")));
+				String second = QueryParameters.describe(QueryParameters.convert(declared, Map.of("a", "x")));
+
+				assertEquals("{a=x, b=null}", first);
+				assertEquals(first, second);
+		}
+
+		@Test
+		void rejectsValuesThatDoNotMatchDeclaredType() {
+				assertThrows(IllegalArgumentException.class, () -> QueryParameters.convert(Map.of("id", "integer"), Map.of("id", "abc")));
+				assertThrows(IllegalArgumentException.class, () -> QueryParameters.convert(Map.of("id", "integer"), Map.of("id", "9000000000")));
+				assertThrows(IllegalArgumentException.class, () -> QueryParameters.convert(Map.of("f", "boolean"), Map.of("f", "yes")));
+				assertThrows(IllegalArgumentException.class, () -> QueryParameters.convert(Map.of("d", "date"), Map.of("d", "2023-02-29")));
+		}
+}
@@ -0,0 +1,142 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryResultCacheTests {
+
+		private static final String SQL = "SELECT * FROM users WHERE id = 1";
+
+		@Test
+		void returnsStoredEntry() {
+				QueryResultCache cache = new QueryResultCache(60, 10, 1000);
+				QueryResultCache.Entry stored = cache.put(1L, SQL, rows(2, 3), cache.currentGeneration());
+
+				assertSame(stored, cache.get(1L, SQL));
+				assertNull(cache.get(2L, SQL));
+		}
+
+		@Test
+		void expiresEntriesAfterTtl() throws InterruptedException {
+				QueryResultCache cache = new QueryResultCache(0, 10, 1000);
+				cache.put(1L, SQL, rows(1, 1), cache.currentGeneration());
+				Thread.sleep(5);
+
+				assertNull(cache.get(1L, SQL));
+		}
+
+		@Test
+		void evictsLeastRecentlyUsedEntryWhenFull() {
+				QueryResultCache cache = new QueryResultCache(60, 2, 1000);
+				cache.put(1L, "SELECT 1", rows(1, 1), cache.currentGeneration());
+				cache.put(2L, "SELECT 2", rows(1, 1), cache.currentGeneration());
+				// обращение делает первую запись самой свежей
+				assertNotNull(cache.get(1L, "SELECT 1"));
+				cache.put(3L, "SELECT 3", rows(1, 1), cache.currentGeneration());
+
+				assertNotNull(cache.get(1L, "SELECT 1"));
+				assertNull(cache.get(2L, "SELECT 2"));
+				assertNotNull(cache.get(3L, "SELECT 3"));
+		}
+
+		@Test
+		void evictsOldEntriesToStayWithinCellBudget() {
+				QueryResultCache cache = new QueryResultCache(60, 10, 100);
+				cache.put(1L, "SELECT 1", rows(10, 6), cache.currentGeneration());
+				cache.put(2L, "SELECT 2", rows(10, 5), cache.currentGeneration());
+
+				assertNull(cache.get(1L, "SELECT 1"));
+				assertNotNull(cache.get(2L, "SELECT 2"));
+		}
+
+		@Test
+		void doesNotStoreResultLargerThanCellBudget() {
+				QueryResultCache cache = new QueryResultCache(60, 10, 100);
+				QueryResultCache.Entry entry = cache.put(1L, SQL, rows(20, 6), cache.currentGeneration());
+
+				assertNotNull(entry);
+				assertNull(cache.get(1L, SQL));
+		}
+
+		@Test
+		void invalidatesOnlyEntriesReferencingTable() {
+				QueryResultCache cache = new QueryResultCache(60, 10, 1000);
+				cache.put(1L, "SELECT * FROM Users", rows(1, 1), cache.currentGeneration());
+				cache.put(2L, "SELECT * FROM \"Orders\"", rows(1, 1), cache.currentGeneration());
+				cache.put(3L, "SELECT 'users' AS label", rows(1, 1), cache.currentGeneration());
+
+				cache.invalidateTable("users");
+
+				assertNull(cache.get(1L, "SELECT * FROM Users"));
+				assertNotNull(cache.get(2L, "SELECT * FROM \"Orders\""));
+				// имя внутри строкового литерала не считается ссылкой на таблицу
+				assertNotNull(cache.get(3L, "SELECT 'users' AS label"));
+
+				cache.invalidateTable("orders");
+				assertNotNull(cache.get(2L, "SELECT * FROM \"Orders\""));
+				cache.invalidateTable("Orders");
+				assertNull(cache.get(2L, "SELECT * FROM \"Orders\""));
+		}
+
+		@Test
+		void skipsResultReadBeforeInvalidation() {
+				QueryResultCache cache = new QueryResultCache(60, 10, 1000);
+				long generation = cache.currentGeneration();
+				cache.invalidateTable("users");
+
+				cache.put(1L, SQL, rows(1, 1), generation);
+				assertNull(cache.get(1L, SQL));
+
+				cache.put(1L, SQL, rows(1, 1), cache.currentGeneration());
+				assertNotNull(cache.get(1L, SQL));
+		}
+
+		@Test
+		void invalidateAllClearsEverything() {
+				QueryResultCache cache = new QueryResultCache(60, 10, 1000);
+				long generation = cache.currentGeneration();
+				cache.put(1L, SQL, rows(1, 1), generation);
+
+				cache.invalidateAll();
+
+				assertNull(cache.get(1L, SQL));
+				assertTrue(cache.currentGeneration() > generation);
+		}
+
+		@Test
+		void detectsReadOnlyStatements() {
+				assertTrue(QueryResultCache.isReadOnly("SELECT * FROM users"));
+				assertTrue(QueryResultCache.isReadOnly("select 'insert' as word"));
+				assertFalse(QueryResultCache.isReadOnly("UPDATE users SET name = 'x'"));
+				assertFalse(QueryResultCache.isReadOnly("SELECT nextval('users_id_seq')"));
+				assertFalse(QueryResultCache.isReadOnly("SELECT * INTO copy_of_users FROM users"));
+		}
+
+		@Test
+		void normalizesWhitespaceAndTrailingSemicolons() {
+				assertEquals("SELECT 1", QueryResultCache.normalize("  SELECT\n  1 ;; "));
+		}
+
+		private static List<Map<String, Object>> rows(int count, int columns) {
+				List<Map<String, Object>> rows = new ArrayList<>();
+				for (int i = 0; i < count; i++) {
+						Map<String, Object> row = new LinkedHashMap<>();
+						for (int c = 0; c < columns; c++) {
+								row.put("c" + c, i);
+						}
+						rows.add(row);
+				}
+				return rows;
+		}
+}
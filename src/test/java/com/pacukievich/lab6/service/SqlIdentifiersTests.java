@@ -0,0 +1,16 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlIdentifiersTests {
+
+		@Test
+		void quotesIdentifierAndDoublesEmbeddedQuotes() {
+				assertEquals("\"users\"", SqlIdentifiers.quote("users"));
+				assertEquals("\"Mixed Case\"", SqlIdentifiers.quote("Mixed Case"));
+				// кавычка внутри имени не закрывает идентификатор
+				assertEquals("\"x\"\" TO PROGRAM 'id' --\"", SqlIdentifiers.quote("x\" TO PROGRAM 'id' --"));
+		}
+}
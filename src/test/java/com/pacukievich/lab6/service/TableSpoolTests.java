@@ -0,0 +1,54 @@
+package com.pacukievich.lab6.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TableSpoolTests {
+
+		@Test
+		void keepsLongAndDecimalValuesExact() throws SQLException, IOException {
+				ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+				when(metaData.getColumnCount()).thenReturn(6);
+				for (int i = 1; i <= 6; i++) {
+						when(metaData.getColumnLabel(i)).thenReturn("c" + i);
+				}
+				ResultSet rs = mock(ResultSet.class);
+				when(rs.getMetaData()).thenReturn(metaData);
+				when(rs.next()).thenReturn(true, false);
+				when(rs.getObject(1)).thenReturn(9_007_199_254_740_993L);
+				when(rs.getObject(2)).thenReturn(new BigDecimal("12345678901234567890.123456789"));
+				when(rs.getObject(3)).thenReturn(new BigInteger("123456789012345678901"));
+				when(rs.getObject(4)).thenReturn(7);
+				when(rs.getObject(5)).thenReturn("text");
+				when(rs.getObject(6)).thenReturn(null);
+
+				List<Object[]> rows = new ArrayList<>();
+				try (TableSpool spool = TableSpool.create()) {
+						spool.write(rs);
+						spool.forEachRow(rows::add);
+						assertArrayEquals(new String[]{"c1", "c2", "c3", "c4", "c5", "c6"}, spool.getColumns());
+				}
+
+				assertEquals(1, rows.size());
+				Object[] row = rows.get(0);
+				assertEquals(9_007_199_254_740_993L, row[0]);
+				assertEquals(new BigDecimal("12345678901234567890.123456789"), row[1]);
+				assertEquals(new BigDecimal("123456789012345678901"), row[2]);
+				assertEquals(7.0, row[3]);
+				assertEquals("text", row[4]);
+				assertEquals(null, row[5]);
+		}
+}